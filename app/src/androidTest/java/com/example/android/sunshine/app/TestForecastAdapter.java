@@ -0,0 +1,43 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.test.AndroidTestCase;
+import android.view.View;
+import android.widget.AbsListView;
+
+/*
+    Constructs the forecast list's adapter the way ForecastFragment does, which fails if the
+    stable ids are set after an observer is registered.
+ */
+public class TestForecastAdapter extends AndroidTestCase {
+
+    public void testConstruct() {
+        View emptyView = new View(mContext);
+        ForecastAdapter adapter = new ForecastAdapter(mContext,
+                new ForecastAdapter.ForecastAdapterOnClickHandler() {
+                    @Override
+                    public void onClick(Long date, ForecastAdapter.ForecastAdapterViewHolder vh) {
+                    }
+                }, emptyView, AbsListView.CHOICE_MODE_SINGLE);
+        assertTrue("Error: the row ids aren't stable", adapter.hasStableIds());
+
+        adapter.swapCursor(null);
+        assertEquals(0, adapter.getItemCount());
+        assertEquals("Error: empty view hidden without rows", View.VISIBLE,
+                emptyView.getVisibility());
+    }
+}
@@ -0,0 +1,177 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.support.v7.widget.LinearLayoutManager;
+import android.support.v7.widget.RecyclerView;
+import android.test.AndroidTestCase;
+import android.view.View;
+import android.view.ViewGroup;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+    Checks the notifications ForecastDiff sends for a few typical reloads of the list, and that
+    the payloads it sends reach the adapter.
+ */
+public class TestForecastDiff extends AndroidTestCase {
+
+    private static final long DAY = TestUtilities.DAY;
+
+    public void testUnchangedRows() {
+        RecordingAdapter adapter = new RecordingAdapter();
+        assertTrue(ForecastDiff.dispatch(snapshot("99705", 0, 3, 20),
+                snapshot("99705", 0, 3, 20), adapter));
+        assertEquals(0, adapter.mEvents.size());
+    }
+
+    public void testNextDay() {
+        // Yesterday dropped off the top, a new day was appended at the bottom
+        RecordingAdapter adapter = new RecordingAdapter();
+        assertTrue(ForecastDiff.dispatch(snapshot("99705", 0, 3, 20),
+                snapshot("99705", 1, 3, 20), adapter));
+        List<String> expected = new ArrayList<String>();
+        expected.add("removed 0 1");
+        expected.add("inserted 2 1");
+        assertEquals(expected, adapter.mEvents);
+    }
+
+    public void testChangedTemperature() {
+        RecordingAdapter adapter = new RecordingAdapter();
+        assertTrue(ForecastDiff.dispatch(snapshot("99705", 0, 3, 20),
+                snapshot("99705", 0, 3, 21), adapter));
+        List<String> expected = new ArrayList<String>();
+        expected.add("changed 0 3 " + ForecastDiff.FIELD_HIGH);
+        assertEquals(expected, adapter.mEvents);
+    }
+
+    public void testOtherLocation() {
+        RecordingAdapter adapter = new RecordingAdapter();
+        assertFalse(ForecastDiff.dispatch(snapshot("99705", 0, 3, 20),
+                snapshot("94043", 0, 3, 20), adapter));
+        assertEquals(0, adapter.mEvents.size());
+    }
+
+    public void testPayloadReachesBind() {
+        RecyclerView recyclerView = new RecyclerView(mContext);
+        recyclerView.setLayoutManager(new LinearLayoutManager(mContext));
+        ForecastDiff.bindChangesInPlace(recyclerView);
+        BindingAdapter adapter = new BindingAdapter();
+        recyclerView.setAdapter(adapter);
+        layout(recyclerView);
+        assertEquals("Error: rows not bound", 3, adapter.mBinds.size());
+
+        adapter.mBinds.clear();
+        adapter.notifyItemRangeChanged(1, 1, ForecastDiff.FIELD_HIGH);
+        layout(recyclerView);
+        List<String> expected = new ArrayList<String>();
+        expected.add("bound 1 [" + ForecastDiff.FIELD_HIGH + "]");
+        assertEquals("Error: changed row not rebound in place with its payload",
+                expected, adapter.mBinds);
+        assertEquals("Error: changed row bound to a new ViewHolder", 3, adapter.mCreated);
+    }
+
+    public void testPositionOfDate() {
+        ForecastDiff.Snapshot snapshot = snapshot("99705", 5, 3, 20);
+        assertEquals(0, snapshot.getPosition(5 * DAY));
+        assertEquals(2, snapshot.getPosition(7 * DAY));
+        assertEquals(RecyclerView.NO_POSITION, snapshot.getPosition(4 * DAY));
+    }
+
+    private ForecastDiff.Snapshot snapshot(String location, int firstDay, int count, int high) {
+        return TestUtilities.createSnapshot(mContext, location, firstDay, count, high);
+    }
+
+    private static void layout(RecyclerView recyclerView) {
+        recyclerView.measure(
+                View.MeasureSpec.makeMeasureSpec(100, View.MeasureSpec.EXACTLY),
+                View.MeasureSpec.makeMeasureSpec(100, View.MeasureSpec.EXACTLY));
+        recyclerView.layout(0, 0, 100, 100);
+    }
+
+    private static class BindingAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder> {
+        final List<String> mBinds = new ArrayList<String>();
+        int mCreated;
+
+        @Override
+        public RecyclerView.ViewHolder onCreateViewHolder(ViewGroup parent, int viewType) {
+            mCreated++;
+            View view = new View(parent.getContext());
+            view.setLayoutParams(new RecyclerView.LayoutParams(
+                    ViewGroup.LayoutParams.MATCH_PARENT, 10));
+            return new RecyclerView.ViewHolder(view) {
+            };
+        }
+
+        @Override
+        public void onBindViewHolder(RecyclerView.ViewHolder holder, int position) {
+            mBinds.add("bound " + position);
+        }
+
+        @Override
+        public void onBindViewHolder(RecyclerView.ViewHolder holder, int position,
+                                     List<Object> payloads) {
+            if (payloads.isEmpty()) {
+                onBindViewHolder(holder, position);
+            } else {
+                mBinds.add("bound " + position + " " + payloads);
+            }
+        }
+
+        @Override
+        public int getItemCount() {
+            return 3;
+        }
+    }
+
+    private static class RecordingAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder> {
+        final List<String> mEvents = new ArrayList<String>();
+
+        RecordingAdapter() {
+            registerAdapterDataObserver(new RecyclerView.AdapterDataObserver() {
+                @Override
+                public void onItemRangeInserted(int positionStart, int itemCount) {
+                    mEvents.add("inserted " + positionStart + " " + itemCount);
+                }
+
+                @Override
+                public void onItemRangeRemoved(int positionStart, int itemCount) {
+                    mEvents.add("removed " + positionStart + " " + itemCount);
+                }
+
+                @Override
+                public void onItemRangeChanged(int positionStart, int itemCount, Object payload) {
+                    mEvents.add("changed " + positionStart + " " + itemCount + " " + payload);
+                }
+            });
+        }
+
+        @Override
+        public RecyclerView.ViewHolder onCreateViewHolder(ViewGroup parent, int viewType) {
+            return null;
+        }
+
+        @Override
+        public void onBindViewHolder(RecyclerView.ViewHolder holder, int position) {
+        }
+
+        @Override
+        public int getItemCount() {
+            return 0;
+        }
+    }
+}
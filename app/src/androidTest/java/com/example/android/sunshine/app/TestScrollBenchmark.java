@@ -0,0 +1,118 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.content.Context;
+import android.net.Uri;
+import android.support.v7.widget.RecyclerView;
+import android.test.ActivityInstrumentationTestCase2;
+
+import com.example.android.sunshine.app.data.WeatherContract;
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+import com.example.android.sunshine.app.data.WeatherDateNormalizer;
+import com.example.android.sunshine.app.sync.ForecastSnapshotWriter;
+import com.example.android.sunshine.app.sync.PresentationBuilder;
+
+/*
+    Scripted scroll of the forecast list, down and back up, reporting the FrameStats of the run.
+    Compare the logged histograms, or frame_stats.txt, between builds to catch regressions in
+    the list item layouts.  Only debug builds on Jelly Bean or higher record frames.
+
+    The provider is seeded with a few pages of days for the preferred location first, so every
+    run scrolls the same rows.
+ */
+public class TestScrollBenchmark extends ActivityInstrumentationTestCase2<MainActivity> {
+    private static final int SCROLLS = 10;
+    private static final int SCROLL_PIXELS = 600;
+    private static final int SEEDED_DAYS = 3 * ForecastPager.PAGE_SIZE;
+    // The conditions the seeded days cycle through, so the rows show different art
+    private static final int[] WEATHER_IDS = {800, 801, 500, 200, 600, 741, 300, 802};
+
+    public TestScrollBenchmark() {
+        super(MainActivity.class);
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        Context context = getInstrumentation().getTargetContext();
+        context.getContentResolver().delete(WeatherEntry.CONTENT_URI, null, null);
+        context.getContentResolver().delete(LocationEntry.CONTENT_URI, null, null);
+
+        ContentValues locationValues = new ContentValues();
+        locationValues.put(LocationEntry.COLUMN_LOCATION_SETTING,
+                Utility.getPreferredLocation(context));
+        locationValues.put(LocationEntry.COLUMN_CITY_NAME, "Benchmark");
+        locationValues.put(LocationEntry.COLUMN_COORD_LAT, 64.7488);
+        locationValues.put(LocationEntry.COLUMN_COORD_LONG, -147.353);
+        Uri locationUri = context.getContentResolver().insert(LocationEntry.CONTENT_URI,
+                locationValues);
+        long locationRowId = ContentUris.parseId(locationUri);
+
+        long today = WeatherContract.normalizeDate(System.currentTimeMillis());
+        ContentValues[] weatherValues = new ContentValues[SEEDED_DAYS];
+        for (int i = 0; i < SEEDED_DAYS; i++) {
+            ContentValues values = new ContentValues();
+            values.put(WeatherEntry.COLUMN_LOC_KEY, locationRowId);
+            values.put(WeatherEntry.COLUMN_DATE, today + i * WeatherDateNormalizer.DAY_IN_MILLIS);
+            values.put(WeatherEntry.COLUMN_WEATHER_ID, WEATHER_IDS[i % WEATHER_IDS.length]);
+            values.put(WeatherEntry.COLUMN_SHORT_DESC, "Clear");
+            values.put(WeatherEntry.COLUMN_MAX_TEMP, 20 + i % 10);
+            values.put(WeatherEntry.COLUMN_MIN_TEMP, 10 - i % 10);
+            values.put(WeatherEntry.COLUMN_HUMIDITY, 80);
+            values.put(WeatherEntry.COLUMN_PRESSURE, 1000);
+            values.put(WeatherEntry.COLUMN_WIND_SPEED, 5);
+            values.put(WeatherEntry.COLUMN_DEGREES, 90);
+            weatherValues[i] = values;
+        }
+        PresentationBuilder.insertWithWeather(context, weatherValues);
+        // The first screen may be drawn from the snapshot, keep it in line with the rows
+        ForecastSnapshotWriter.writeAll(context);
+    }
+
+    public void testScrollForecastList() throws Throwable {
+        final RecyclerView recyclerView =
+                (RecyclerView) getActivity().findViewById(R.id.recyclerview_forecast);
+        getInstrumentation().waitForIdleSync();
+        assertNotNull("Error: no forecast list", recyclerView);
+        assertNotNull("Error: no adapter on the forecast list", recyclerView.getAdapter());
+        assertTrue("Error: the seeded forecast wasn't loaded",
+                recyclerView.getAdapter().getItemCount() > 0);
+
+        FrameStats.reset();
+        for (int i = 0; i < 2 * SCROLLS; i++) {
+            final int dy = i < SCROLLS ? SCROLL_PIXELS : -SCROLL_PIXELS;
+            runTestOnUiThread(new Runnable() {
+                @Override
+                public void run() {
+                    recyclerView.smoothScrollBy(0, dy);
+                }
+            });
+            // Let the scroll settle, so each one starts and stops the frame recording
+            Thread.sleep(500);
+            getInstrumentation().waitForIdleSync();
+        }
+
+        String report = FrameStats.dump(getActivity());
+        if (FrameStats.ENABLED) {
+            assertNotNull(report);
+            assertTrue("Error: no frames recorded while scrolling", FrameStats.getFrameCount() > 0);
+        }
+    }
+}
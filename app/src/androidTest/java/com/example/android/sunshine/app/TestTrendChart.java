@@ -0,0 +1,90 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.os.Debug;
+import android.test.AndroidTestCase;
+import android.util.Log;
+import android.view.View;
+
+/*
+    Checks when the trend chart is reused, and that drawing it at the size of the two-pane
+    detail view's chart allocates nothing, so it can't cause collections while the detail view
+    animates.  The time is only logged, wall clock limits don't hold on slow emulators.
+ */
+public class TestTrendChart extends AndroidTestCase {
+    private static final String LOG_TAG = TestTrendChart.class.getSimpleName();
+
+    private static final long DAY = TestUtilities.DAY;
+    private static final int DRAWS = 100;
+
+    public void testMatches() {
+        TrendChart chart = TrendChart.build(mContext, snapshot("99705", 14, 20));
+        assertEquals(14, chart.getDayCount());
+        assertTrue(chart.matches(snapshot("99705", 14, 20)));
+        assertFalse(chart.matches(snapshot("99705", 14, 21)));
+        assertFalse(chart.matches(snapshot("94043", 14, 20)));
+        assertSame(chart, TrendChart.getLastChart("99705", "metric"));
+        assertNull(TrendChart.getLastChart("99705", "imperial"));
+    }
+
+    public void testSelectedDay() {
+        TrendChart chart = TrendChart.build(mContext, snapshot("99705", 3, 20));
+        assertEquals(0, chart.getDay(0));
+        assertEquals(2, chart.getDay(2 * DAY));
+        assertEquals(-1, chart.getDay(3 * DAY));
+    }
+
+    @SuppressWarnings("deprecation")
+    public void testDrawDoesNotAllocate() {
+        TrendChartView view = new TrendChartView(mContext);
+        view.setChart(TrendChart.build(mContext, snapshot("99705", 14, 20)));
+        view.setSelectedDate(3 * DAY);
+
+        float density = mContext.getResources().getDisplayMetrics().density;
+        int width = (int) (600 * density);
+        int height = (int) (200 * density);
+        view.measure(View.MeasureSpec.makeMeasureSpec(width, View.MeasureSpec.EXACTLY),
+                View.MeasureSpec.makeMeasureSpec(height, View.MeasureSpec.EXACTLY));
+        view.layout(0, 0, width, height);
+
+        Bitmap bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+        Canvas canvas = new Canvas(bitmap);
+        // Once uncounted, for the first use of the paints and font
+        view.draw(canvas);
+        Debug.resetThreadAllocCount();
+        Debug.startAllocCounting();
+        long start = System.nanoTime();
+        for (int i = 0; i < DRAWS; i++) {
+            view.setSelectedDate((i % 14) * DAY);
+            view.draw(canvas);
+        }
+        long average = (System.nanoTime() - start) / DRAWS;
+        Debug.stopAllocCounting();
+        int allocations = Debug.getThreadAllocCount();
+        bitmap.recycle();
+
+        Log.d(LOG_TAG, "Trend chart draw " + average / 1000 + "us");
+        assertEquals("Error: drawing the chart allocated " + allocations + " objects",
+                0, allocations);
+    }
+
+    private ForecastDiff.Snapshot snapshot(String location, int count, int high) {
+        return TestUtilities.createSnapshot(mContext, location, 0, count, high);
+    }
+}
@@ -0,0 +1,51 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.database.MatrixCursor;
+
+import com.example.android.sunshine.app.data.WeatherDateNormalizer;
+
+/*
+    Forecast rows for the tests of the list and the detail view, built like the list's loader
+    builds them, without the provider.
+ */
+class TestUtilities {
+    static final long DAY = WeatherDateNormalizer.DAY_IN_MILLIS;
+
+    /*
+        The metric rows of the days firstDay to firstDay + count - 1, counted from the epoch.  The
+        values of a row only depend on its day and on high, so two snapshots overlapping in days
+        hold the same rows there.
+     */
+    static ForecastDiff.Snapshot createSnapshot(Context context, String location, int firstDay,
+                                                int count, int high) {
+        // The columns of ForecastFragment.FORECAST_COLUMNS, in order
+        MatrixCursor cursor = new MatrixCursor(new String[]{"_id", "date", "short_desc", "max",
+                "min", "location_setting", "weather_id", "coord_lat", "coord_long",
+                "description", "icon_res", "art_res", "high_text", "low_text", "humidity",
+                "pressure", "wind", "degrees"});
+        for (int day = firstDay; day < firstDay + count; day++) {
+            cursor.addRow(new Object[]{day, day * DAY, "Clear", high + day % 5, 10 - day % 3,
+                    location, 800, 64.7, -147.3, "Clear", 1, 2, Integer.toString(high + day % 5),
+                    Integer.toString(10 - day % 3), 60 + day, 1000 + day % 4, 5, 90});
+        }
+        ForecastDiff.Snapshot snapshot = ForecastDiff.snapshot(context, cursor, "metric");
+        cursor.close();
+        return snapshot;
+    }
+}
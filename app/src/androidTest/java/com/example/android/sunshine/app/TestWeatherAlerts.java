@@ -0,0 +1,109 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.app.NotificationManager;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.app.gcm.WeatherAlerts;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+
+/*
+    Feeds alerts to WeatherAlerts and checks the stored alerts: duplicates are dropped, a new
+    alert replaces the one of its location and type, and an alert right after a posted one
+    waits for the next update.
+ */
+public class TestWeatherAlerts extends AndroidTestCase {
+    // The SharedPreferences WeatherAlerts keeps its state in
+    private static final String PREFS_NAME = "weather_alerts";
+    private static final String KEY_ALERTS = "alerts";
+    private static final String KEY_LAST_POSTED = "last_posted";
+
+    private static final String LOCATION = "94043";
+
+    private SharedPreferences mPrefs;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mPrefs = mContext.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        mPrefs.edit().clear().commit();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        // A pending update then finds no alerts, and cancels the notification as well
+        mPrefs.edit().clear().commit();
+        ((NotificationManager) mContext.getSystemService(Context.NOTIFICATION_SERVICE))
+                .cancel(WeatherAlerts.NOTIFICATION_ID);
+        super.tearDown();
+    }
+
+    public void testDuplicateDropped() throws JSONException {
+        WeatherAlerts.receive(mContext, LOCATION, "flood", "Flood warning");
+        long time = getAlerts().getJSONObject(0).getLong("time");
+        WeatherAlerts.receive(mContext, LOCATION, "flood", "Flood warning");
+
+        JSONArray alerts = getAlerts();
+        assertEquals("Error: duplicate alert stored", 1, alerts.length());
+        assertEquals("Error: duplicate alert replaced the first one", time,
+                alerts.getJSONObject(0).getLong("time"));
+    }
+
+    public void testSameGroupReplaced() throws JSONException {
+        WeatherAlerts.receive(mContext, LOCATION, "flood", "Flood warning");
+        WeatherAlerts.receive(mContext, LOCATION, "flood", "Flood watch");
+        WeatherAlerts.receive(mContext, LOCATION, "hurricane", "Hurricane warning");
+        WeatherAlerts.receive(mContext, "10001", "flood", "Flood warning");
+
+        JSONArray alerts = getAlerts();
+        assertEquals("Error: expected one alert per location and type", 3, alerts.length());
+        assertEquals("Error: alert not replaced by the newer one of its group", "Flood watch",
+                alerts.getJSONObject(0).getString("message"));
+        assertEquals("Hurricane warning", alerts.getJSONObject(1).getString("message"));
+        assertEquals("Flood warning", alerts.getJSONObject(2).getString("message"));
+    }
+
+    public void testBurstRateLimited() throws JSONException {
+        WeatherAlerts.receive(mContext, LOCATION, "flood", "Flood warning");
+        assertTrue("Error: first alert not posted", mPrefs.contains(KEY_LAST_POSTED));
+        long lastPosted = mPrefs.getLong(KEY_LAST_POSTED, 0);
+
+        WeatherAlerts.receive(mContext, LOCATION, "hurricane", "Hurricane warning");
+        assertEquals("Error: alert in a burst posted right away", lastPosted,
+                mPrefs.getLong(KEY_LAST_POSTED, 0));
+        assertEquals("Error: alert in a burst not kept for the update", 2,
+                getAlerts().length());
+    }
+
+    public void testIncompleteEntriesDropped() throws JSONException {
+        mPrefs.edit().putString(KEY_ALERTS, "[{\"time\": " + System.currentTimeMillis() +
+                "}, 5]").commit();
+        WeatherAlerts.receive(mContext, LOCATION, "flood", "Flood warning");
+
+        JSONArray alerts = getAlerts();
+        assertEquals("Error: incomplete entries kept", 1, alerts.length());
+        assertEquals("Flood warning", alerts.getJSONObject(0).getString("message"));
+    }
+
+    private JSONArray getAlerts() throws JSONException {
+        return new JSONArray(mPrefs.getString(KEY_ALERTS, "[]"));
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+import com.example.android.sunshine.app.sync.ForecastChange;
+import com.example.android.sunshine.app.sync.ForecastDelta;
+
+import org.json.JSONException;
+
+/*
+    Applies pushed deltas to the provider and checks only the fields they carry change, that only
+    the changed days get new display values, and that deltas out of range or for unknown days
+    are rejected.
+ */
+public class TestForecastDelta extends AndroidTestCase {
+
+    private long mToday;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mContext.getContentResolver().delete(WeatherEntry.CONTENT_URI, null, null);
+        mContext.getContentResolver().delete(WeatherContract.LocationEntry.CONTENT_URI, null, null);
+        mToday = WeatherContract.normalizeDate(System.currentTimeMillis());
+    }
+
+    public void testDeltaChangesOnlyItsFields() throws JSONException {
+        long locationRowId = TestUtilities.insertNorthPoleLocationValues(mContext);
+        ContentValues weatherValues = TestUtilities.createWeatherValues(locationRowId, mToday);
+        // Stored without display values, like the day the delta changes
+        ContentValues tomorrowValues = TestUtilities.createWeatherValues(locationRowId,
+                mToday + WeatherDateNormalizer.DAY_IN_MILLIS);
+        mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI,
+                new ContentValues[]{weatherValues, tomorrowValues});
+
+        ForecastChange change = ForecastDelta.parse("{\"location\": \"" +
+                TestUtilities.TEST_LOCATION + "\", \"days\": [{\"date\": " + mToday +
+                ", \"high\": 42.5}]}").apply(mContext);
+        assertNotNull("Error: delta not applied", change);
+        assertTrue(change.touches(TestUtilities.TEST_LOCATION, mToday, mToday,
+                ForecastChange.FIELD_TEMPERATURES));
+        assertFalse(change.touches(TestUtilities.TEST_LOCATION, mToday, mToday,
+                ForecastChange.FIELD_CONDITIONS));
+
+        Cursor cursor = mContext.getContentResolver().query(WeatherEntry.CONTENT_URI, null,
+                WeatherEntry.COLUMN_DATE + " = ?", new String[]{Long.toString(mToday)}, null);
+        assertEquals(1, cursor.getCount());
+        weatherValues.put(WeatherEntry.COLUMN_MAX_TEMP, 42.5);
+        TestUtilities.validateCursor("Error: delta not merged with the stored day", cursor,
+                weatherValues);
+
+        // One row per unit system for the changed day, none for the day the delta didn't carry
+        cursor = mContext.getContentResolver().query(
+                WeatherContract.PresentationEntry.CONTENT_URI, null, null, null, null);
+        assertEquals("Error: display values not limited to the changed day", 2,
+                cursor.getCount());
+        cursor.close();
+    }
+
+    public void testNewDayNeedsEveryField() throws JSONException {
+        TestUtilities.insertNorthPoleLocationValues(mContext);
+        assertNull("Error: partial new day applied", ForecastDelta.parse("{\"location\": \"" +
+                TestUtilities.TEST_LOCATION + "\", \"days\": [{\"date\": " + mToday +
+                ", \"high\": 42.5}]}").apply(mContext));
+    }
+
+    public void testUnknownLocationIgnored() throws JSONException {
+        assertNull("Error: delta of an unknown location applied", ForecastDelta.parse(
+                "{\"location\": \"nowhere\", \"days\": [{\"date\": " + mToday +
+                ", \"high\": 20}]}").apply(mContext));
+    }
+
+    public void testInvalidDeltasRejected() {
+        String[] invalid = {
+                "{\"days\": [{\"date\": " + mToday + ", \"high\": 20}]}",
+                "{\"location\": \"99705\", \"days\": []}",
+                "{\"location\": \"99705\", \"days\": [{\"date\": " + mToday + "}]}",
+                "{\"location\": \"99705\", \"days\": [{\"date\": " + mToday +
+                        ", \"humidity\": 120}]}",
+                "{\"location\": \"99705\", \"days\": [{\"date\": " + mToday +
+                        ", \"weather_id\": 5}]}",
+                "{\"location\": \"99705\", \"days\": [{\"date\": " + TestUtilities.TEST_DATE +
+                        ", \"high\": 20}]}"
+        };
+        for (String delta : invalid) {
+            try {
+                ForecastDelta.parse(delta);
+                fail("Error: invalid delta accepted " + delta);
+            } catch (JSONException expected) {
+                // Rejected
+            }
+        }
+    }
+}
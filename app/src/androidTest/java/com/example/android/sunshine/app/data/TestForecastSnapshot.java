@@ -0,0 +1,190 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentValues;
+import android.content.Intent;
+import android.database.Cursor;
+import android.net.Uri;
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.app.data.WeatherContract.PresentationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+import com.example.android.sunshine.app.sync.ForecastChange;
+import com.example.android.sunshine.app.sync.ForecastSnapshot;
+import com.example.android.sunshine.app.sync.ForecastSnapshotWriter;
+import com.example.android.sunshine.app.sync.PresentationBuilder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+
+/*
+    Writes a snapshot from the provider and checks that reading it back gives the same values
+    as querying the provider.
+ */
+public class TestForecastSnapshot extends AndroidTestCase {
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mContext.getContentResolver().delete(WeatherEntry.CONTENT_URI, null, null);
+        mContext.getContentResolver().delete(WeatherContract.LocationEntry.CONTENT_URI, null, null);
+    }
+
+    public void testSnapshotMatchesProvider() {
+        long locationRowId = TestUtilities.insertNorthPoleLocationValues(mContext);
+        ContentValues[] weatherValues = new ContentValues[3];
+        for (int i = 0; i < weatherValues.length; i++) {
+            weatherValues[i] = TestUtilities.createWeatherValues(locationRowId);
+            weatherValues[i].put(WeatherEntry.COLUMN_DATE,
+                    TestUtilities.TEST_DATE + i * WeatherDateNormalizer.DAY_IN_MILLIS);
+            weatherValues[i].put(WeatherEntry.COLUMN_MAX_TEMP, 20 + i);
+        }
+        mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI, weatherValues);
+        PresentationBuilder.rebuild(mContext);
+
+        assertTrue("Error: snapshot not written",
+                ForecastSnapshotWriter.write(mContext, TestUtilities.TEST_LOCATION));
+        ForecastSnapshot snapshot = ForecastSnapshot.open(mContext, TestUtilities.TEST_LOCATION);
+        assertNotNull("Error: snapshot not readable", snapshot);
+        assertEquals("Error: wrong number of days in the snapshot",
+                weatherValues.length, snapshot.getDayCount());
+        assertEquals(0, snapshot.findFirstDayOnOrAfter(0));
+
+        for (String units : new String[]{PresentationEntry.UNITS_METRIC, PresentationEntry.UNITS_IMPERIAL}) {
+            Cursor cursor = mContext.getContentResolver().query(
+                    PresentationEntry.buildPresentationLocationWithStartDate(
+                            TestUtilities.TEST_LOCATION, units, 0),
+                    null, null, null, WeatherEntry.COLUMN_DATE + " ASC");
+            assertEquals(weatherValues.length, cursor.getCount());
+            int day = 0;
+            while (cursor.moveToNext()) {
+                assertEquals(cursor.getLong(cursor.getColumnIndex(WeatherEntry.COLUMN_DATE)),
+                        snapshot.getDate(day));
+                assertEquals(day, snapshot.findDay(snapshot.getDate(day)));
+                assertEquals(cursor.getInt(cursor.getColumnIndex(WeatherEntry.COLUMN_WEATHER_ID)),
+                        snapshot.getWeatherId(day));
+                assertEquals(cursor.getDouble(cursor.getColumnIndex(WeatherEntry.COLUMN_MAX_TEMP)),
+                        snapshot.getHigh(day));
+                assertEquals(cursor.getDouble(cursor.getColumnIndex(WeatherEntry.COLUMN_PRESSURE)),
+                        snapshot.getPressure(day));
+                assertEquals(cursor.getInt(cursor.getColumnIndex(PresentationEntry.COLUMN_ICON_RES)),
+                        snapshot.getIconResource(day));
+                assertEquals(cursor.getString(cursor.getColumnIndex(PresentationEntry.COLUMN_DESCRIPTION)),
+                        snapshot.getDescription(day));
+                assertEquals(cursor.getString(cursor.getColumnIndex(PresentationEntry.COLUMN_HIGH_TEXT)),
+                        snapshot.getHighText(day, units));
+                assertEquals(cursor.getString(cursor.getColumnIndex(PresentationEntry.COLUMN_LOW_TEXT)),
+                        snapshot.getLowText(day, units));
+                day++;
+            }
+            cursor.close();
+        }
+    }
+
+    public void testChangeBetweenSnapshots() {
+        long locationRowId = TestUtilities.insertNorthPoleLocationValues(mContext);
+        ContentValues[] weatherValues = new ContentValues[3];
+        for (int i = 0; i < weatherValues.length; i++) {
+            weatherValues[i] = TestUtilities.createWeatherValues(locationRowId);
+            weatherValues[i].put(WeatherEntry.COLUMN_DATE,
+                    TestUtilities.TEST_DATE + i * WeatherDateNormalizer.DAY_IN_MILLIS);
+        }
+        mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI, weatherValues);
+        PresentationBuilder.rebuild(mContext);
+        ForecastSnapshotWriter.write(mContext, TestUtilities.TEST_LOCATION);
+        ForecastSnapshot before = ForecastSnapshot.open(mContext, TestUtilities.TEST_LOCATION);
+
+        // The same values again change nothing
+        ForecastSnapshotWriter.write(mContext, TestUtilities.TEST_LOCATION);
+        ForecastSnapshot same = ForecastSnapshot.open(mContext, TestUtilities.TEST_LOCATION);
+        assertTrue("Error: unchanged snapshots differ",
+                ForecastChange.between(TestUtilities.TEST_LOCATION, before, same).isEmpty());
+
+        // Only the high of the second day
+        weatherValues[1].put(WeatherEntry.COLUMN_MAX_TEMP, 99);
+        mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI,
+                new ContentValues[]{weatherValues[1]});
+        PresentationBuilder.rebuild(mContext);
+        ForecastSnapshotWriter.write(mContext, TestUtilities.TEST_LOCATION);
+        ForecastSnapshot after = ForecastSnapshot.open(mContext, TestUtilities.TEST_LOCATION);
+        ForecastChange change = ForecastChange.between(TestUtilities.TEST_LOCATION, before, after);
+
+        long firstDate = weatherValues[0].getAsLong(WeatherEntry.COLUMN_DATE);
+        long secondDate = weatherValues[1].getAsLong(WeatherEntry.COLUMN_DATE);
+        assertFalse(change.isEmpty());
+        assertTrue(change.touches(TestUtilities.TEST_LOCATION, secondDate, secondDate,
+                ForecastChange.FIELD_TEMPERATURES));
+        assertFalse("Error: conditions reported changed", change.touches(
+                TestUtilities.TEST_LOCATION, secondDate, secondDate, ForecastChange.FIELD_CONDITIONS));
+        assertFalse("Error: unchanged day reported changed", change.touches(
+                TestUtilities.TEST_LOCATION, firstDate, firstDate, ForecastChange.FIELD_ALL));
+        assertFalse("Error: change reported for another location", change.touches(
+                "not a location", secondDate, secondDate, ForecastChange.FIELD_ALL));
+
+        // What the consumers read back from the intent
+        ForecastChange received = ForecastChange.fromIntent(change.putInto(new Intent()));
+        assertTrue(received.touches(TestUtilities.TEST_LOCATION, firstDate, Long.MAX_VALUE,
+                ForecastChange.FIELD_TEMPERATURES));
+        assertFalse(received.touches(TestUtilities.TEST_LOCATION, firstDate, firstDate,
+                ForecastChange.FIELD_ALL));
+        assertTrue("Error: an intent without a change must touch everything",
+                ForecastChange.fromIntent(new Intent()).touches("not a location", firstDate,
+                        firstDate, ForecastChange.FIELD_OTHER));
+    }
+
+    public void testCorruptSnapshot() throws IOException {
+        long locationRowId = TestUtilities.insertNorthPoleLocationValues(mContext);
+        mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI,
+                new ContentValues[]{TestUtilities.createWeatherValues(locationRowId)});
+        PresentationBuilder.rebuild(mContext);
+        assertTrue("Error: snapshot not written",
+                ForecastSnapshotWriter.write(mContext, TestUtilities.TEST_LOCATION));
+
+        File file = new File(new File(mContext.getFilesDir(), "forecast_snapshots"),
+                Uri.encode(TestUtilities.TEST_LOCATION) + ".bin");
+        byte[] bytes = new byte[(int) file.length()];
+        RandomAccessFile in = new RandomAccessFile(file, "r");
+        in.readFully(bytes);
+        in.close();
+
+        // The header is 28 bytes and a day 96, the strings of the one day follow
+        byte[][] corrupt = {
+                Arrays.copyOf(bytes, bytes.length / 2),
+                bytes.clone(),
+                bytes.clone()
+        };
+        // Negative string indices and lengths
+        Arrays.fill(corrupt[1], 28, corrupt[1].length, (byte) 0xFF);
+        // String lengths past the end of the file
+        Arrays.fill(corrupt[2], 28 + 96, corrupt[2].length, (byte) 0x7F);
+        for (byte[] contents : corrupt) {
+            FileOutputStream out = new FileOutputStream(file);
+            out.write(contents);
+            out.close();
+            assertNull("Error: corrupt snapshot returned",
+                    ForecastSnapshot.open(mContext, TestUtilities.TEST_LOCATION));
+        }
+    }
+
+    public void testMissingSnapshot() {
+        assertNull("Error: snapshot returned for an unknown location",
+                ForecastSnapshot.open(mContext, "not a location"));
+    }
+}
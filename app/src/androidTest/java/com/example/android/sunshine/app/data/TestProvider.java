@@ -24,11 +24,13 @@ import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.net.Uri;
 import android.os.Build;
+import android.os.Bundle;
 import android.test.AndroidTestCase;
 import android.util.Log;
 
 import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
 import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+import com.example.android.sunshine.app.sync.PresentationBuilder;
 
 /*
     Note: This is not a complete set of tests of the Sunshine ContentProvider, but it does test
@@ -197,6 +199,128 @@ public class TestProvider extends AndroidTestCase {
         TestUtilities.validateCursor("testBasicWeatherQuery", weatherCursor, weatherValues);
     }
 
+    /*
+        This test inserts presentation values for both unit systems and checks that the joined
+        presentation query only returns the ones for the requested units, and that deleting the
+        weather row takes its presentation values with it.
+     */
+    public void testPresentationQuery() {
+        WeatherDbHelper dbHelper = new WeatherDbHelper(mContext);
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+
+        long locationRowId = TestUtilities.insertNorthPoleLocationValues(mContext);
+        ContentValues weatherValues = TestUtilities.createWeatherValues(locationRowId);
+        long weatherRowId = db.insert(WeatherEntry.TABLE_NAME, null, weatherValues);
+        assertTrue("Unable to Insert WeatherEntry into the Database", weatherRowId != -1);
+        db.close();
+
+        ContentValues metricValues = TestUtilities.createPresentationValues(
+                weatherRowId, WeatherContract.PresentationEntry.UNITS_METRIC);
+        ContentValues imperialValues = TestUtilities.createPresentationValues(
+                weatherRowId, WeatherContract.PresentationEntry.UNITS_IMPERIAL);
+        imperialValues.put(WeatherContract.PresentationEntry.COLUMN_HIGH_TEXT, "167\u00B0");
+        int inserted = mContext.getContentResolver().bulkInsert(
+                WeatherContract.PresentationEntry.CONTENT_URI,
+                new ContentValues[]{metricValues, imperialValues});
+        assertEquals("Error: presentation rows not inserted", 2, inserted);
+
+        Cursor presentationCursor = mContext.getContentResolver().query(
+                WeatherContract.PresentationEntry.buildPresentationLocationWithDate(
+                        TestUtilities.TEST_LOCATION,
+                        WeatherContract.PresentationEntry.UNITS_IMPERIAL,
+                        TestUtilities.TEST_DATE),
+                null,
+                null,
+                null,
+                null
+        );
+        assertEquals("Error: expected one presentation row for the imperial units",
+                1, presentationCursor.getCount());
+        TestUtilities.validateCursor("testPresentationQuery", presentationCursor, imperialValues);
+
+        mContext.getContentResolver().delete(WeatherEntry.CONTENT_URI, null, null);
+        presentationCursor = mContext.getContentResolver().query(
+                WeatherContract.PresentationEntry.CONTENT_URI, null, null, null, null);
+        assertEquals("Error: presentation rows not deleted with their weather row",
+                0, presentationCursor.getCount());
+        presentationCursor.close();
+    }
+
+    /*
+        This test writes a weather row with its presentation values twice, and checks the
+        replaced row keeps one set of joined presentation values and leaves none behind.
+     */
+    public void testInsertWithWeather() {
+        long locationRowId = TestUtilities.insertNorthPoleLocationValues(mContext);
+        ContentValues weatherValues = TestUtilities.createWeatherValues(locationRowId);
+        for (int i = 0; i < 2; i++) {
+            assertEquals("Error: weather row not written", 1,
+                    PresentationBuilder.insertWithWeather(mContext,
+                            new ContentValues[]{weatherValues}));
+        }
+
+        Cursor presentationCursor = mContext.getContentResolver().query(
+                WeatherContract.PresentationEntry.buildPresentationLocationWithDate(
+                        TestUtilities.TEST_LOCATION,
+                        WeatherContract.PresentationEntry.UNITS_METRIC,
+                        TestUtilities.TEST_DATE),
+                null,
+                null,
+                null,
+                null
+        );
+        assertEquals("Error: expected one joined presentation row for the metric units",
+                1, presentationCursor.getCount());
+        presentationCursor.close();
+
+        presentationCursor = mContext.getContentResolver().query(
+                WeatherContract.PresentationEntry.CONTENT_URI, null, null, null, null);
+        assertEquals("Error: presentation rows of the replaced weather row left behind",
+                2, presentationCursor.getCount());
+        presentationCursor.close();
+    }
+
+    /*
+        This test checks that the call() fast path returns the same values as the presentation
+        query, as parallel arrays.
+     */
+    public void testForecastCall() {
+        long locationRowId = TestUtilities.insertNorthPoleLocationValues(mContext);
+        ContentValues weatherValues = TestUtilities.createWeatherValues(locationRowId);
+        Uri weatherUri = mContext.getContentResolver().insert(WeatherEntry.CONTENT_URI, weatherValues);
+        long weatherRowId = ContentUris.parseId(weatherUri);
+        ContentValues presentationValues = TestUtilities.createPresentationValues(
+                weatherRowId, WeatherContract.PresentationEntry.UNITS_METRIC);
+        mContext.getContentResolver().bulkInsert(WeatherContract.PresentationEntry.CONTENT_URI,
+                new ContentValues[]{presentationValues});
+
+        Bundle result = WeatherContract.ForecastCall.range(mContext.getContentResolver(),
+                TestUtilities.TEST_LOCATION, WeatherContract.PresentationEntry.UNITS_METRIC,
+                0, Long.MAX_VALUE);
+        assertEquals("Error: wrong number of days returned by call()",
+                1, WeatherContract.ForecastCall.getCount(result));
+        assertEquals(weatherRowId, result.getLongArray(WeatherContract.ForecastCall.KEY_IDS)[0]);
+        assertEquals(WeatherContract.normalizeDate(TestUtilities.TEST_DATE),
+                result.getLongArray(WeatherContract.ForecastCall.KEY_DATES)[0]);
+        assertEquals(weatherValues.getAsInteger(WeatherEntry.COLUMN_WEATHER_ID).intValue(),
+                result.getIntArray(WeatherContract.ForecastCall.KEY_WEATHER_IDS)[0]);
+        assertEquals(weatherValues.getAsDouble(WeatherEntry.COLUMN_MAX_TEMP),
+                result.getDoubleArray(WeatherContract.ForecastCall.KEY_HIGHS)[0]);
+        assertEquals(presentationValues.getAsString(WeatherContract.PresentationEntry.COLUMN_HIGH_TEXT),
+                result.getStringArray(WeatherContract.ForecastCall.KEY_HIGH_TEXTS)[0]);
+
+        // The test date is in the past, so there is no day to show for today
+        result = WeatherContract.ForecastCall.allLocationsToday(mContext.getContentResolver(),
+                WeatherContract.PresentationEntry.UNITS_METRIC);
+        assertEquals(0, WeatherContract.ForecastCall.getCount(result));
+
+        // No days for the other unit system
+        result = WeatherContract.ForecastCall.range(mContext.getContentResolver(),
+                TestUtilities.TEST_LOCATION, WeatherContract.PresentationEntry.UNITS_IMPERIAL,
+                0, Long.MAX_VALUE);
+        assertEquals(0, WeatherContract.ForecastCall.getCount(result));
+    }
+
     /*
         This test uses the database directly to insert and then uses the ContentProvider to
         read out the data.  Uncomment this test to see if your location queries are
@@ -512,4 +636,38 @@ public class TestProvider extends AndroidTestCase {
         }
         cursor.close();
     }
+
+    /*
+        This test reads the bulk inserted weather back in keyset pages, and checks that the pages
+        follow each other without gaps or repeats.
+     */
+    public void testKeysetPages() {
+        long locationRowId = TestUtilities.insertNorthPoleLocationValues(mContext);
+        mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI,
+                createBulkInsertWeatherValues(locationRowId));
+
+        final int pageSize = 4;
+        Uri locationUri = WeatherEntry.buildWeatherLocation(TestUtilities.TEST_LOCATION);
+        long afterDate = -1;
+        int total = 0;
+        int pages = 0;
+        while (true) {
+            Cursor cursor = mContext.getContentResolver().query(
+                    WeatherEntry.buildPage(locationUri, afterDate, pageSize),
+                    new String[]{WeatherEntry.COLUMN_DATE}, null, null, null);
+            int count = cursor.getCount();
+            assertTrue("Error: page larger than its limit", count <= pageSize);
+            while (cursor.moveToNext()) {
+                long date = cursor.getLong(0);
+                assertTrue("Error: pages out of order or overlapping", date > afterDate);
+                afterDate = date;
+            }
+            cursor.close();
+            total += count;
+            pages++;
+            if (count < pageSize) break;
+        }
+        assertEquals("Error: rows missing from the pages", BULK_INSERT_RECORDS_TO_INSERT, total);
+        assertEquals((BULK_INSERT_RECORDS_TO_INSERT + pageSize) / pageSize, pages);
+    }
 }
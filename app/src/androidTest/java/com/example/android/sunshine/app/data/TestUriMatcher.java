@@ -36,6 +36,12 @@ public class TestUriMatcher extends AndroidTestCase {
     private static final Uri TEST_WEATHER_WITH_LOCATION_AND_DATE_DIR = WeatherContract.WeatherEntry.buildWeatherLocationWithDate(LOCATION_QUERY, TEST_DATE);
     // content://com.example.android.sunshine.app/location"
     private static final Uri TEST_LOCATION_DIR = WeatherContract.LocationEntry.CONTENT_URI;
+    // content://com.example.android.sunshine.app/presentation"
+    private static final Uri TEST_PRESENTATION_DIR = WeatherContract.PresentationEntry.CONTENT_URI;
+    private static final Uri TEST_PRESENTATION_WITH_LOCATION_DIR = WeatherContract.PresentationEntry.buildPresentationLocationWithStartDate(
+            LOCATION_QUERY, WeatherContract.PresentationEntry.UNITS_METRIC, TEST_DATE);
+    private static final Uri TEST_PRESENTATION_WITH_LOCATION_AND_DATE_DIR = WeatherContract.PresentationEntry.buildPresentationLocationWithDate(
+            LOCATION_QUERY, WeatherContract.PresentationEntry.UNITS_METRIC, TEST_DATE);
 
     /*
         Students: This function tests that your UriMatcher returns the correct integer value
@@ -53,5 +59,11 @@ public class TestUriMatcher extends AndroidTestCase {
                 testMatcher.match(TEST_WEATHER_WITH_LOCATION_AND_DATE_DIR), WeatherProvider.WEATHER_WITH_LOCATION_AND_DATE);
         assertEquals("Error: The LOCATION URI was matched incorrectly.",
                 testMatcher.match(TEST_LOCATION_DIR), WeatherProvider.LOCATION);
+        assertEquals("Error: The PRESENTATION URI was matched incorrectly.",
+                testMatcher.match(TEST_PRESENTATION_DIR), WeatherProvider.PRESENTATION);
+        assertEquals("Error: The PRESENTATION WITH LOCATION URI was matched incorrectly.",
+                testMatcher.match(TEST_PRESENTATION_WITH_LOCATION_DIR), WeatherProvider.PRESENTATION_WITH_LOCATION);
+        assertEquals("Error: The PRESENTATION WITH LOCATION AND DATE URI was matched incorrectly.",
+                testMatcher.match(TEST_PRESENTATION_WITH_LOCATION_AND_DATE_DIR), WeatherProvider.PRESENTATION_WITH_LOCATION_AND_DATE);
     }
 }
@@ -62,9 +62,13 @@ public class TestUtilities extends AndroidTestCase {
         Students: Use this to create some default weather values for your database tests.
      */
     static ContentValues createWeatherValues(long locationRowId) {
+        return createWeatherValues(locationRowId, TEST_DATE);
+    }
+
+    static ContentValues createWeatherValues(long locationRowId, long date) {
         ContentValues weatherValues = new ContentValues();
         weatherValues.put(WeatherContract.WeatherEntry.COLUMN_LOC_KEY, locationRowId);
-        weatherValues.put(WeatherContract.WeatherEntry.COLUMN_DATE, TEST_DATE);
+        weatherValues.put(WeatherContract.WeatherEntry.COLUMN_DATE, date);
         weatherValues.put(WeatherContract.WeatherEntry.COLUMN_DEGREES, 1.1);
         weatherValues.put(WeatherContract.WeatherEntry.COLUMN_HUMIDITY, 1.2);
         weatherValues.put(WeatherContract.WeatherEntry.COLUMN_PRESSURE, 1.3);
@@ -77,6 +81,19 @@ public class TestUtilities extends AndroidTestCase {
         return weatherValues;
     }
 
+    static ContentValues createPresentationValues(long weatherRowId, String units) {
+        ContentValues presentationValues = new ContentValues();
+        presentationValues.put(WeatherContract.PresentationEntry.COLUMN_WEATHER_KEY, weatherRowId);
+        presentationValues.put(WeatherContract.PresentationEntry.COLUMN_UNITS, units);
+        presentationValues.put(WeatherContract.PresentationEntry.COLUMN_DESCRIPTION, "Asteroids");
+        presentationValues.put(WeatherContract.PresentationEntry.COLUMN_ICON_RES, 1);
+        presentationValues.put(WeatherContract.PresentationEntry.COLUMN_ART_RES, 2);
+        presentationValues.put(WeatherContract.PresentationEntry.COLUMN_HIGH_TEXT, "75\u00B0");
+        presentationValues.put(WeatherContract.PresentationEntry.COLUMN_LOW_TEXT, "65\u00B0");
+
+        return presentationValues;
+    }
+
     /*
         Students: You can uncomment this helper function once you have finished creating the
         LocationEntry part of the WeatherContract.
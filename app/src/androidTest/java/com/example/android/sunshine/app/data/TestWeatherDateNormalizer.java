@@ -0,0 +1,144 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.test.AndroidTestCase;
+import android.text.format.Time;
+
+import java.util.Random;
+import java.util.TimeZone;
+
+/*
+    Checks that the arithmetic date normalization matches the android.text.format.Time based
+    implementation it replaced, for random instants and for every hour around DST transitions.
+ */
+public class TestWeatherDateNormalizer extends AndroidTestCase {
+
+    // Zones with transitions at different local times, a half hour DST shift (Lord Howe),
+    // a southern hemisphere DST (Auckland) and no DST at all (Kolkata).
+    private static final String[] TEST_ZONES = {
+            "America/Los_Angeles",
+            "America/New_York",
+            "Europe/London",
+            "Europe/Berlin",
+            "Australia/Lord_Howe",
+            "Pacific/Auckland",
+            "Asia/Kolkata",
+            "UTC"
+    };
+
+    // 2010-01-01 to 2030-01-01
+    private static final long RANGE_START = 1262304000000L;
+    private static final long RANGE_END = 1893456000000L;
+
+    private static final long HOUR_IN_MILLIS = 1000 * 60 * 60;
+
+    private TimeZone mDefaultZone;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mDefaultZone = TimeZone.getDefault();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        TimeZone.setDefault(mDefaultZone);
+        WeatherDateNormalizer.getInstance().onTimeZoneChanged();
+        super.tearDown();
+    }
+
+    // The implementation WeatherContract.normalizeDate used to have
+    private static long timeNormalizeDate(long startDate) {
+        Time time = new Time();
+        time.set(startDate);
+        int julianDay = Time.getJulianDay(startDate, time.gmtoff);
+        return time.setJulianDay(julianDay);
+    }
+
+    private static WeatherDateNormalizer useZone(String zoneId) {
+        TimeZone.setDefault(TimeZone.getTimeZone(zoneId));
+        WeatherDateNormalizer normalizer = WeatherDateNormalizer.getInstance();
+        normalizer.onTimeZoneChanged();
+        return normalizer;
+    }
+
+    public void testRandomInstantsMatchTime() {
+        Random random = new Random(20141220);
+        for (String zoneId : TEST_ZONES) {
+            WeatherDateNormalizer normalizer = useZone(zoneId);
+            for (int i = 0; i < 2000; i++) {
+                long millis = RANGE_START + (long) (random.nextDouble() * (RANGE_END - RANGE_START));
+                assertEquals("Error: normalized date differs from Time in " + zoneId +
+                        " for " + millis, timeNormalizeDate(millis), normalizer.normalize(millis));
+            }
+        }
+    }
+
+    public void testDstTransitionsMatchTime() {
+        for (String zoneId : TEST_ZONES) {
+            WeatherDateNormalizer normalizer = useZone(zoneId);
+            TimeZone zone = TimeZone.getDefault();
+            // Walk the range a day at a time and, wherever the offset changes, check every half
+            // hour of the two days surrounding the transition.
+            for (long day = RANGE_START; day < RANGE_END; day += WeatherDateNormalizer.DAY_IN_MILLIS) {
+                long next = day + WeatherDateNormalizer.DAY_IN_MILLIS;
+                if (zone.getOffset(day) == zone.getOffset(next)) continue;
+                for (long millis = day - WeatherDateNormalizer.DAY_IN_MILLIS;
+                     millis <= next + WeatherDateNormalizer.DAY_IN_MILLIS;
+                     millis += HOUR_IN_MILLIS / 2) {
+                    assertEquals("Error: normalized date differs from Time in " + zoneId +
+                            " near a transition at " + millis,
+                            timeNormalizeDate(millis), normalizer.normalize(millis));
+                    assertEquals("Error: Julian day differs from Time in " + zoneId,
+                            Time.getJulianDay(millis, zone.getOffset(millis) / 1000),
+                            normalizer.getJulianDay(millis));
+                }
+            }
+        }
+    }
+
+    public void testStartOfJulianDayMatchesTime() {
+        for (String zoneId : TEST_ZONES) {
+            WeatherDateNormalizer normalizer = useZone(zoneId);
+            Time time = new Time();
+            int firstDay = Time.getJulianDay(RANGE_START, 0);
+            int lastDay = Time.getJulianDay(RANGE_END, 0);
+            for (int julianDay = firstDay; julianDay < lastDay; julianDay++) {
+                assertEquals("Error: start of Julian day " + julianDay + " differs in " + zoneId,
+                        time.setJulianDay(julianDay), normalizer.getStartOfJulianDay(julianDay));
+            }
+        }
+    }
+
+    public void testBatchMatchesSingle() {
+        Random random = new Random(1419033600L);
+        WeatherDateNormalizer normalizer = useZone("America/New_York");
+        long[] dates = new long[500];
+        long[] expected = new long[dates.length];
+        long millis = RANGE_START;
+        for (int i = 0; i < dates.length; i++) {
+            // Sorted with repeats, like a sync batch
+            millis += (long) (random.nextDouble() * WeatherDateNormalizer.DAY_IN_MILLIS);
+            dates[i] = millis;
+            expected[i] = timeNormalizeDate(millis);
+        }
+        normalizer.normalize(dates);
+        for (int i = 0; i < dates.length; i++) {
+            assertEquals("Error: batch normalization differs at index " + i, expected[i], dates[i]);
+        }
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.graphics.drawable.Drawable;
+import android.widget.ImageView;
+
+import com.bumptech.glide.DrawableRequestBuilder;
+import com.bumptech.glide.Glide;
+import com.bumptech.glide.load.resource.drawable.GlideDrawable;
+import com.bumptech.glide.request.animation.GlideAnimation;
+import com.bumptech.glide.request.target.SimpleTarget;
+
+import java.util.HashMap;
+
+/**
+ * Fetches the weather art of the rows about to scroll into view, at the size the list shows it,
+ * and keeps it pinned in memory.  There is one art URL per condition group, so the pinned set
+ * stays small, and once a URL is pinned, binding a row is a memory cache hit: no network, and no
+ * decode of the full size image.
+ *
+ * The requests built by {@link #request} are sized and transformed the same way as the
+ * preloads, so they share their cache key.
+ */
+public class ArtPreloader {
+
+    // How many rows past the last visible one to preload
+    public static final int PRELOAD_AHEAD = 10;
+
+    private final Context mContext;
+    private final int mSmallSize;
+    private final int mLargeSize;
+    // Preloads by URL, one map per size so checking a row doesn't build a key on every scroll.
+    // Holding a target keeps its image out of the memory cache's reach.
+    private final HashMap<String, SimpleTarget<GlideDrawable>> mPinnedSmall =
+            new HashMap<String, SimpleTarget<GlideDrawable>>();
+    private final HashMap<String, SimpleTarget<GlideDrawable>> mPinnedLarge =
+            new HashMap<String, SimpleTarget<GlideDrawable>>();
+
+    public ArtPreloader(Context context) {
+        mContext = context.getApplicationContext();
+        mSmallSize = getSize(mContext, false);
+        mLargeSize = getSize(mContext, true);
+    }
+
+    /**
+     * Builds the request for the art at the size of list_item_icon, or of the today and detail
+     * icon if large.
+     */
+    public static DrawableRequestBuilder<String> request(Context context, String artUrl,
+                                                         boolean large) {
+        int size = getSize(context, large);
+        return Glide.with(context)
+                .load(artUrl)
+                .override(size, size)
+                .fitCenter();
+    }
+
+    private static int getSize(Context context, boolean large) {
+        return context.getResources().getDimensionPixelSize(
+                large ? R.dimen.today_icon : R.dimen.list_icon);
+    }
+
+    /**
+     * Loads the art of a row into its icon, from the pinned images when it was preloaded.
+     */
+    public void load(ForecastRow row, boolean large, int errorResource, ImageView view) {
+        request(view.getContext(), row.getArtUrl(), large)
+                .error(errorResource)
+                .crossFade()
+                .into(view);
+    }
+
+    /**
+     * Preloads the art of the rows from position on.
+     *
+     * @param rows the rows of the list
+     * @param position the first row to preload
+     * @param count how many rows to preload
+     * @param largePosition the row shown with the large icon, or RecyclerView.NO_POSITION
+     */
+    public void preload(ForecastDiff.Snapshot rows, int position, int count, int largePosition) {
+        int end = Math.min(rows.getCount(), position + count);
+        for (int i = Math.max(0, position); i < end; i++) {
+            String artUrl = rows.getRow(i).getArtUrl();
+            if (null != artUrl) {
+                pin(artUrl, i == largePosition);
+            }
+        }
+    }
+
+    private void pin(final String artUrl, boolean large) {
+        final HashMap<String, SimpleTarget<GlideDrawable>> pinned =
+                large ? mPinnedLarge : mPinnedSmall;
+        if (pinned.containsKey(artUrl)) {
+            return;
+        }
+        int size = large ? mLargeSize : mSmallSize;
+        SimpleTarget<GlideDrawable> target = new SimpleTarget<GlideDrawable>(size, size) {
+            @Override
+            public void onResourceReady(GlideDrawable resource,
+                                        GlideAnimation<? super GlideDrawable> glideAnimation) {
+                // Nothing to show, the request only has to stay alive
+            }
+
+            @Override
+            public void onLoadFailed(Exception e, Drawable errorDrawable) {
+                // Let a later preload try again
+                pinned.remove(artUrl);
+            }
+        };
+        pinned.put(artUrl, target);
+        request(mContext, artUrl, large).into(target);
+    }
+
+    /**
+     * Unpins every preloaded image, they may then be evicted from the memory cache.
+     */
+    public void clear() {
+        for (SimpleTarget<GlideDrawable> target : mPinnedSmall.values()) {
+            Glide.clear(target);
+        }
+        for (SimpleTarget<GlideDrawable> target : mPinnedLarge.values()) {
+            Glide.clear(target);
+        }
+        mPinnedSmall.clear();
+        mPinnedLarge.clear();
+    }
+}
@@ -37,14 +37,14 @@ import android.view.ViewParent;
 import android.widget.ImageView;
 import android.widget.TextView;
 
-import com.bumptech.glide.Glide;
 import com.example.android.sunshine.app.data.WeatherContract;
 import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
 
 /**
  * A placeholder fragment containing a simple view.
  */
-public class DetailFragment extends Fragment implements LoaderManager.LoaderCallbacks<Cursor> {
+public class DetailFragment extends Fragment implements LoaderManager.LoaderCallbacks<Cursor>,
+        ForecastRepository.Listener {
 
     private static final String LOG_TAG = DetailFragment.class.getSimpleName();
     static final String DETAIL_URI = "URI";
@@ -57,6 +57,7 @@ public class DetailFragment extends Fragment implements LoaderManager.LoaderCall
     private boolean mTransitionAnimation;
 
     private static final int DETAIL_LOADER = 0;
+    private static final int TREND_CHART_LOADER = 1;
 
     private static final String[] DETAIL_COLUMNS = {
             WeatherEntry.TABLE_NAME + "." + WeatherEntry._ID,
@@ -71,7 +72,12 @@ public class DetailFragment extends Fragment implements LoaderManager.LoaderCall
             WeatherEntry.COLUMN_WEATHER_ID,
             // This works because the WeatherProvider returns location data joined with
             // weather data, even though they're stored in two different tables.
-            WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING
+            WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING,
+            // Display values computed at sync time, joined in the same way
+            WeatherContract.PresentationEntry.COLUMN_DESCRIPTION,
+            WeatherContract.PresentationEntry.COLUMN_ART_RES,
+            WeatherContract.PresentationEntry.COLUMN_HIGH_TEXT,
+            WeatherContract.PresentationEntry.COLUMN_LOW_TEXT
     };
 
     // These indices are tied to DETAIL_COLUMNS.  If DETAIL_COLUMNS changes, these
@@ -86,6 +92,11 @@ public class DetailFragment extends Fragment implements LoaderManager.LoaderCall
     public static final int COL_WEATHER_WIND_SPEED = 7;
     public static final int COL_WEATHER_DEGREES = 8;
     public static final int COL_WEATHER_CONDITION_ID = 9;
+    public static final int COL_LOCATION_SETTING = 10;
+    public static final int COL_DESCRIPTION = 11;
+    public static final int COL_ART_RES = 12;
+    public static final int COL_HIGH_TEXT = 13;
+    public static final int COL_LOW_TEXT = 14;
 
     private ImageView mIconView;
     private TextView mDateView;
@@ -98,6 +109,30 @@ public class DetailFragment extends Fragment implements LoaderManager.LoaderCall
     private TextView mWindLabelView;
     private TextView mPressureView;
     private TextView mPressureLabelView;
+    // Not in every layout
+    private TrendChartView mTrendChartView;
+    private TrendChart mTrendChart;
+
+    private final LoaderManager.LoaderCallbacks<TrendChart> mTrendChartCallbacks =
+            new LoaderManager.LoaderCallbacks<TrendChart>() {
+        @Override
+        public Loader<TrendChart> onCreateLoader(int id, Bundle args) {
+            String locationSetting = WeatherEntry.getLocationSettingFromUri(mUri);
+            String units = Utility.getPreferredUnits(getActivity());
+            return new TrendChartLoader(getActivity(), locationSetting, units,
+                    ForecastRepository.getInstance(getActivity()).getRows(locationSetting, units));
+        }
+
+        @Override
+        public void onLoadFinished(Loader<TrendChart> loader, TrendChart chart) {
+            showTrendChart(chart);
+        }
+
+        @Override
+        public void onLoaderReset(Loader<TrendChart> loader) {
+            showTrendChart(null);
+        }
+    };
 
     public DetailFragment() {
         setHasOptionsMenu(true);
@@ -125,6 +160,7 @@ public class DetailFragment extends Fragment implements LoaderManager.LoaderCall
         mWindLabelView = (TextView) rootView.findViewById(R.id.detail_wind_label_textview);
         mPressureView = (TextView) rootView.findViewById(R.id.detail_pressure_textview);
         mPressureLabelView = (TextView) rootView.findViewById(R.id.detail_pressure_label_textview);
+        mTrendChartView = (TrendChartView) rootView.findViewById(R.id.detail_trend_chart);
         return rootView;
     }
 
@@ -153,10 +189,70 @@ public class DetailFragment extends Fragment implements LoaderManager.LoaderCall
 
     @Override
     public void onActivityCreated(Bundle savedInstanceState) {
-        getLoaderManager().initLoader(DETAIL_LOADER, null, this);
+        ForecastRepository.getInstance(getActivity()).addListener(this);
+        // The list usually has this day loaded already, the loader is only needed when it hasn't
+        if (!showRowFromRepository()) {
+            getLoaderManager().initLoader(DETAIL_LOADER, null, this);
+        }
+        if (null != mTrendChartView && null != mUri) {
+            mTrendChartView.setSelectedDate(
+                    WeatherContract.normalizeDate(WeatherEntry.getDateFromUri(mUri)));
+            // The previous detail pane's chart, when the day selected is of the same rows
+            if (!showLastTrendChart()) {
+                getLoaderManager().initLoader(TREND_CHART_LOADER, null, mTrendChartCallbacks);
+            }
+        }
         super.onActivityCreated(savedInstanceState);
     }
 
+    @Override
+    public void onDestroyView() {
+        ForecastRepository.getInstance(getActivity()).removeListener(this);
+        super.onDestroyView();
+    }
+
+    /**
+     * @return true if the day was found in the repository and shown
+     */
+    private boolean showRowFromRepository() {
+        if (null == mUri) {
+            return false;
+        }
+        ForecastRow row = ForecastRepository.getInstance(getActivity()).findRow(
+                WeatherEntry.getLocationSettingFromUri(mUri),
+                Utility.getPreferredUnits(getActivity()),
+                WeatherEntry.getDateFromUri(mUri));
+        if (null == row) {
+            return false;
+        }
+        showRow(row);
+        return true;
+    }
+
+    private boolean showLastTrendChart() {
+        String locationSetting = WeatherEntry.getLocationSettingFromUri(mUri);
+        String units = Utility.getPreferredUnits(getActivity());
+        TrendChart chart = TrendChart.getLastChart(locationSetting, units);
+        ForecastDiff.Snapshot rows =
+                ForecastRepository.getInstance(getActivity()).getRows(locationSetting, units);
+        if (null == chart || null == rows || !chart.matches(rows)) {
+            return false;
+        }
+        showTrendChart(chart);
+        return true;
+    }
+
+    private void showTrendChart(TrendChart chart) {
+        mTrendChart = chart;
+        mTrendChartView.setChart(chart);
+    }
+
+    private void restartTrendChart() {
+        if (null != mTrendChartView && null != mUri) {
+            getLoaderManager().restartLoader(TREND_CHART_LOADER, null, mTrendChartCallbacks);
+        }
+    }
+
     void onLocationChanged( String newLocation ) {
         // replace the uri, since the location has changed
         Uri uri = mUri;
@@ -164,8 +260,18 @@ public class DetailFragment extends Fragment implements LoaderManager.LoaderCall
             long date = WeatherContract.WeatherEntry.getDateFromUri(uri);
             Uri updatedUri = WeatherContract.WeatherEntry.buildWeatherLocationWithDate(newLocation, date);
             mUri = updatedUri;
+            if (!showRowFromRepository()) {
+                getLoaderManager().restartLoader(DETAIL_LOADER, null, this);
+            }
+            restartTrendChart();
+        }
+    }
+
+    void onUnitsChanged() {
+        if (null != mUri && !showRowFromRepository()) {
             getLoaderManager().restartLoader(DETAIL_LOADER, null, this);
         }
+        restartTrendChart();
     }
 
     @Override
@@ -173,9 +279,14 @@ public class DetailFragment extends Fragment implements LoaderManager.LoaderCall
         if ( null != mUri ) {
             // Now create and return a CursorLoader that will take care of
             // creating a Cursor for the data being displayed.
+            // Read through the presentation table so the display values come ready made
+            Uri presentationUri = WeatherContract.PresentationEntry.buildPresentationLocationWithDate(
+                    WeatherEntry.getLocationSettingFromUri(mUri),
+                    Utility.getPreferredUnits(getActivity()),
+                    WeatherEntry.getDateFromUri(mUri));
             return new CursorLoader(
                     getActivity(),
-                    mUri,
+                    presentationUri,
                     DETAIL_COLUMNS,
                     null,
                     null,
@@ -192,78 +303,118 @@ public class DetailFragment extends Fragment implements LoaderManager.LoaderCall
     @Override
     public void onLoadFinished(Loader<Cursor> loader, Cursor data) {
         if (data != null && data.moveToFirst()) {
-            ViewParent vp = getView().getParent();
-            if ( vp instanceof CardView ) {
-                ((View)vp).setVisibility(View.VISIBLE);
-            }
-
-            // Read weather condition ID from cursor
-            int weatherId = data.getInt(COL_WEATHER_CONDITION_ID);
+            showForecast(data.getLong(COL_WEATHER_DATE),
+                    data.getInt(COL_WEATHER_CONDITION_ID),
+                    data.getInt(COL_ART_RES),
+                    data.getString(COL_DESCRIPTION),
+                    data.getString(COL_HIGH_TEXT),
+                    data.getString(COL_LOW_TEXT),
+                    data.getDouble(COL_WEATHER_MAX_TEMP),
+                    data.getDouble(COL_WEATHER_MIN_TEMP),
+                    data.getFloat(COL_WEATHER_HUMIDITY),
+                    data.getFloat(COL_WEATHER_WIND_SPEED),
+                    data.getFloat(COL_WEATHER_DEGREES),
+                    data.getFloat(COL_WEATHER_PRESSURE));
+        }
+        onForecastShown();
+    }
 
-            if ( Utility.usingLocalGraphics(getActivity()) ) {
-                mIconView.setImageResource(Utility.getArtResourceForWeatherCondition(weatherId));
+    @Override
+    public void onForecastChanged(ForecastDiff.Snapshot rows) {
+        if (null != mUri && null != getView()) {
+            ForecastRow row = ForecastRepository.findRow(rows,
+                    WeatherEntry.getLocationSettingFromUri(mUri),
+                    Utility.getPreferredUnits(getActivity()),
+                    WeatherEntry.getDateFromUri(mUri));
+            if (null != row) {
+                showRow(row);
             } else {
-                // Use weather art image
-                Glide.with(this)
-                        .load(Utility.getArtUrlForWeatherCondition(getActivity(), weatherId))
-                        .error(Utility.getArtResourceForWeatherCondition(weatherId))
-                        .crossFade()
-                        .into(mIconView);
+                // The provider changed, or the list moved on to other rows, only the loader
+                // has the day's current values now.  It then follows the provider itself.
+                getLoaderManager().initLoader(DETAIL_LOADER, null, this);
+            }
+            // Rows reloaded with the same values, e.g. by a new list after a rotation, keep
+            // the chart
+            if (null != mTrendChartView && (null == mTrendChart || !mTrendChart.matches(rows)) &&
+                    ForecastRepository.isFor(rows, WeatherEntry.getLocationSettingFromUri(mUri),
+                            Utility.getPreferredUnits(getActivity()))) {
+                restartTrendChart();
             }
+        }
+    }
+
+    // Shows the day from the rows the list loaded
+    private void showRow(ForecastRow row) {
+        showForecast(row.getDate(), row.getWeatherId(), row.getArtResource(),
+                row.getDescription(), row.getHighText(), row.getLowText(),
+                row.getHigh(), row.getLow(), (float) row.getHumidity(),
+                (float) row.getWindSpeed(), (float) row.getDegrees(), (float) row.getPressure());
+        onForecastShown();
+    }
 
-            // Read date from cursor and update views for day of week and date
-            long date = data.getLong(COL_WEATHER_DATE);
-            String dateText = Utility.getFullFriendlyDayString(getActivity(),date);
-            mDateView.setText(dateText);
-
-            // Get description from weather condition ID
-            String description = Utility.getStringForWeatherCondition(getActivity(), weatherId);
-            mDescriptionView.setText(description);
-            mDescriptionView.setContentDescription(getString(R.string.a11y_forecast, description));
-
-            // For accessibility, add a content description to the icon field. Because the ImageView
-            // is independently focusable, it's better to have a description of the image. Using
-            // null is appropriate when the image is purely decorative or when the image already
-            // has text describing it in the same UI component.
-            mIconView.setContentDescription(getString(R.string.a11y_forecast_icon, description));
-
-            // Read high temperature from cursor and update view
-            boolean isMetric = Utility.isMetric(getActivity());
-
-            double high = data.getDouble(COL_WEATHER_MAX_TEMP);
-            String highString = Utility.formatTemperature(getActivity(), high);
-            mHighTempView.setText(highString);
-            mHighTempView.setContentDescription(getString(R.string.a11y_high_temp, highString));
-
-            // Read low temperature from cursor and update view
-            double low = data.getDouble(COL_WEATHER_MIN_TEMP);
-            String lowString = Utility.formatTemperature(getActivity(), low);
-            mLowTempView.setText(lowString);
-            mLowTempView.setContentDescription(getString(R.string.a11y_low_temp, lowString));
-
-            // Read humidity from cursor and update view
-            float humidity = data.getFloat(COL_WEATHER_HUMIDITY);
-            mHumidityView.setText(getActivity().getString(R.string.format_humidity, humidity));
-            mHumidityView.setContentDescription(getString(R.string.a11y_humidity, mHumidityView.getText()));
-            mHumidityLabelView.setContentDescription(mHumidityView.getContentDescription());
-
-            // Read wind speed and direction from cursor and update view
-            float windSpeedStr = data.getFloat(COL_WEATHER_WIND_SPEED);
-            float windDirStr = data.getFloat(COL_WEATHER_DEGREES);
-            mWindView.setText(Utility.getFormattedWind(getActivity(), windSpeedStr, windDirStr));
-            mWindView.setContentDescription(getString(R.string.a11y_wind, mWindView.getText()));
-            mWindLabelView.setContentDescription(mWindView.getContentDescription());
-
-            // Read pressure from cursor and update view
-            float pressure = data.getFloat(COL_WEATHER_PRESSURE);
-            mPressureView.setText(getString(R.string.format_pressure, pressure));
-            mPressureView.setContentDescription(getString(R.string.a11y_pressure, mPressureView.getText()));
-            mPressureLabelView.setContentDescription(mPressureView.getContentDescription());
-
-            // We still need this for the share intent
-            mForecast = String.format("%s - %s - %s/%s", dateText, description, high, low);
+    private void showForecast(long date, int weatherId, int artResourceId, String description,
+                              String highString, String lowString, double high, double low,
+                              float humidity, float windSpeedStr, float windDirStr,
+                              float pressure) {
+        ViewParent vp = getView().getParent();
+        if ( vp instanceof CardView ) {
+            ((View)vp).setVisibility(View.VISIBLE);
+        }
 
+        if ( Utility.usingLocalGraphics(getActivity()) ) {
+            mIconView.setImageResource(artResourceId);
+        } else {
+            // Use weather art image
+            // Sized like the list's today icon, so it's usually already in memory
+            ArtPreloader.request(getActivity(),
+                    Utility.getArtUrlForWeatherCondition(getActivity(), weatherId), true)
+                    .error(artResourceId)
+                    .crossFade()
+                    .into(mIconView);
         }
+
+        // Update views for day of week and date
+        String dateText = Utility.getFullFriendlyDayString(getActivity(),date);
+        mDateView.setText(dateText);
+
+        mDescriptionView.setText(description);
+        mDescriptionView.setContentDescription(getString(R.string.a11y_forecast, description));
+
+        // For accessibility, add a content description to the icon field. Because the ImageView
+        // is independently focusable, it's better to have a description of the image. Using
+        // null is appropriate when the image is purely decorative or when the image already
+        // has text describing it in the same UI component.
+        mIconView.setContentDescription(getString(R.string.a11y_forecast_icon, description));
+
+        // Update the high temperature view
+        mHighTempView.setText(highString);
+        mHighTempView.setContentDescription(getString(R.string.a11y_high_temp, highString));
+
+        // Update the low temperature view
+        mLowTempView.setText(lowString);
+        mLowTempView.setContentDescription(getString(R.string.a11y_low_temp, lowString));
+
+        // Update the humidity view
+        mHumidityView.setText(getActivity().getString(R.string.format_humidity, humidity));
+        mHumidityView.setContentDescription(getString(R.string.a11y_humidity, mHumidityView.getText()));
+        mHumidityLabelView.setContentDescription(mHumidityView.getContentDescription());
+
+        // Update the wind speed and direction view
+        mWindView.setText(Utility.getFormattedWind(getActivity(), windSpeedStr, windDirStr));
+        mWindView.setContentDescription(getString(R.string.a11y_wind, mWindView.getText()));
+        mWindLabelView.setContentDescription(mWindView.getContentDescription());
+
+        // Update the pressure view
+        mPressureView.setText(getString(R.string.format_pressure, pressure));
+        mPressureView.setContentDescription(getString(R.string.a11y_pressure, mPressureView.getText()));
+        mPressureLabelView.setContentDescription(mPressureView.getContentDescription());
+
+        // We still need this for the share intent
+        mForecast = String.format("%s - %s - %s/%s", dateText, description, high, low);
+    }
+
+    // Starts the postponed transition and sets up the toolbar, once the day is shown
+    private void onForecastShown() {
         AppCompatActivity activity = (AppCompatActivity)getActivity();
         Toolbar toolbarView = (Toolbar) getView().findViewById(R.id.toolbar);
 
@@ -29,36 +29,42 @@ import android.widget.Checkable;
 import android.widget.ImageView;
 import android.widget.TextView;
 
-import com.bumptech.glide.Glide;
-import com.example.android.sunshine.app.data.WeatherContract;
+import java.util.List;
 
 /**
  * {@link ForecastAdapter} exposes a list of weather forecasts
  * from a {@link android.database.Cursor} to a {@link android.support.v7.widget.RecyclerView}.
  */
-public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.ForecastAdapterViewHolder> {
+public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.ForecastAdapterViewHolder>
+        implements ItemChoiceManager.PositionLookup {
 
-    private static final int VIEW_TYPE_TODAY = 0;
-    private static final int VIEW_TYPE_FUTURE_DAY = 1;
+    static final int VIEW_TYPE_TODAY = 0;
+    static final int VIEW_TYPE_FUTURE_DAY = 1;
 
     // Flag to determine if we want to use a separate view for "today".
     private boolean mUseTodayLayout = true;
 
     private Cursor mCursor;
+    // The prepared rows of mCursor
+    private ForecastDiff.Snapshot mRows;
     final private Context mContext;
     final private ForecastAdapterOnClickHandler mClickHandler;
     final private View mEmptyView;
     final private ItemChoiceManager mICM;
+    final private ArtPreloader mArtPreloader;
 
     /**
-     * Cache of the children views for a forecast list item.
+     * Cache of the children views for a forecast list item.  Holders are pooled by
+     * {@link ForecastViewPool}, and may be inflated before the adapter binds them, so they only
+     * know their adapter while bound.
      */
-    public class ForecastAdapterViewHolder extends RecyclerView.ViewHolder implements View.OnClickListener {
+    public static class ForecastAdapterViewHolder extends RecyclerView.ViewHolder implements View.OnClickListener {
         public final ImageView mIconView;
         public final TextView mDateView;
         public final TextView mDescriptionView;
         public final TextView mHighTempView;
         public final TextView mLowTempView;
+        private ForecastAdapter mAdapter;
 
         public ForecastAdapterViewHolder(View view) {
             super(view);
@@ -73,10 +79,8 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
         @Override
         public void onClick(View v) {
             int adapterPosition = getAdapterPosition();
-            mCursor.moveToPosition(adapterPosition);
-            int dateColumnIndex = mCursor.getColumnIndex(WeatherContract.WeatherEntry.COLUMN_DATE);
-            mClickHandler.onClick(mCursor.getLong(dateColumnIndex), this);
-            mICM.onClick(this);
+            mAdapter.mClickHandler.onClick(mAdapter.mRows.getRow(adapterPosition).getDate(), this);
+            mAdapter.mICM.onClick(this);
         }
     }
 
@@ -88,8 +92,12 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
         mContext = context;
         mClickHandler = dh;
         mEmptyView = emptyView;
+        // Row ids are the dates, see getItemId.  Set before the ItemChoiceManager registers its
+        // observer, the adapter refuses to change it once it has one.
+        setHasStableIds(true);
         mICM = new ItemChoiceManager(this);
         mICM.setChoiceMode(choiceMode);
+        mArtPreloader = new ArtPreloader(context);
     }
 
     /*
@@ -114,9 +122,14 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
                     break;
                 }
             }
-            View view = LayoutInflater.from(viewGroup.getContext()).inflate(layoutId, viewGroup, false);
+            long inflateStart = FrameStats.startInflate();
+            // The activity's inflater, so AppCompat styles the row like the rest of the screen
+            View view = LayoutInflater.from(viewGroup.getContext())
+                    .inflate(layoutId, viewGroup, false);
             view.setFocusable(true);
-            return new ForecastAdapterViewHolder(view);
+            ForecastAdapterViewHolder holder = new ForecastAdapterViewHolder(view);
+            FrameStats.endInflate(viewType, inflateStart);
+            return holder;
         } else {
             throw new RuntimeException("Not bound to RecyclerView");
         }
@@ -124,65 +137,84 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
 
     @Override
     public void onBindViewHolder(ForecastAdapterViewHolder forecastAdapterViewHolder, int position) {
-        mCursor.moveToPosition(position);
-        int weatherId = mCursor.getInt(ForecastFragment.COL_WEATHER_CONDITION_ID);
-        int defaultImage;
-        boolean useLongToday;
-
-        switch (getItemViewType(position)) {
-            case VIEW_TYPE_TODAY:
-                defaultImage = Utility.getArtResourceForWeatherCondition(weatherId);
-                useLongToday = true;
+        bindViewHolder(forecastAdapterViewHolder, position, ForecastDiff.FIELD_ALL);
+    }
+
+    /*
+        The payloads are the ForecastDiff field masks of the changes since the views were bound,
+        only the views showing those fields are set again.  An empty list means a full bind.
+     */
+    @Override
+    public void onBindViewHolder(ForecastAdapterViewHolder forecastAdapterViewHolder, int position,
+                                 List<Object> payloads) {
+        int fields = 0;
+        for (Object payload : payloads) {
+            if (payload instanceof Integer) {
+                fields |= (Integer) payload;
+            } else {
+                fields = ForecastDiff.FIELD_ALL;
                 break;
-            default:
-                defaultImage = Utility.getIconResourceForWeatherCondition(weatherId);
-                useLongToday = false;
+            }
         }
+        bindViewHolder(forecastAdapterViewHolder, position,
+                fields == 0 ? ForecastDiff.FIELD_ALL : fields);
+    }
 
-        if ( Utility.usingLocalGraphics(mContext) ) {
-            forecastAdapterViewHolder.mIconView.setImageResource(defaultImage);
-        } else {
-            Glide.with(mContext)
-                    .load(Utility.getArtUrlForWeatherCondition(mContext, weatherId))
-                    .error(defaultImage)
-                    .crossFade()
-                    .into(forecastAdapterViewHolder.mIconView);
+    private void bindViewHolder(ForecastAdapterViewHolder forecastAdapterViewHolder, int position,
+                                int fields) {
+        long bindStart = FrameStats.startBind();
+        ForecastRow row = mRows.getRow(position);
+        forecastAdapterViewHolder.mAdapter = this;
+
+        if ((fields & ForecastDiff.FIELD_ICON) != 0) {
+            int defaultImage = getItemViewType(position) == VIEW_TYPE_TODAY
+                    ? row.getArtResource() : row.getIconResource();
+
+            if ( null == row.getArtUrl() ) {
+                forecastAdapterViewHolder.mIconView.setImageResource(defaultImage);
+            } else {
+                mArtPreloader.load(row, getItemViewType(position) == VIEW_TYPE_TODAY,
+                        defaultImage, forecastAdapterViewHolder.mIconView);
+            }
         }
 
-        // this enables better animations. even if we lose state due to a device rotation,
-        // the animator can use this to re-find the original view
-        ViewCompat.setTransitionName(forecastAdapterViewHolder.mIconView, "iconView" + position);
-
-        // Read date from cursor
-        long dateInMillis = mCursor.getLong(ForecastFragment.COL_WEATHER_DATE);
+        if ((fields & ForecastDiff.FIELD_DATE) != 0) {
+            // this enables better animations. even if we lose state due to a device rotation,
+            // the animator can use this to re-find the original view.  It's keyed on the date
+            // rather than the position, since rows now shift without being rebound.
+            ViewCompat.setTransitionName(forecastAdapterViewHolder.mIconView, "iconView" + row.getDate());
 
-        // Find TextView and set formatted date on it
-        forecastAdapterViewHolder.mDateView.setText(Utility.getFriendlyDayString(mContext, dateInMillis, useLongToday));
-
-        // Read weather forecast from cursor
-        String description = Utility.getStringForWeatherCondition(mContext, weatherId);
+            forecastAdapterViewHolder.mDateView.setText(
+                    row.getDateText(getItemViewType(position) == VIEW_TYPE_TODAY));
+        }
 
-        // Find TextView and set weather forecast on it
-        forecastAdapterViewHolder.mDescriptionView.setText(description);
-        forecastAdapterViewHolder.mDescriptionView.setContentDescription(mContext.getString(R.string.a11y_forecast, description));
+        if ((fields & ForecastDiff.FIELD_DESCRIPTION) != 0) {
+            forecastAdapterViewHolder.mDescriptionView.setText(row.getDescription());
+            forecastAdapterViewHolder.mDescriptionView.setContentDescription(row.getDescriptionContentDescription());
+        }
 
         // For accessibility, we don't want a content description for the icon field
         // because the information is repeated in the description view and the icon
         // is not individually selectable
 
-        // Read high temperature from cursor
-        double high = mCursor.getDouble(ForecastFragment.COL_WEATHER_MAX_TEMP);
-        String highString = Utility.formatTemperature(mContext, high);
-        forecastAdapterViewHolder.mHighTempView.setText(highString);
-        forecastAdapterViewHolder.mHighTempView.setContentDescription(mContext.getString(R.string.a11y_high_temp, highString));
+        if ((fields & ForecastDiff.FIELD_HIGH) != 0) {
+            forecastAdapterViewHolder.mHighTempView.setText(row.getHighText());
+            forecastAdapterViewHolder.mHighTempView.setContentDescription(row.getHighContentDescription());
+        }
 
-        // Read low temperature from cursor
-        double low = mCursor.getDouble(ForecastFragment.COL_WEATHER_MIN_TEMP);
-        String lowString = Utility.formatTemperature(mContext, low);
-        forecastAdapterViewHolder.mLowTempView.setText(lowString);
-        forecastAdapterViewHolder.mLowTempView.setContentDescription(mContext.getString(R.string.a11y_low_temp, lowString));
+        if ((fields & ForecastDiff.FIELD_LOW) != 0) {
+            forecastAdapterViewHolder.mLowTempView.setText(row.getLowText());
+            forecastAdapterViewHolder.mLowTempView.setContentDescription(row.getLowContentDescription());
+        }
 
         mICM.onBindViewHolder(forecastAdapterViewHolder, position);
+        FrameStats.endBind(getItemViewType(position), bindStart);
+    }
+
+    @Override
+    public void onViewRecycled(ForecastAdapterViewHolder forecastAdapterViewHolder) {
+        // The pool may hand the holder to another list
+        forecastAdapterViewHolder.mAdapter = null;
     }
 
     public void onRestoreInstanceState(Bundle savedInstanceState) {
@@ -197,6 +229,10 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
         mUseTodayLayout = useTodayLayout;
     }
 
+    boolean getUseTodayLayout() {
+        return mUseTodayLayout;
+    }
+
     public int getSelectedItemPosition() {
         return mICM.getSelectedItemPosition();
     }
@@ -206,22 +242,107 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
         return (position == 0 && mUseTodayLayout) ? VIEW_TYPE_TODAY : VIEW_TYPE_FUTURE_DAY;
     }
 
+    /*
+        A row is identified by its date: the list shows a single location, and the weather _id
+        changes whenever a sync replaces the row.
+     */
+    @Override
+    public long getItemId(int position) {
+        return mRows.getRow(position).getDate();
+    }
+
+    @Override
+    public int getPositionForId(long id) {
+        return getPositionForDate(id);
+    }
+
+    /**
+     * @return the position of the row of that date, or RecyclerView.NO_POSITION
+     */
+    public int getPositionForDate(long date) {
+        if ( null == mRows ) return RecyclerView.NO_POSITION;
+        return mRows.getPosition(date);
+    }
+
     @Override
     public int getItemCount() {
-        if ( null == mCursor ) return 0;
-        return mCursor.getCount();
+        if ( null == mRows ) return 0;
+        return mRows.getCount();
     }
 
+    /**
+     * Swaps in the new cursor.  The rows are bound from the {@link ForecastRow}s the loader
+     * prepared with the cursor, and only the rows that were inserted, removed or changed since
+     * the previous cursor are notified, with the changed fields as the payload.
+     */
     public void swapCursor(Cursor newCursor) {
+        ForecastDiff.Snapshot oldRows = mRows;
         mCursor = newCursor;
+        if (null == newCursor) {
+            mRows = null;
+        } else if (newCursor instanceof ForecastDiff.KeyedCursor) {
+            mRows = ((ForecastDiff.KeyedCursor) newCursor).getSnapshot();
+        } else {
+            // Not loaded through ForecastPager, prepare the rows here
+            mRows = ForecastDiff.snapshot(mContext, newCursor, null);
+        }
+
+        if (null == oldRows || null == mRows || !ForecastDiff.dispatch(oldRows, mRows, this)) {
+            notifyDataSetChanged();
+        } else if (mUseTodayLayout && oldRows.getCount() > 0 && mRows.getCount() > 0 &&
+                oldRows.getRow(0).getDate() != mRows.getRow(0).getDate()) {
+            // Another row is first, the old and new first rows change layout
+            notifyItemRangeChanged(0, Math.min(2, mRows.getCount()));
+        }
+        mEmptyView.setVisibility(getItemCount() == 0 ? View.VISIBLE : View.GONE);
+        // The first screen, and the rows right below it
+        preloadArt(0);
+    }
+
+    /**
+     * Shows rows that weren't loaded with a cursor, the forecast snapshot's at startup.  The
+     * next {@link #swapCursor} is compared with them like with a previous load.
+     */
+    public void showRows(ForecastDiff.Snapshot rows) {
+        mCursor = null;
+        mRows = rows;
         notifyDataSetChanged();
         mEmptyView.setVisibility(getItemCount() == 0 ? View.VISIBLE : View.GONE);
+        preloadArt(0);
+    }
+
+    /**
+     * Preloads the art of the rows that are about to scroll into view.
+     */
+    public void onPositionVisible(int lastVisiblePosition) {
+        preloadArt(lastVisiblePosition + 1);
+    }
+
+    /**
+     * Unpins the preloaded art, call this once the list is gone.
+     */
+    public void releaseArt() {
+        mArtPreloader.clear();
+    }
+
+    private void preloadArt(int position) {
+        if ( null != mRows ) {
+            mArtPreloader.preload(mRows, position, ArtPreloader.PRELOAD_AHEAD,
+                    mUseTodayLayout ? 0 : RecyclerView.NO_POSITION);
+        }
     }
 
     public Cursor getCursor() {
         return mCursor;
     }
 
+    /**
+     * @return the prepared rows shown, or null if there are none
+     */
+    public ForecastDiff.Snapshot getRows() {
+        return mRows;
+    }
+
     public void selectView(RecyclerView.ViewHolder viewHolder) {
         if ( viewHolder instanceof ForecastAdapterViewHolder ) {
             ForecastAdapterViewHolder vfh = (ForecastAdapterViewHolder)viewHolder;
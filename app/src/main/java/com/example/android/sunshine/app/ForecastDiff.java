@@ -0,0 +1,317 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.CursorWrapper;
+import android.support.v7.widget.RecyclerView;
+
+import com.example.android.sunshine.app.sync.ForecastSnapshot;
+
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Computes which rows of the forecast list changed between two loads, so the adapter can notify
+ * the RecyclerView of the individual inserts, removals and changes instead of rebinding
+ * everything.
+ *
+ * Reading and formatting the rows is the expensive part, so the loader builds a {@link Snapshot}
+ * of {@link ForecastRow}s on its background thread, and hands it over with the cursor as a
+ * {@link KeyedCursor}.  Comparing two snapshots is then a single merge of two sorted arrays,
+ * cheap enough to do on the UI thread while the adapter swaps its cursor.
+ *
+ * Rows are keyed by (location, date): the list shows one location, sorted by date, and a date
+ * appears at most once per location, so rows can be inserted, removed or changed but never move.
+ */
+public class ForecastDiff {
+
+    // Payload bits, telling onBindViewHolder which parts of a row changed
+    public static final int FIELD_DATE = 1;
+    public static final int FIELD_ICON = 1 << 1;
+    public static final int FIELD_DESCRIPTION = 1 << 2;
+    public static final int FIELD_HIGH = 1 << 3;
+    public static final int FIELD_LOW = 1 << 4;
+    public static final int FIELD_ALL =
+            FIELD_DATE | FIELD_ICON | FIELD_DESCRIPTION | FIELD_HIGH | FIELD_LOW;
+
+    /**
+     * The rows of one load, in cursor order.
+     */
+    public static final class Snapshot {
+        final String mLocationSetting;
+        // null when the rows weren't loaded from a presentation URI
+        final String mUnits;
+        final ForecastRow[] mRows;
+        // Position of each date, built with the snapshot so lookups don't scan the rows
+        private final HashMap<Long, Integer> mPositions;
+
+        Snapshot(String locationSetting, String units, ForecastRow[] rows) {
+            mLocationSetting = locationSetting;
+            mUnits = units;
+            mRows = rows;
+            mPositions = new HashMap<Long, Integer>(rows.length * 4 / 3 + 1);
+            for (int i = 0; i < rows.length; i++) {
+                mPositions.put(rows[i].getDate(), i);
+            }
+        }
+
+        public String getLocationSetting() {
+            return mLocationSetting;
+        }
+
+        public String getUnits() {
+            return mUnits;
+        }
+
+        public int getCount() {
+            return mRows.length;
+        }
+
+        public ForecastRow getRow(int position) {
+            return mRows[position];
+        }
+
+        /**
+         * @return the position of the row of that date, or RecyclerView.NO_POSITION
+         */
+        public int getPosition(long date) {
+            Integer position = mPositions.get(date);
+            return null == position ? RecyclerView.NO_POSITION : position;
+        }
+    }
+
+    /**
+     * A cursor carrying the snapshot of its rows.
+     */
+    public static final class KeyedCursor extends CursorWrapper {
+        private final Snapshot mSnapshot;
+
+        public KeyedCursor(Cursor cursor, Snapshot snapshot) {
+            super(cursor);
+            mSnapshot = snapshot;
+        }
+
+        public Snapshot getSnapshot() {
+            return mSnapshot;
+        }
+    }
+
+    /**
+     * Builds the rows of the cursor.  Call this from the thread that loaded the cursor, before
+     * anyone else uses it.
+     *
+     * @param cursor a cursor over ForecastFragment.FORECAST_COLUMNS
+     * @param units the units of the display values, null if unknown
+     */
+    public static Snapshot snapshot(Context context, Cursor cursor, String units) {
+        String locationSetting = cursor.moveToFirst()
+                ? cursor.getString(ForecastFragment.COL_LOCATION_SETTING) : null;
+        return new Snapshot(locationSetting, units, ForecastRow.fromCursor(context, cursor));
+    }
+
+    /**
+     * Builds the first rows of the list from the location's {@link ForecastSnapshot}, to show
+     * them before the loader delivers.  This reads the snapshot file and formats each row; it is
+     * called from the UI thread at startup, where the first frame waits on it, so ask for no more
+     * rows than fit on the screen.
+     *
+     * @return the rows from today on, or null if there is no usable snapshot
+     */
+    public static Snapshot snapshot(Context context, String locationSetting, String units,
+                                    int count) {
+        ForecastSnapshot forecastSnapshot = ForecastSnapshot.open(context, locationSetting);
+        int today = null == forecastSnapshot ? -1 : forecastSnapshot.findToday();
+        if (today < 0) {
+            return null;
+        }
+        return new Snapshot(locationSetting, units,
+                ForecastRow.fromSnapshot(context, forecastSnapshot, units, today, count));
+    }
+
+    /**
+     * @return the snapshot of the pages one after another, or null if one of them has none
+     */
+    public static Snapshot concat(List<Snapshot> pages) {
+        int count = 0;
+        for (Snapshot page : pages) {
+            if (null == page) {
+                return null;
+            }
+            count += page.getCount();
+        }
+        ForecastRow[] rows = new ForecastRow[count];
+        String locationSetting = null;
+        String units = null;
+        int offset = 0;
+        for (Snapshot page : pages) {
+            if (null == locationSetting) {
+                locationSetting = page.mLocationSetting;
+                units = page.mUnits;
+            }
+            System.arraycopy(page.mRows, 0, rows, offset, page.getCount());
+            offset += page.getCount();
+        }
+        return new Snapshot(locationSetting, units, rows);
+    }
+
+    /**
+     * Makes the list rebind changed rows in place, with their payloads.  With change animations,
+     * the RecyclerView binds a changed row to a new ViewHolder to cross-fade the two, and drops
+     * the payloads, so every change would be a full rebind.
+     */
+    public static void bindChangesInPlace(RecyclerView recyclerView) {
+        recyclerView.getItemAnimator().setSupportsChangeAnimations(false);
+    }
+
+    /**
+     * Notifies the adapter of the difference between two snapshots.  The adapter's data must
+     * already be the new one.
+     *
+     * @return false if the snapshots can't be compared (another location), in which case
+     * nothing was notified and the whole data set must be considered changed
+     */
+    public static boolean dispatch(Snapshot oldRows, Snapshot newRows, RecyclerView.Adapter adapter) {
+        if (oldRows.getCount() > 0 && newRows.getCount() > 0 &&
+                !oldRows.mLocationSetting.equals(newRows.mLocationSetting)) {
+            return false;
+        }
+        Batch batch = new Batch(adapter);
+        int oldCount = oldRows.getCount();
+        int newCount = newRows.getCount();
+        int i = 0;
+        int j = 0;
+        int position = 0;
+        while (i < oldCount || j < newCount) {
+            if (j == newCount || (i < oldCount && oldRows.mRows[i].getDate() < newRows.mRows[j].getDate())) {
+                // Only in the old rows, the rows below it move up
+                batch.remove(position);
+                i++;
+            } else if (i == oldCount || newRows.mRows[j].getDate() < oldRows.mRows[i].getDate()) {
+                batch.insert(position);
+                position++;
+                j++;
+            } else {
+                batch.change(position, changedFields(oldRows.mRows[i], newRows.mRows[j]));
+                position++;
+                i++;
+                j++;
+            }
+        }
+        batch.flush();
+        return true;
+    }
+
+    private static int changedFields(ForecastRow oldRow, ForecastRow newRow) {
+        int mask = 0;
+        // The date labels are relative to today, they change when the day does
+        if (!equals(oldRow.getDateText(false), newRow.getDateText(false)) ||
+                !equals(oldRow.getDateText(true), newRow.getDateText(true))) {
+            mask |= FIELD_DATE;
+        }
+        if (oldRow.getWeatherId() != newRow.getWeatherId() ||
+                oldRow.getIconResource() != newRow.getIconResource() ||
+                oldRow.getArtResource() != newRow.getArtResource() ||
+                !equals(oldRow.getArtUrl(), newRow.getArtUrl())) {
+            mask |= FIELD_ICON;
+        }
+        if (!equals(oldRow.getDescription(), newRow.getDescription())) {
+            mask |= FIELD_DESCRIPTION;
+        }
+        if (!equals(oldRow.getHighText(), newRow.getHighText())) {
+            mask |= FIELD_HIGH;
+        }
+        if (!equals(oldRow.getLowText(), newRow.getLowText())) {
+            mask |= FIELD_LOW;
+        }
+        return mask;
+    }
+
+    private static boolean equals(String a, String b) {
+        return null == a ? null == b : a.equals(b);
+    }
+
+    /*
+        Coalesces consecutive operations of the same kind into range notifications.  Positions
+        are in the adapter's current state, i.e. after the operations already notified.
+     */
+    private static final class Batch {
+        private static final int NONE = 0;
+        private static final int INSERT = 1;
+        private static final int REMOVE = 2;
+        private static final int CHANGE = 3;
+
+        private final RecyclerView.Adapter mAdapter;
+        private int mType = NONE;
+        private int mStart;
+        private int mCount;
+        private int mPayload;
+
+        Batch(RecyclerView.Adapter adapter) {
+            mAdapter = adapter;
+        }
+
+        void insert(int position) {
+            if (mType != INSERT || position != mStart + mCount) {
+                flush();
+                mType = INSERT;
+                mStart = position;
+            }
+            mCount++;
+        }
+
+        void remove(int position) {
+            // Removed rows all happen at the same position, the following rows move up into it
+            if (mType != REMOVE || position != mStart) {
+                flush();
+                mType = REMOVE;
+                mStart = position;
+            }
+            mCount++;
+        }
+
+        void change(int position, int payload) {
+            if (payload == 0) {
+                flush();
+                return;
+            }
+            if (mType != CHANGE || payload != mPayload || position != mStart + mCount) {
+                flush();
+                mType = CHANGE;
+                mStart = position;
+                mPayload = payload;
+            }
+            mCount++;
+        }
+
+        void flush() {
+            switch (mType) {
+                case INSERT:
+                    mAdapter.notifyItemRangeInserted(mStart, mCount);
+                    break;
+                case REMOVE:
+                    mAdapter.notifyItemRangeRemoved(mStart, mCount);
+                    break;
+                case CHANGE:
+                    mAdapter.notifyItemRangeChanged(mStart, mCount, mPayload);
+                    break;
+            }
+            mType = NONE;
+            mCount = 0;
+        }
+    }
+}
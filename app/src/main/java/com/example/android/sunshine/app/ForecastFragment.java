@@ -27,14 +27,13 @@ import android.os.Bundle;
 import android.preference.PreferenceManager;
 import android.support.design.widget.AppBarLayout;
 import android.support.v4.app.Fragment;
-import android.support.v4.app.LoaderManager;
-import android.support.v4.content.CursorLoader;
-import android.support.v4.content.Loader;
 import android.support.v4.view.ViewCompat;
 import android.support.v7.widget.LinearLayoutManager;
 import android.support.v7.widget.RecyclerView;
 import android.util.AttributeSet;
+import android.util.DisplayMetrics;
 import android.util.Log;
+import android.util.TypedValue;
 import android.view.LayoutInflater;
 import android.view.Menu;
 import android.view.MenuInflater;
@@ -51,17 +50,25 @@ import com.example.android.sunshine.app.sync.SunshineSyncAdapter;
 /**
  * Encapsulates fetching the forecast and displaying it as a {@link android.support.v7.widget.RecyclerView} layout.
  */
-public class ForecastFragment extends Fragment implements LoaderManager.LoaderCallbacks<Cursor>, SharedPreferences.OnSharedPreferenceChangeListener {
+public class ForecastFragment extends Fragment implements ForecastPager.Callback, SharedPreferences.OnSharedPreferenceChangeListener {
     public static final String LOG_TAG = ForecastFragment.class.getSimpleName();
     private ForecastAdapter mForecastAdapter;
+    private ForecastPager mForecastPager;
+    private int mRestoredPageCount = 1;
+    // A next page request is posted and hasn't run yet
+    private boolean mNextPagePosted;
     private RecyclerView mRecyclerView;
     private boolean mUseTodayLayout, mAutoSelectView;
     private int mChoiceMode;
     private boolean mHoldForTransition;
     private long mInitialSelectedDate = -1;
+    // True while the rows shown come from the forecast snapshot, before the first page loads
+    private boolean mRowsShownFromSnapshot;
 
     private static final String SELECTED_KEY = "selected_position";
+    private static final String PAGE_COUNT_KEY = "page_count";
 
+    // The forecast is loaded in pages, page n uses loader FORECAST_LOADER + n
     private static final int FORECAST_LOADER = 0;
     // For the forecast view we're showing only a small subset of the stored data.
     // Specify the columns we need.
@@ -80,7 +87,18 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
             WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING,
             WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
             WeatherContract.LocationEntry.COLUMN_COORD_LAT,
-            WeatherContract.LocationEntry.COLUMN_COORD_LONG
+            WeatherContract.LocationEntry.COLUMN_COORD_LONG,
+            // Display values computed at sync time, the provider joins them in as well
+            WeatherContract.PresentationEntry.COLUMN_DESCRIPTION,
+            WeatherContract.PresentationEntry.COLUMN_ICON_RES,
+            WeatherContract.PresentationEntry.COLUMN_ART_RES,
+            WeatherContract.PresentationEntry.COLUMN_HIGH_TEXT,
+            WeatherContract.PresentationEntry.COLUMN_LOW_TEXT,
+            // The rest of what the detail pane shows, so it can take its row from the list's
+            WeatherContract.WeatherEntry.COLUMN_HUMIDITY,
+            WeatherContract.WeatherEntry.COLUMN_PRESSURE,
+            WeatherContract.WeatherEntry.COLUMN_WIND_SPEED,
+            WeatherContract.WeatherEntry.COLUMN_DEGREES
     };
 
     // These indices are tied to FORECAST_COLUMNS.  If FORECAST_COLUMNS changes, these
@@ -94,6 +112,15 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
     static final int COL_WEATHER_CONDITION_ID = 6;
     static final int COL_COORD_LAT = 7;
     static final int COL_COORD_LONG = 8;
+    static final int COL_DESCRIPTION = 9;
+    static final int COL_ICON_RES = 10;
+    static final int COL_ART_RES = 11;
+    static final int COL_HIGH_TEXT = 12;
+    static final int COL_LOW_TEXT = 13;
+    static final int COL_WEATHER_HUMIDITY = 14;
+    static final int COL_WEATHER_PRESSURE = 15;
+    static final int COL_WEATHER_WIND_SPEED = 16;
+    static final int COL_WEATHER_DEGREES = 17;
 
     /**
      * A callback interface that all activities containing this fragment must
@@ -128,6 +155,7 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
     public void onPause() {
         SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(getActivity());
         sp.unregisterOnSharedPreferenceChangeListener(this);
+        FrameStats.dump(getActivity());
         super.onPause();
     }
 
@@ -182,6 +210,8 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
         // use this setting to improve performance if you know that changes
         // in content do not change the layout size of the RecyclerView
         mRecyclerView.setHasFixedSize(true);
+        // Changed rows only rebind the fields that changed, see ForecastAdapter
+        ForecastDiff.bindChangesInPlace(mRecyclerView);
 
         // The ForecastAdapter will take data from a source and
         // use it to populate the RecyclerView it's attached to.
@@ -197,8 +227,41 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
             }
         }, emptyView, mChoiceMode);
 
+        // Share the rows of an earlier list of this activity, and inflate more while the UI
+        // thread is idle
+        mRecyclerView.setRecycledViewPool(ForecastViewPool.get(getActivity()));
+
         // specify an adapter (see also next example)
         mRecyclerView.setAdapter(mForecastAdapter);
+        ForecastViewPool.preInflate(mRecyclerView, mForecastAdapter);
+
+        // Load the next page before the user reaches the end of the loaded ones
+        mRecyclerView.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrolled(RecyclerView recyclerView, int dx, int dy) {
+                final int lastVisible = ((LinearLayoutManager) recyclerView.getLayoutManager())
+                        .findLastVisibleItemPosition();
+                mForecastAdapter.onPositionVisible(lastVisible);
+                if (null == mForecastPager) {
+                    return;
+                }
+                final int loadedCount = mForecastAdapter.getItemCount();
+                if (mNextPagePosted || !mForecastPager.wantsNextPage(lastVisible, loadedCount)) {
+                    return;
+                }
+                // Posted, since a page that is already loaded would be swapped in mid-scroll
+                mNextPagePosted = true;
+                recyclerView.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        mNextPagePosted = false;
+                        if (null != mForecastPager) {
+                            mForecastPager.onPositionVisible(lastVisible, loadedCount);
+                        }
+                    }
+                });
+            }
+        });
 
         final View parallaxView = rootView.findViewById(R.id.parallax_bar);
         if (null != parallaxView) {
@@ -244,10 +307,15 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
         // actually *lost*.
         if (savedInstanceState != null) {
             mForecastAdapter.onRestoreInstanceState(savedInstanceState);
+            mRestoredPageCount = savedInstanceState.getInt(PAGE_COUNT_KEY, 1);
         }
 
         mForecastAdapter.setUseTodayLayout(mUseTodayLayout);
 
+        // Debug builds measure the scrolling, see FrameStats
+        FrameStats.attach(mRecyclerView);
+
+        StartupTimings.markOnNextDraw(mRecyclerView, StartupTimings.FIRST_FRAME);
         return rootView;
     }
 
@@ -259,13 +327,37 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
         if ( mHoldForTransition ) {
             getActivity().supportPostponeEnterTransition();
         }
-        getLoaderManager().initLoader(FORECAST_LOADER, null, this);
+        // Show the rows of the last sync from the forecast snapshot right away, the loader's
+        // rows are reconciled with them when they arrive.  This reads the snapshot on the UI
+        // thread: read in the background, the rows would come no sooner than the loader's.  So
+        // only the rows that fit on the screen are read and formatted, the loader brings the
+        // rest.
+        if (mForecastAdapter.getItemCount() == 0) {
+            ForecastDiff.Snapshot rows = ForecastDiff.snapshot(getActivity(),
+                    Utility.getPreferredLocation(getActivity()),
+                    Utility.getPreferredUnits(getActivity()), getScreenRowCount());
+            if (null != rows && rows.getCount() > 0) {
+                mForecastAdapter.showRows(rows);
+                ForecastRepository.getInstance(getActivity()).publish(rows);
+                StartupTimings.markOnNextDraw(mRecyclerView, StartupTimings.SNAPSHOT_FRAME);
+                mRowsShownFromSnapshot = true;
+                onFirstRowsShown();
+            }
+        }
+        mForecastPager = new ForecastPager(getActivity(), getLoaderManager(), FORECAST_LOADER,
+                FORECAST_COLUMNS, COL_WEATHER_DATE, this);
+        mForecastPager.init(buildForecastUri(), mRestoredPageCount);
         super.onActivityCreated(savedInstanceState);
     }
 
-    // since we read the location when we create the loader, all we need to do is restart things
+    // since we read the location when we build the uri, all we need to do is restart things
     void onLocationChanged() {
-        getLoaderManager().restartLoader(FORECAST_LOADER, null, this);
+        mForecastPager.restart(buildForecastUri());
+    }
+
+    // the units are part of the uri as well
+    void onUnitsChanged() {
+        mForecastPager.restart(buildForecastUri());
     }
 
     private void openPreferredLocationInMap() {
@@ -297,94 +389,112 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
     public void onSaveInstanceState(Bundle outState) {
         // When tablets rotate, the currently selected list item needs to be saved.
         mForecastAdapter.onSaveInstanceState(outState);
+        if (null != mForecastPager) {
+            outState.putInt(PAGE_COUNT_KEY, mForecastPager.getPageCount());
+        }
         super.onSaveInstanceState(outState);
     }
 
 
-    @Override
-    public Loader<Cursor> onCreateLoader(int i, Bundle bundle) {
-        // This is called when a new Loader needs to be created.  This
-        // fragment only uses one loader, so we don't care about checking the id.
-
+    private Uri buildForecastUri() {
         // To only show current and future dates, filter the query to return weather only for
-        // dates after or including today.
-
-        // Sort order:  Ascending, by date.
-        String sortOrder = WeatherContract.WeatherEntry.COLUMN_DATE + " ASC";
-
+        // dates after or including today.  ForecastPager pages it, in ascending date order.
         String locationSetting = Utility.getPreferredLocation(getActivity());
-        Uri weatherForLocationUri = WeatherContract.WeatherEntry.buildWeatherLocationWithStartDate(
-                locationSetting, System.currentTimeMillis());
-
-        return new CursorLoader(getActivity(),
-                weatherForLocationUri,
-                FORECAST_COLUMNS,
-                null,
-                null,
-                sortOrder);
+        return WeatherContract.PresentationEntry.buildPresentationLocationWithStartDate(
+                locationSetting, Utility.getPreferredUnits(getActivity()),
+                System.currentTimeMillis());
     }
 
     @Override
-    public void onLoadFinished(Loader<Cursor> loader, Cursor data) {
+    public void onPagesLoaded(Cursor data, boolean firstPage) {
         mForecastAdapter.swapCursor(data);
+        if ( null != data ) {
+            // Let the detail pane take its row from these
+            ForecastRepository.getInstance(getActivity()).publish(mForecastAdapter.getRows());
+        }
+        if ( null == data || !firstPage ) {
+            // Either the loaders were reset, or a page was appended and the selection and the
+            // transition were already handled with the first one
+            return;
+        }
+        StartupTimings.markOnNextDraw(mRecyclerView, StartupTimings.DATA_FRAME);
         updateEmptyView();
         if ( data.getCount() == 0 ) {
+            mRowsShownFromSnapshot = false;
             getActivity().supportStartPostponedEnterTransition();
+        } else if ( mRowsShownFromSnapshot ) {
+            // The selection and the transition were handled with the snapshot's rows
+            mRowsShownFromSnapshot = false;
         } else {
-            mRecyclerView.getViewTreeObserver().addOnPreDrawListener(new ViewTreeObserver.OnPreDrawListener() {
-                @Override
-                public boolean onPreDraw() {
-                    // Since we know we're going to get items, we keep the listener around until
-                    // we see Children.
-                    if (mRecyclerView.getChildCount() > 0) {
-                        mRecyclerView.getViewTreeObserver().removeOnPreDrawListener(this);
-                        int position = mForecastAdapter.getSelectedItemPosition();
-                        if (position == RecyclerView.NO_POSITION &&
-                                -1 != mInitialSelectedDate) {
-                            Cursor data = mForecastAdapter.getCursor();
-                            int count = data.getCount();
-                            int dateColumn = data.getColumnIndex(WeatherContract.WeatherEntry.COLUMN_DATE);
-                            for ( int i = 0; i < count; i++ ) {
-                                data.moveToPosition(i);
-                                if ( data.getLong(dateColumn) == mInitialSelectedDate ) {
-                                    position = i;
-                                    break;
-                                }
-                            }
-                        }
-                        if (position == RecyclerView.NO_POSITION) position = 0;
-                        // If we don't need to restart the loader, and there's a desired position to restore
-                        // to, do so now.
-                        mRecyclerView.smoothScrollToPosition(position);
-                        RecyclerView.ViewHolder vh = mRecyclerView.findViewHolderForAdapterPosition(position);
-                        if (null != vh && mAutoSelectView) {
-                            mForecastAdapter.selectView(vh);
-                        }
-                        if ( mHoldForTransition ) {
-                            getActivity().supportStartPostponedEnterTransition();
-                        }
-                        return true;
-                    }
-                    return false;
-                }
-            });
+            onFirstRowsShown();
         }
+    }
 
+    // The most list rows the screen can show, at most a page
+    private int getScreenRowCount() {
+        TypedValue itemHeight = new TypedValue();
+        getActivity().getTheme().resolveAttribute(android.R.attr.listPreferredItemHeight,
+                itemHeight, true);
+        DisplayMetrics metrics = getResources().getDisplayMetrics();
+        int rowHeight = (int) itemHeight.getDimension(metrics);
+        if (rowHeight <= 0) {
+            return ForecastPager.PAGE_SIZE;
+        }
+        return Math.min(ForecastPager.PAGE_SIZE, metrics.heightPixels / rowHeight + 1);
+    }
+
+    // Restores the selection and starts the postponed transition once the rows are laid out
+    private void onFirstRowsShown() {
+        mRecyclerView.getViewTreeObserver().addOnPreDrawListener(new ViewTreeObserver.OnPreDrawListener() {
+            @Override
+            public boolean onPreDraw() {
+                // Since we know we're going to get items, we keep the listener around until
+                // we see Children.
+                if (mRecyclerView.getChildCount() > 0) {
+                    mRecyclerView.getViewTreeObserver().removeOnPreDrawListener(this);
+                    int position = mForecastAdapter.getSelectedItemPosition();
+                    if (position == RecyclerView.NO_POSITION &&
+                            -1 != mInitialSelectedDate) {
+                        position = mForecastAdapter.getPositionForDate(mInitialSelectedDate);
+                    }
+                    if (position == RecyclerView.NO_POSITION) position = 0;
+                    // If we don't need to restart the loader, and there's a desired position to restore
+                    // to, do so now.
+                    mRecyclerView.smoothScrollToPosition(position);
+                    RecyclerView.ViewHolder vh = mRecyclerView.findViewHolderForAdapterPosition(position);
+                    if (null != vh && mAutoSelectView) {
+                        mForecastAdapter.selectView(vh);
+                    }
+                    if ( mHoldForTransition ) {
+                        getActivity().supportStartPostponedEnterTransition();
+                    }
+                    return true;
+                }
+                return false;
+            }
+        });
     }
 
 
 
     @Override
-    public void onDestroy() {
-        super.onDestroy();
+    public void onDestroyView() {
+        // The pooled rows hold on to the activity, and the pre-inflation to the list
         if (null != mRecyclerView) {
-            mRecyclerView.clearOnScrollListeners();
+            ForecastViewPool.release(mRecyclerView);
         }
+        super.onDestroyView();
     }
 
     @Override
-    public void onLoaderReset(Loader<Cursor> loader) {
-        mForecastAdapter.swapCursor(null);
+    public void onDestroy() {
+        super.onDestroy();
+        if (null != mRecyclerView) {
+            mRecyclerView.clearOnScrollListeners();
+        }
+        if (null != mForecastAdapter) {
+            mForecastAdapter.releaseArt();
+        }
     }
 
     public void setUseTodayLayout(boolean useTodayLayout) {
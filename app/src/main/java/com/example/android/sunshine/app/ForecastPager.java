@@ -0,0 +1,364 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.annotation.TargetApi;
+import android.content.Context;
+import android.database.AbstractCursor;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Build;
+import android.os.Bundle;
+import android.support.v4.app.LoaderManager;
+import android.support.v4.content.CursorLoader;
+import android.support.v4.content.Loader;
+
+import com.example.android.sunshine.app.data.WeatherContract;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Loads the forecast list a page at a time, so a long history never has to fit in one
+ * CursorWindow.  Each page is a CursorLoader on a keyset page of the list URI, starting after
+ * the last date of the previous page, and the pages loaded so far are handed to the adapter as
+ * one cursor.  Every page carries the {@link ForecastDiff} snapshot of its rows, taken on the
+ * loader thread.
+ *
+ * Page n uses loader id firstLoaderId + n.  The loaders own their cursors, this class never
+ * closes them, only the merged cursors it replaces.
+ */
+public class ForecastPager implements LoaderManager.LoaderCallbacks<Cursor> {
+
+    public static final int PAGE_SIZE = 30;
+    // Start loading the next page when this many loaded rows are left below the last visible one
+    public static final int PREFETCH_DISTANCE = 10;
+
+    private static final String ARG_AFTER_DATE = "after_date";
+
+    public interface Callback {
+        /**
+         * Called with all the pages loaded so far, or null once they have all been reset.
+         *
+         * @param data the merged pages, in date order
+         * @param firstPage true if the first page was (re)loaded, rather than one being appended
+         */
+        void onPagesLoaded(Cursor data, boolean firstPage);
+    }
+
+    private final Context mContext;
+    private final LoaderManager mLoaderManager;
+    private final int mFirstLoaderId;
+    private final String[] mProjection;
+    private final int mDateColumn;
+    private final Callback mCallback;
+
+    private Uri mUri;
+    // Loaded pages, in order.  A page can be null while it's being (re)loaded.
+    private final ArrayList<Cursor> mPages = new ArrayList<Cursor>();
+    private boolean mLoadingNextPage;
+    private boolean mLastPageLoaded;
+    // The merged cursor last handed out, null if it was a page itself
+    private Cursor mMerged;
+
+    /**
+     * @param dateColumn index of the date in the projection, used as the key of the next page
+     */
+    public ForecastPager(Context context, LoaderManager loaderManager, int firstLoaderId,
+                         String[] projection, int dateColumn, Callback callback) {
+        mContext = context;
+        mLoaderManager = loaderManager;
+        mFirstLoaderId = firstLoaderId;
+        mProjection = projection;
+        mDateColumn = dateColumn;
+        mCallback = callback;
+    }
+
+    /**
+     * Starts loading the first page of uri, reconnecting to the pages that are still loaded
+     * from before a configuration change.
+     *
+     * @param uri a presentation (or weather) location URI
+     * @param pageCount the number of pages that were loaded, from onSaveInstanceState
+     */
+    public void init(Uri uri, int pageCount) {
+        mUri = uri;
+        mLoaderManager.initLoader(mFirstLoaderId, null, this);
+        for (int page = 1; page < pageCount; page++) {
+            if (null == mLoaderManager.getLoader(mFirstLoaderId + page)) {
+                break;
+            }
+            // The loader already exists, so it keeps the arguments it was created with
+            mLoaderManager.initLoader(mFirstLoaderId + page, null, this);
+        }
+    }
+
+    /**
+     * Drops every page and starts again from the first page of uri.
+     */
+    public void restart(Uri uri) {
+        mUri = uri;
+        // One past the loaded pages, in case the next one is still loading
+        for (int page = mPages.size(); page > 0; page--) {
+            mLoaderManager.destroyLoader(mFirstLoaderId + page);
+        }
+        mPages.clear();
+        mLoadingNextPage = false;
+        mLastPageLoaded = false;
+        mLoaderManager.restartLoader(mFirstLoaderId, null, this);
+    }
+
+    public int getPageCount() {
+        return mPages.size();
+    }
+
+    /**
+     * @return true if position is close enough to the end of the loaded rows to load the next
+     * page, and there is one that isn't loading yet
+     */
+    public boolean wantsNextPage(int position, int loadedCount) {
+        return !mLoadingNextPage && !mLastPageLoaded && position >= loadedCount - PREFETCH_DISTANCE;
+    }
+
+    /**
+     * Starts loading the next page if position is close to the end of the loaded rows.  Don't
+     * call this while the RecyclerView is laying out, the page may be delivered right away.
+     */
+    public void onPositionVisible(int position, int loadedCount) {
+        if (wantsNextPage(position, loadedCount)) {
+            loadNextPage();
+        }
+    }
+
+    private void loadNextPage() {
+        if (mLoadingNextPage || mLastPageLoaded || mPages.isEmpty()) {
+            return;
+        }
+        Cursor lastPage = mPages.get(mPages.size() - 1);
+        if (null == lastPage || !lastPage.moveToLast()) {
+            return;
+        }
+        Bundle args = new Bundle();
+        args.putLong(ARG_AFTER_DATE, lastPage.getLong(mDateColumn));
+        mLoadingNextPage = true;
+        mLoaderManager.restartLoader(mFirstLoaderId + mPages.size(), args, this);
+    }
+
+    @Override
+    public Loader<Cursor> onCreateLoader(int id, Bundle args) {
+        long afterDate = null == args ? -1 : args.getLong(ARG_AFTER_DATE, -1);
+        return new PageLoader(mContext,
+                WeatherContract.WeatherEntry.buildPage(mUri, afterDate, PAGE_SIZE),
+                mProjection,
+                null,
+                null,
+                WeatherContract.WeatherEntry.COLUMN_DATE + " ASC");
+    }
+
+    @Override
+    public void onLoadFinished(Loader<Cursor> loader, Cursor data) {
+        int page = loader.getId() - mFirstLoaderId;
+        while (mPages.size() <= page) {
+            mPages.add(null);
+        }
+        long previousLastDate = getLastDate(mPages.get(page));
+        mPages.set(page, data);
+        if (page == mPages.size() - 1) {
+            mLoadingNextPage = false;
+        }
+
+        if (null == data || data.getCount() < PAGE_SIZE) {
+            // Nothing after this page, drop the ones that followed it before the data changed
+            mLastPageLoaded = true;
+            for (int later = mPages.size() - 1; later > page; later--) {
+                mLoaderManager.destroyLoader(mFirstLoaderId + later);
+                mPages.remove(later);
+            }
+        } else {
+            mLastPageLoaded = false;
+            long lastDate = getLastDate(data);
+            if (page + 1 < mPages.size() && lastDate != previousLastDate) {
+                // The next page was keyed on the old last date, load it again from the new one
+                Bundle args = new Bundle();
+                args.putLong(ARG_AFTER_DATE, lastDate);
+                mLoaderManager.restartLoader(mFirstLoaderId + page + 1, args, this);
+            }
+        }
+
+        deliverPages(page == 0);
+    }
+
+    @Override
+    public void onLoaderReset(Loader<Cursor> loader) {
+        int page = loader.getId() - mFirstLoaderId;
+        if (page < mPages.size()) {
+            mPages.set(page, null);
+        }
+        deliverPages(page == 0);
+    }
+
+    private void deliverPages(boolean firstPage) {
+        Cursor previous = mMerged;
+        Cursor data = mergePages();
+        mMerged = null != data && !mPages.contains(data) ? data : null;
+        mCallback.onPagesLoaded(data, firstPage);
+        // The adapter has the new one now, the pages themselves stay open
+        if (null != previous) {
+            previous.close();
+        }
+    }
+
+    private long getLastDate(Cursor page) {
+        if (null == page || page.isClosed() || !page.moveToLast()) {
+            return -1;
+        }
+        return page.getLong(mDateColumn);
+    }
+
+    // Merges the loaded pages up to the first one that is missing
+    private Cursor mergePages() {
+        int count = 0;
+        while (count < mPages.size() && null != mPages.get(count)) {
+            count++;
+        }
+        if (count == 0) {
+            return null;
+        }
+        if (count == 1) {
+            return mPages.get(0);
+        }
+        List<ForecastDiff.Snapshot> snapshots = new ArrayList<ForecastDiff.Snapshot>(count);
+        for (Cursor page : mPages.subList(0, count)) {
+            snapshots.add(page instanceof ForecastDiff.KeyedCursor
+                    ? ((ForecastDiff.KeyedCursor) page).getSnapshot() : null);
+        }
+        Cursor merged = new PagesCursor(mPages.subList(0, count).toArray(new Cursor[count]));
+        ForecastDiff.Snapshot snapshot = ForecastDiff.concat(snapshots);
+        return null == snapshot ? merged : new ForecastDiff.KeyedCursor(merged, snapshot);
+    }
+
+    /*
+        The loaded pages as one cursor.  Unlike a MergeCursor, it doesn't register observers on
+        the pages or close them when it is closed, since the loaders own them.
+     */
+    private static class PagesCursor extends AbstractCursor {
+        private final Cursor[] mPages;
+        // The position of the first row of each page, then the total count
+        private final int[] mStarts;
+        private Cursor mCurrent;
+
+        PagesCursor(Cursor[] pages) {
+            mPages = pages;
+            mStarts = new int[pages.length + 1];
+            for (int i = 0; i < pages.length; i++) {
+                mStarts[i + 1] = mStarts[i] + pages[i].getCount();
+            }
+        }
+
+        @Override
+        public boolean onMove(int oldPosition, int newPosition) {
+            for (int i = 0; i < mPages.length; i++) {
+                if (newPosition < mStarts[i + 1]) {
+                    mCurrent = mPages[i];
+                    return mCurrent.moveToPosition(newPosition - mStarts[i]);
+                }
+            }
+            mCurrent = null;
+            return false;
+        }
+
+        @Override
+        public int getCount() {
+            return mStarts[mPages.length];
+        }
+
+        @Override
+        public String[] getColumnNames() {
+            return mPages[0].getColumnNames();
+        }
+
+        @Override
+        public String getString(int column) {
+            return mCurrent.getString(column);
+        }
+
+        @Override
+        public short getShort(int column) {
+            return mCurrent.getShort(column);
+        }
+
+        @Override
+        public int getInt(int column) {
+            return mCurrent.getInt(column);
+        }
+
+        @Override
+        public long getLong(int column) {
+            return mCurrent.getLong(column);
+        }
+
+        @Override
+        public float getFloat(int column) {
+            return mCurrent.getFloat(column);
+        }
+
+        @Override
+        public double getDouble(int column) {
+            return mCurrent.getDouble(column);
+        }
+
+        @Override
+        public byte[] getBlob(int column) {
+            return mCurrent.getBlob(column);
+        }
+
+        @Override
+        @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+        public int getType(int column) {
+            return mCurrent.getType(column);
+        }
+
+        @Override
+        public boolean isNull(int column) {
+            return mCurrent.isNull(column);
+        }
+    }
+
+    /*
+        Builds the ForecastDiff snapshot of the page on the loader thread, so the adapter only has
+        to compare and assign prepared rows when the page is delivered.
+     */
+    private static class PageLoader extends CursorLoader {
+        PageLoader(Context context, Uri uri, String[] projection, String selection,
+                   String[] selectionArgs, String sortOrder) {
+            super(context, uri, projection, selection, selectionArgs, sortOrder);
+        }
+
+        @Override
+        public Cursor loadInBackground() {
+            Cursor cursor = super.loadInBackground();
+            if (null == cursor) {
+                return null;
+            }
+            // The units are part of presentation URIs only
+            Uri uri = getUri();
+            String units = WeatherContract.PATH_PRESENTATION.equals(uri.getPathSegments().get(0))
+                    ? WeatherContract.PresentationEntry.getUnitsFromUri(uri) : null;
+            return new ForecastDiff.KeyedCursor(cursor,
+                    ForecastDiff.snapshot(getContext(), cursor, units));
+        }
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.database.ContentObserver;
+import android.os.Handler;
+import android.os.Looper;
+
+import com.example.android.sunshine.app.data.WeatherContract;
+
+import java.util.ArrayList;
+
+/**
+ * The forecast rows the list has loaded, kept for the rest of the process.  ForecastFragment
+ * publishes each load here.  The rows are dropped as soon as the provider's weather or display
+ * values change, and the listeners are told with null rows: the list may be stopped, or gone,
+ * and then doesn't publish the rows it would load again.
+ *
+ * DetailFragment looks up its day here by date, so selecting a day in the list, or opening the
+ * detail activity from it, costs no query.  It loads from the provider when the day isn't held,
+ * e.g. when started from a notification in a new process, or after a sync wrote new values.
+ *
+ * Only use this from the UI thread.
+ */
+public class ForecastRepository {
+
+    public interface Listener {
+        /**
+         * Called with the new rows each time the list loads, or with null when the provider
+         * changed and the rows held were dropped.
+         */
+        void onForecastChanged(ForecastDiff.Snapshot rows);
+    }
+
+    private static ForecastRepository sInstance;
+
+    private ForecastDiff.Snapshot mRows;
+    private final ArrayList<Listener> mListeners = new ArrayList<Listener>();
+
+    public static ForecastRepository getInstance(Context context) {
+        if (null == sInstance) {
+            sInstance = new ForecastRepository(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    private ForecastRepository(Context context) {
+        // Posted to the UI thread, like the rest of this class.  Kept for the whole process.
+        ContentObserver observer = new ContentObserver(new Handler(Looper.getMainLooper())) {
+            @Override
+            public void onChange(boolean selfChange) {
+                publish(null);
+            }
+        };
+        context.getContentResolver().registerContentObserver(
+                WeatherContract.WeatherEntry.CONTENT_URI, true, observer);
+        context.getContentResolver().registerContentObserver(
+                WeatherContract.PresentationEntry.CONTENT_URI, true, observer);
+    }
+
+    /**
+     * Replaces the rows, and tells the listeners.  The rows are immutable, so listeners can keep
+     * them.
+     *
+     * @param rows the rows loaded, or null to drop the rows held
+     */
+    public void publish(ForecastDiff.Snapshot rows) {
+        if (rows == mRows) {
+            return;
+        }
+        mRows = rows;
+        for (Listener listener : new ArrayList<Listener>(mListeners)) {
+            listener.onForecastChanged(rows);
+        }
+    }
+
+    /**
+     * @return the row of that date, or null if the rows held are for another location or units,
+     * or don't include it
+     */
+    public ForecastRow findRow(String locationSetting, String units, long date) {
+        return findRow(mRows, locationSetting, units, date);
+    }
+
+    /**
+     * @return the rows held, or null if they are for another location or units
+     */
+    public ForecastDiff.Snapshot getRows(String locationSetting, String units) {
+        return isFor(mRows, locationSetting, units) ? mRows : null;
+    }
+
+    /**
+     * Same as {@link #findRow(String, String, long)}, in the given rows.
+     */
+    public static ForecastRow findRow(ForecastDiff.Snapshot rows, String locationSetting,
+                                      String units, long date) {
+        if (!isFor(rows, locationSetting, units)) {
+            return null;
+        }
+        int position = rows.getPosition(WeatherContract.normalizeDate(date));
+        return position < 0 ? null : rows.getRow(position);
+    }
+
+    /**
+     * @return true if the rows are those of the location, in the units
+     */
+    public static boolean isFor(ForecastDiff.Snapshot rows, String locationSetting,
+                                String units) {
+        return null != rows && isFor(rows.getLocationSetting(), rows.getUnits(),
+                locationSetting, units);
+    }
+
+    /**
+     * @return true if the location and units of some rows are those given; rows of unknown
+     * location or units never match
+     */
+    public static boolean isFor(String rowsLocationSetting, String rowsUnits,
+                                String locationSetting, String units) {
+        return null != rowsLocationSetting && null != rowsUnits &&
+                rowsLocationSetting.equals(locationSetting) && rowsUnits.equals(units);
+    }
+
+    public void addListener(Listener listener) {
+        mListeners.add(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        mListeners.remove(listener);
+    }
+}
@@ -0,0 +1,219 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.database.Cursor;
+
+import com.example.android.sunshine.app.data.WeatherDateNormalizer;
+import com.example.android.sunshine.app.sync.ForecastSnapshot;
+
+/**
+ * Everything one row of the forecast list displays, formatted ahead of time.  Rows are built on
+ * the loader thread, or from the forecast snapshot at startup, so binding a row only assigns
+ * these values to its views.
+ */
+public final class ForecastRow {
+    private final long mDate;
+    private final int mWeatherId;
+    private final int mIconResource;
+    private final int mArtResource;
+    // null when using the local graphics
+    private final String mArtUrl;
+    private final String mDateText;
+    private final String mLongDateText;
+    private final String mDescription;
+    private final String mDescriptionContentDescription;
+    private final String mHighText;
+    private final String mHighContentDescription;
+    private final String mLowText;
+    private final String mLowContentDescription;
+    // Raw values, for the detail pane
+    private final double mHigh;
+    private final double mLow;
+    private final double mHumidity;
+    private final double mPressure;
+    private final double mWindSpeed;
+    private final double mDegrees;
+
+    private ForecastRow(Context context, long date, int weatherId, int iconResource,
+                        int artResource, String description, String highText, String lowText,
+                        double high, double low, double humidity, double pressure,
+                        double windSpeed, double degrees,
+                        boolean useLocalGraphics, int today) {
+        mDate = date;
+        mHigh = high;
+        mLow = low;
+        mHumidity = humidity;
+        mPressure = pressure;
+        mWindSpeed = windSpeed;
+        mDegrees = degrees;
+        mWeatherId = weatherId;
+        mIconResource = iconResource;
+        mArtResource = artResource;
+        mArtUrl = useLocalGraphics ? null : Utility.getArtUrlForWeatherCondition(context, mWeatherId);
+
+        mDateText = Utility.getFriendlyDayString(context, mDate, false);
+        // The long form only differs for today
+        mLongDateText = WeatherDateNormalizer.getInstance().getJulianDay(mDate) == today
+                ? Utility.getFriendlyDayString(context, mDate, true) : mDateText;
+
+        mDescription = description;
+        mDescriptionContentDescription = context.getString(R.string.a11y_forecast, mDescription);
+        mHighText = highText;
+        mHighContentDescription = context.getString(R.string.a11y_high_temp, mHighText);
+        mLowText = lowText;
+        mLowContentDescription = context.getString(R.string.a11y_low_temp, mLowText);
+    }
+
+    /**
+     * Builds the rows of a cursor over ForecastFragment.FORECAST_COLUMNS.  Call this from the
+     * thread that loaded the cursor.
+     */
+    public static ForecastRow[] fromCursor(Context context, Cursor cursor) {
+        ForecastRow[] rows = new ForecastRow[cursor.getCount()];
+        boolean useLocalGraphics = Utility.usingLocalGraphics(context);
+        int today = WeatherDateNormalizer.getInstance().getJulianDay(System.currentTimeMillis());
+        cursor.moveToPosition(-1);
+        for (int i = 0; cursor.moveToNext(); i++) {
+            rows[i] = new ForecastRow(context,
+                    cursor.getLong(ForecastFragment.COL_WEATHER_DATE),
+                    cursor.getInt(ForecastFragment.COL_WEATHER_CONDITION_ID),
+                    cursor.getInt(ForecastFragment.COL_ICON_RES),
+                    cursor.getInt(ForecastFragment.COL_ART_RES),
+                    cursor.getString(ForecastFragment.COL_DESCRIPTION),
+                    cursor.getString(ForecastFragment.COL_HIGH_TEXT),
+                    cursor.getString(ForecastFragment.COL_LOW_TEXT),
+                    cursor.getDouble(ForecastFragment.COL_WEATHER_MAX_TEMP),
+                    cursor.getDouble(ForecastFragment.COL_WEATHER_MIN_TEMP),
+                    cursor.getDouble(ForecastFragment.COL_WEATHER_HUMIDITY),
+                    cursor.getDouble(ForecastFragment.COL_WEATHER_PRESSURE),
+                    cursor.getDouble(ForecastFragment.COL_WEATHER_WIND_SPEED),
+                    cursor.getDouble(ForecastFragment.COL_WEATHER_DEGREES),
+                    useLocalGraphics, today);
+        }
+        cursor.moveToPosition(-1);
+        return rows;
+    }
+
+    /**
+     * Builds the rows of count days of a snapshot, starting with firstDay.
+     */
+    public static ForecastRow[] fromSnapshot(Context context, ForecastSnapshot snapshot,
+                                             String units, int firstDay, int count) {
+        ForecastRow[] rows = new ForecastRow[Math.max(0,
+                Math.min(count, snapshot.getDayCount() - firstDay))];
+        boolean useLocalGraphics = Utility.usingLocalGraphics(context);
+        int today = WeatherDateNormalizer.getInstance().getJulianDay(System.currentTimeMillis());
+        for (int i = 0; i < rows.length; i++) {
+            int day = firstDay + i;
+            rows[i] = new ForecastRow(context,
+                    snapshot.getDate(day),
+                    snapshot.getWeatherId(day),
+                    snapshot.getIconResource(day),
+                    snapshot.getArtResource(day),
+                    snapshot.getDescription(day),
+                    snapshot.getHighText(day, units),
+                    snapshot.getLowText(day, units),
+                    snapshot.getHigh(day),
+                    snapshot.getLow(day),
+                    snapshot.getHumidity(day),
+                    snapshot.getPressure(day),
+                    snapshot.getWindSpeed(day),
+                    snapshot.getDegrees(day),
+                    useLocalGraphics, today);
+        }
+        return rows;
+    }
+
+    public long getDate() {
+        return mDate;
+    }
+
+    public int getWeatherId() {
+        return mWeatherId;
+    }
+
+    public int getIconResource() {
+        return mIconResource;
+    }
+
+    public int getArtResource() {
+        return mArtResource;
+    }
+
+    /**
+     * @return the URL of the art for the weather condition, or null to use the local graphics
+     */
+    public String getArtUrl() {
+        return mArtUrl;
+    }
+
+    /**
+     * @param longToday true for the long "Today, June 8" form used by the today layout
+     */
+    public String getDateText(boolean longToday) {
+        return longToday ? mLongDateText : mDateText;
+    }
+
+    public String getDescription() {
+        return mDescription;
+    }
+
+    public String getDescriptionContentDescription() {
+        return mDescriptionContentDescription;
+    }
+
+    public String getHighText() {
+        return mHighText;
+    }
+
+    public String getHighContentDescription() {
+        return mHighContentDescription;
+    }
+
+    public String getLowText() {
+        return mLowText;
+    }
+
+    public String getLowContentDescription() {
+        return mLowContentDescription;
+    }
+
+    public double getHigh() {
+        return mHigh;
+    }
+
+    public double getLow() {
+        return mLow;
+    }
+
+    public double getHumidity() {
+        return mHumidity;
+    }
+
+    public double getPressure() {
+        return mPressure;
+    }
+
+    public double getWindSpeed() {
+        return mWindSpeed;
+    }
+
+    public double getDegrees() {
+        return mDegrees;
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.content.res.Configuration;
+import android.os.Looper;
+import android.os.MessageQueue;
+import android.support.v7.widget.RecyclerView;
+
+/**
+ * The forecast rows of the list, and the rows inflated ahead of time.
+ *
+ * Rows are inflated with the activity's LayoutInflater, like any other view of the activity, so
+ * AppCompat's widget substitution and tinting apply to pooled rows as well.  They hold on to
+ * their activity, so the pool only lives as long as the list's view: {@link #release} drops it,
+ * and a pool asked for by another activity, or in another configuration, is a new one.
+ *
+ * {@link #preInflate} fills the pool while the UI thread is idle after startup, one row per idle
+ * pass, so the first scroll finds the rows below the first screen already inflated.
+ */
+public class ForecastViewPool {
+
+    // Only the first row uses the today layout
+    private static final int TODAY_ROWS = 1;
+    // RecycledViewPool's own limit per view type
+    private static final int DEFAULT_MAX_ROWS = 5;
+
+    private static RecyclerView.RecycledViewPool sPool;
+    // The activity the pool's rows were inflated for, until released
+    private static Context sPoolContext;
+    private static Configuration sPoolConfiguration;
+    // The pool preInflate last filled, a list created again finds its rows there already
+    private static RecyclerView.RecycledViewPool sPreInflatedPool;
+    private static MessageQueue.IdleHandler sPreInflater;
+
+    /**
+     * @param context the list's activity
+     * @return the pool to give the forecast list
+     */
+    public static RecyclerView.RecycledViewPool get(Context context) {
+        Configuration configuration = context.getResources().getConfiguration();
+        if (null == sPool || sPoolContext != context ||
+                0 != sPoolConfiguration.diff(configuration)) {
+            sPool = new RecyclerView.RecycledViewPool();
+            sPool.setMaxRecycledViews(ForecastAdapter.VIEW_TYPE_TODAY, TODAY_ROWS);
+            sPool.setMaxRecycledViews(ForecastAdapter.VIEW_TYPE_FUTURE_DAY,
+                    Math.max(DEFAULT_MAX_ROWS, getFutureRows(context)));
+            sPoolContext = context;
+            sPoolConfiguration = new Configuration(configuration);
+        }
+        return sPool;
+    }
+
+    /**
+     * Inflates the rows of the list into its pool while the UI thread is idle, unless that pool
+     * was filled before.  Stops early if the list is given another adapter or pool, or is
+     * released.
+     */
+    public static void preInflate(final RecyclerView recyclerView, final ForecastAdapter adapter) {
+        final RecyclerView.RecycledViewPool pool = recyclerView.getRecycledViewPool();
+        if (pool == sPreInflatedPool) {
+            return;
+        }
+        sPreInflatedPool = pool;
+        final int[] remaining = {TODAY_ROWS, getFutureRows(recyclerView.getContext())};
+
+        stopPreInflating();
+        sPreInflater = new MessageQueue.IdleHandler() {
+            @Override
+            public boolean queueIdle() {
+                if (recyclerView.getAdapter() != adapter
+                        || recyclerView.getRecycledViewPool() != pool) {
+                    return done();
+                }
+                int viewType = ForecastAdapter.VIEW_TYPE_TODAY;
+                if (0 == remaining[viewType] || !adapter.getUseTodayLayout()) {
+                    viewType = ForecastAdapter.VIEW_TYPE_FUTURE_DAY;
+                }
+                if (0 == remaining[viewType]) {
+                    return done();
+                }
+                remaining[viewType]--;
+                pool.putRecycledView(adapter.createViewHolder(recyclerView, viewType));
+                FrameStats.addPreInflated();
+                return true;
+            }
+
+            private boolean done() {
+                if (sPreInflater == this) {
+                    sPreInflater = null;
+                }
+                return false;
+            }
+        };
+        Looper.myQueue().addIdleHandler(sPreInflater);
+    }
+
+    /**
+     * Stops inflating ahead of time and drops the pool, with the rows holding on to the
+     * activity.  Call when the list's view is destroyed.
+     */
+    public static void release(RecyclerView recyclerView) {
+        stopPreInflating();
+        if (recyclerView.getRecycledViewPool() == sPool) {
+            sPool.clear();
+            sPool = null;
+            sPoolContext = null;
+            sPreInflatedPool = null;
+        }
+    }
+
+    private static void stopPreInflating() {
+        if (null != sPreInflater) {
+            Looper.myQueue().removeIdleHandler(sPreInflater);
+            sPreInflater = null;
+        }
+    }
+
+    private static int getFutureRows(Context context) {
+        return context.getResources().getInteger(R.integer.preinflate_future_rows);
+    }
+}
@@ -0,0 +1,266 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.annotation.TargetApi;
+import android.content.Context;
+import android.os.Build;
+import android.support.v7.widget.RecyclerView;
+import android.util.Log;
+import android.view.Choreographer;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * Debug build instrumentation of the forecast list: while the list scrolls, the duration of
+ * every frame is taken from Choreographer, and the adapter reports how long each bind and each
+ * row inflation took per view type.  {@link #dump} logs the histograms and writes them to
+ * frame_stats.txt in the files directory, where a scroll benchmark or a developer can pick them
+ * up.  Frames are counted in milliseconds, binds and inflations, which mostly take less than one,
+ * in microseconds.
+ *
+ * Release builds, and devices older than Jelly Bean which have no Choreographer, record nothing.
+ */
+public class FrameStats {
+    private static final String LOG_TAG = FrameStats.class.getSimpleName();
+    private static final String FILE_NAME = "frame_stats.txt";
+
+    public static final boolean ENABLED = BuildConfig.DEBUG &&
+            Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN;
+
+    private static final long FRAME_NANOS = 16666667;
+    // Upper bounds of the histogram buckets, in the histogram's unit; the last bucket has none
+    private static final int[] FRAME_BUCKETS = {8, 16, 24, 33, 50, 100};
+    private static final int[] BIND_BUCKETS = {100, 250, 500, 1000, 2000};
+    private static final int[] INFLATE_BUCKETS = {500, 1000, 2000, 4000, 8000, 16000};
+    private static final int VIEW_TYPE_COUNT = 2;
+
+    private static final Histogram sFrames = new Histogram(FRAME_BUCKETS, "ms");
+    private static final Histogram[] sBinds = {
+            new Histogram(BIND_BUCKETS, "us"), new Histogram(BIND_BUCKETS, "us")};
+    private static final Histogram[] sInflates = {
+            new Histogram(INFLATE_BUCKETS, "us"), new Histogram(INFLATE_BUCKETS, "us")};
+    private static long sDroppedFrames;
+    // Rows ForecastViewPool inflated while idle, the others were inflated when needed
+    private static long sPreInflated;
+
+    // A Choreographer.FrameCallback, held as an Object so this class loads before Jelly Bean
+    private static Object sFrameCallback;
+    private static long sLastFrameNanos;
+
+    /**
+     * Records frames while the list is scrolling.
+     */
+    public static void attach(RecyclerView recyclerView) {
+        if (!ENABLED) {
+            return;
+        }
+        recyclerView.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrollStateChanged(RecyclerView recyclerView, int newState) {
+                if (newState == RecyclerView.SCROLL_STATE_IDLE) {
+                    stopFrames();
+                } else {
+                    startFrames();
+                }
+            }
+        });
+    }
+
+    /**
+     * @return the start time to pass to {@link #endBind}, or 0 when not recording
+     */
+    public static long startBind() {
+        return ENABLED ? System.nanoTime() : 0;
+    }
+
+    /**
+     * @param viewType the ForecastAdapter view type bound, 0 for today and 1 for a future day
+     */
+    public static void endBind(int viewType, long startNanos) {
+        if (ENABLED && viewType >= 0 && viewType < VIEW_TYPE_COUNT) {
+            sBinds[viewType].add((System.nanoTime() - startNanos) / 1000);
+        }
+    }
+
+    /**
+     * @return the start time to pass to {@link #endInflate}, or 0 when not recording
+     */
+    public static long startInflate() {
+        return startBind();
+    }
+
+    /**
+     * @param viewType the ForecastAdapter view type inflated
+     */
+    public static void endInflate(int viewType, long startNanos) {
+        if (ENABLED && viewType >= 0 && viewType < VIEW_TYPE_COUNT) {
+            sInflates[viewType].add((System.nanoTime() - startNanos) / 1000);
+        }
+    }
+
+    public static void addPreInflated() {
+        if (ENABLED) {
+            sPreInflated++;
+        }
+    }
+
+    /**
+     * Logs the statistics recorded so far, and writes them to frame_stats.txt.
+     *
+     * @return the report, or null when not recording
+     */
+    public static String dump(Context context) {
+        if (!ENABLED) {
+            return null;
+        }
+        StringBuilder report = new StringBuilder();
+        report.append("frames ").append(sFrames).append('\n');
+        report.append("dropped ").append(sDroppedFrames).append('\n');
+        report.append("bind today ").append(sBinds[0]).append('\n');
+        report.append("bind future ").append(sBinds[1]).append('\n');
+        report.append("inflate today ").append(sInflates[0]).append('\n');
+        report.append("inflate future ").append(sInflates[1]).append('\n');
+        report.append("preinflated ").append(sPreInflated).append('\n');
+        String text = report.toString();
+        Log.d(LOG_TAG, text);
+
+        FileOutputStream out = null;
+        try {
+            out = new FileOutputStream(new File(context.getFilesDir(), FILE_NAME));
+            out.write(text.getBytes("UTF-8"));
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Error writing " + FILE_NAME, e);
+        } finally {
+            if (out != null) {
+                try {
+                    out.close();
+                } catch (IOException e) {
+                    Log.e(LOG_TAG, "Error closing " + FILE_NAME, e);
+                }
+            }
+        }
+        return text;
+    }
+
+    public static void reset() {
+        sFrames.clear();
+        for (Histogram binds : sBinds) {
+            binds.clear();
+        }
+        for (Histogram inflates : sInflates) {
+            inflates.clear();
+        }
+        sDroppedFrames = 0;
+        sPreInflated = 0;
+    }
+
+    public static long getFrameCount() {
+        return sFrames.getCount();
+    }
+
+    public static long getDroppedFrames() {
+        return sDroppedFrames;
+    }
+
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    private static void startFrames() {
+        if (null != sFrameCallback) {
+            return;
+        }
+        sLastFrameNanos = 0;
+        Choreographer.FrameCallback callback = new Choreographer.FrameCallback() {
+            @Override
+            public void doFrame(long frameTimeNanos) {
+                if (sFrameCallback != this) {
+                    return;
+                }
+                if (sLastFrameNanos != 0) {
+                    long duration = frameTimeNanos - sLastFrameNanos;
+                    sFrames.add(duration / 1000000);
+                    // A frame that took n vsync intervals dropped n - 1 of them
+                    sDroppedFrames += Math.max(0, Math.round((double) duration / FRAME_NANOS) - 1);
+                }
+                sLastFrameNanos = frameTimeNanos;
+                Choreographer.getInstance().postFrameCallback(this);
+            }
+        };
+        sFrameCallback = callback;
+        Choreographer.getInstance().postFrameCallback(callback);
+    }
+
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    private static void stopFrames() {
+        if (null != sFrameCallback) {
+            Choreographer.getInstance().removeFrameCallback(
+                    (Choreographer.FrameCallback) sFrameCallback);
+            sFrameCallback = null;
+        }
+    }
+
+    // Counts of values per bucket
+    private static class Histogram {
+        private final int[] mBounds;
+        // The unit of the values and bounds, for the dump
+        private final String mUnit;
+        private final long[] mCounts;
+        private long mCount;
+
+        Histogram(int[] bounds, String unit) {
+            mBounds = bounds;
+            mUnit = unit;
+            mCounts = new long[bounds.length + 1];
+        }
+
+        void add(long value) {
+            int bucket = 0;
+            while (bucket < mBounds.length && value >= mBounds[bucket]) {
+                bucket++;
+            }
+            mCounts[bucket]++;
+            mCount++;
+        }
+
+        long getCount() {
+            return mCount;
+        }
+
+        void clear() {
+            for (int i = 0; i < mCounts.length; i++) {
+                mCounts[i] = 0;
+            }
+            mCount = 0;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder builder = new StringBuilder();
+            builder.append("n=").append(mCount);
+            for (int i = 0; i < mCounts.length; i++) {
+                builder.append(' ');
+                if (i < mBounds.length) {
+                    builder.append('<').append(mBounds[i]);
+                } else {
+                    builder.append(">=").append(mBounds[mBounds.length - 1]);
+                }
+                builder.append(mUnit).append(':').append(mCounts[i]);
+            }
+            return builder.toString();
+        }
+    }
+}
@@ -28,14 +28,26 @@ import android.widget.AbsListView;
 import android.widget.Checkable;
 
 /**
- * The ItemChoiceManager class keeps track of which positions have been selected.  Note that it
- * doesn't take advantage of new adapter features to track changes in the underlying data.
+ * The ItemChoiceManager class keeps track of which positions have been selected.  It
+ * follows rows that are inserted or removed, and confirms checked items by id when the adapter
+ * has stable ids.
  */
 public class ItemChoiceManager {
     private final String LOG_TAG = MainActivity.class.getSimpleName();
     private final String SELECTED_ITEMS_KEY = "SIK";
     private int mChoiceMode;
 
+    /**
+     * Implemented by adapters with stable ids that can find the position of an id directly,
+     * checked items are then found again without searching around their old position.
+     */
+    public interface PositionLookup {
+        /**
+         * @return the position of the item with that id, or RecyclerView.NO_POSITION
+         */
+        int getPositionForId(long id);
+    }
+
     private RecyclerView.Adapter mAdapter;
     private RecyclerView.AdapterDataObserver mAdapterDataObserver = new RecyclerView.AdapterDataObserver() {
         @Override
@@ -44,6 +56,16 @@ public class ItemChoiceManager {
             if (mAdapter != null && mAdapter.hasStableIds())
                 confirmCheckedPositionsById(mAdapter.getItemCount());
         }
+
+        @Override
+        public void onItemRangeInserted(int positionStart, int itemCount) {
+            shiftCheckedPositions(positionStart, 0, itemCount);
+        }
+
+        @Override
+        public void onItemRangeRemoved(int positionStart, int itemCount) {
+            shiftCheckedPositions(positionStart, itemCount, -itemCount);
+        }
     };
 
     private ItemChoiceManager() {
@@ -53,6 +75,7 @@ public class ItemChoiceManager {
 
     public ItemChoiceManager(RecyclerView.Adapter adapter) {
         mAdapter = adapter;
+        mAdapter.registerAdapterDataObserver(mAdapterDataObserver);
     }
 
     /**
@@ -162,7 +185,20 @@ public class ItemChoiceManager {
             final long id = mCheckedIdStates.keyAt(checkedIndex);
             final int lastPos = mCheckedIdStates.valueAt(checkedIndex);
 
-            final long lastPosId = mAdapter.getItemId(lastPos);
+            if (mAdapter instanceof PositionLookup) {
+                final int position = ((PositionLookup) mAdapter).getPositionForId(id);
+                if (position == RecyclerView.NO_POSITION) {
+                    mCheckedIdStates.delete(id);
+                    checkedIndex--;
+                } else {
+                    mCheckStates.put(position, true);
+                    mCheckedIdStates.setValueAt(checkedIndex, position);
+                }
+                continue;
+            }
+
+            final long lastPosId = lastPos < mAdapter.getItemCount()
+                    ? mAdapter.getItemId(lastPos) : RecyclerView.NO_ID;
             if (id != lastPosId) {
                 // Look around to see if the ID is nearby. If not, uncheck it.
                 final int start = Math.max(0, lastPos - CHECK_POSITION_SEARCH_DISTANCE);
@@ -188,6 +224,33 @@ public class ItemChoiceManager {
         }
     }
 
+    /*
+        Keeps the checked items on the same rows when rows are inserted or removed above them.
+        The removedCount positions from positionStart lose their checked state, and the
+        positions after them move by delta.
+     */
+    void shiftCheckedPositions(int positionStart, int removedCount, int delta) {
+        SparseBooleanArray checkStates = new SparseBooleanArray();
+        for (int i = 0; i < mCheckStates.size(); i++) {
+            int position = mCheckStates.keyAt(i);
+            if (position < positionStart) {
+                checkStates.put(position, mCheckStates.valueAt(i));
+            } else if (position >= positionStart + removedCount) {
+                checkStates.put(position + delta, mCheckStates.valueAt(i));
+            }
+        }
+        mCheckStates = checkStates;
+
+        for (int i = mCheckedIdStates.size() - 1; i >= 0; i--) {
+            int position = mCheckedIdStates.valueAt(i);
+            if (position >= positionStart + removedCount) {
+                mCheckedIdStates.setValueAt(i, position + delta);
+            } else if (position >= positionStart) {
+                mCheckedIdStates.removeAt(i);
+            }
+        }
+    }
+
     public void onBindViewHolder(RecyclerView.ViewHolder vh, int position) {
         boolean checked = isItemChecked(position);
         if (vh.itemView instanceof Checkable) {
@@ -0,0 +1,89 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.os.SystemClock;
+import android.util.Log;
+import android.view.View;
+import android.view.ViewTreeObserver;
+
+/**
+ * Measures how long a cold start takes to draw the list: the first frame, the first frame with
+ * rows from the forecast snapshot, and the first frame with rows from the provider.  The times
+ * are logged once per process, relative to the creation of the process' first component, as
+ * one line under the "SunshineStartup" tag so regressions can be tracked from logcat.
+ *
+ * A process started in the background, for a sync say, isn't a cold start of the list: when the
+ * first frame comes too long after the process started, nothing is reported.
+ */
+public class StartupTimings {
+    private static final String LOG_TAG = "SunshineStartup";
+    private static final long MAX_COLD_START_MILLIS = 10 * 1000;
+
+    public static final int FIRST_FRAME = 0;
+    public static final int SNAPSHOT_FRAME = 1;
+    public static final int DATA_FRAME = 2;
+
+    private static long sProcessStart = -1;
+    private static final long[] sFrames = {-1, -1, -1};
+    private static boolean sReported;
+
+    /**
+     * Marks the start of the process.  Called from WeatherProvider.onCreate, content providers
+     * are created before any activity.
+     */
+    public static void markProcessStart() {
+        if (sProcessStart < 0) {
+            sProcessStart = SystemClock.elapsedRealtime();
+        }
+    }
+
+    /**
+     * Records the given frame when view is next drawn, unless it was already recorded.
+     *
+     * @param frame one of FIRST_FRAME, SNAPSHOT_FRAME or DATA_FRAME
+     */
+    public static void markOnNextDraw(final View view, final int frame) {
+        if (sReported || sProcessStart < 0 || sFrames[frame] >= 0) {
+            return;
+        }
+        view.getViewTreeObserver().addOnPreDrawListener(new ViewTreeObserver.OnPreDrawListener() {
+            @Override
+            public boolean onPreDraw() {
+                view.getViewTreeObserver().removeOnPreDrawListener(this);
+                mark(frame);
+                return true;
+            }
+        });
+    }
+
+    private static void mark(int frame) {
+        if (sReported || sFrames[frame] >= 0) {
+            return;
+        }
+        sFrames[frame] = SystemClock.elapsedRealtime() - sProcessStart;
+        if (frame == FIRST_FRAME && sFrames[frame] > MAX_COLD_START_MILLIS) {
+            sReported = true;
+            return;
+        }
+        if (frame == DATA_FRAME) {
+            // The snapshot frame is -1 when there was no snapshot to show
+            Log.i(LOG_TAG, "firstFrame=" + sFrames[FIRST_FRAME] + "ms snapshotFrame="
+                    + sFrames[SNAPSHOT_FRAME] + "ms dataFrame=" + sFrames[DATA_FRAME] + "ms");
+            sReported = true;
+        }
+    }
+}
@@ -0,0 +1,235 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.graphics.Path;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+
+/**
+ * The geometry of the detail view's trend chart for one set of forecast rows: the high, low,
+ * humidity and pressure lines, and the labels of both axes.
+ *
+ * The lines are in a unit square, x from the first to the last day and y from the top of the
+ * range to the bottom, so they don't depend on the size of the view.  Temperatures share one
+ * range, humidity is 0 to 100% and pressure has its own range.  A chart is built once per
+ * dataset, off the UI thread, by {@link TrendChartLoader}; it is immutable afterwards, and
+ * {@link TrendChartView} only scales its lines when its size changes.
+ *
+ * The last chart built is kept for the process.  Selecting another day in two-pane mode creates
+ * a new detail fragment, which takes it over as long as the rows it was built from still
+ * {@link #matches match}.
+ */
+public final class TrendChart {
+
+    // The forecast window the sync stores
+    public static final int MAX_DAYS = 14;
+
+    private static volatile TrendChart sLastChart;
+
+    private final String mLocationSetting;
+    private final String mUnits;
+    // The values charted, to tell whether new rows would change the chart
+    private final long[] mDates;
+    private final double[] mHighs;
+    private final double[] mLows;
+    private final double[] mHumidities;
+    private final double[] mPressures;
+    private final float[] mX;
+    private final String[] mDayLabels;
+    private final Path mHighPath = new Path();
+    private final Path mLowPath = new Path();
+    private final Path mHumidityPath = new Path();
+    private final Path mPressurePath = new Path();
+    private final String mMaxTemperatureLabel;
+    private final String mMinTemperatureLabel;
+    private final String mMaxPressureLabel;
+    private final String mMinPressureLabel;
+
+    private TrendChart(Context context, ForecastDiff.Snapshot rows, int count) {
+        mLocationSetting = rows.getLocationSetting();
+        mUnits = rows.getUnits();
+        mDates = new long[count];
+        mHighs = new double[count];
+        mLows = new double[count];
+        mHumidities = new double[count];
+        mPressures = new double[count];
+        mX = new float[count];
+        mDayLabels = new String[count];
+
+        int maxHigh = 0;
+        int minLow = 0;
+        double minPressure = Double.MAX_VALUE;
+        double maxPressure = -Double.MAX_VALUE;
+        for (int i = 0; i < count; i++) {
+            ForecastRow row = rows.getRow(i);
+            if (row.getHigh() > rows.getRow(maxHigh).getHigh()) {
+                maxHigh = i;
+            }
+            if (row.getLow() < rows.getRow(minLow).getLow()) {
+                minLow = i;
+            }
+            minPressure = Math.min(minPressure, row.getPressure());
+            maxPressure = Math.max(maxPressure, row.getPressure());
+        }
+        double maxTemperature = rows.getRow(maxHigh).getHigh();
+        double minTemperature = rows.getRow(minLow).getLow();
+
+        SimpleDateFormat dayFormat = new SimpleDateFormat("EEE");
+        for (int i = 0; i < count; i++) {
+            ForecastRow row = rows.getRow(i);
+            mDates[i] = row.getDate();
+            mHighs[i] = row.getHigh();
+            mLows[i] = row.getLow();
+            mHumidities[i] = row.getHumidity();
+            mPressures[i] = row.getPressure();
+            mX[i] = count == 1 ? 0.5f : (float) i / (count - 1);
+            mDayLabels[i] = dayFormat.format(new Date(row.getDate()));
+
+            lineTo(mHighPath, i, mX[i], scale(row.getHigh(), minTemperature, maxTemperature));
+            lineTo(mLowPath, i, mX[i], scale(row.getLow(), minTemperature, maxTemperature));
+            lineTo(mHumidityPath, i, mX[i], scale(row.getHumidity(), 0, 100));
+            lineTo(mPressurePath, i, mX[i], scale(row.getPressure(), minPressure, maxPressure));
+        }
+
+        // The temperatures were formatted in the row's units already
+        mMaxTemperatureLabel = rows.getRow(maxHigh).getHighText();
+        mMinTemperatureLabel = rows.getRow(minLow).getLowText();
+        mMaxPressureLabel = context.getString(R.string.format_pressure, maxPressure);
+        mMinPressureLabel = context.getString(R.string.format_pressure, minPressure);
+    }
+
+    /**
+     * Builds the chart of the first {@link #MAX_DAYS} rows.  This formats the labels, so call
+     * it from a background thread.
+     *
+     * @return the chart, or null if there are no rows
+     */
+    public static TrendChart build(Context context, ForecastDiff.Snapshot rows) {
+        int count = Math.min(MAX_DAYS, rows.getCount());
+        if (count == 0) {
+            return null;
+        }
+        TrendChart chart = new TrendChart(context, rows, count);
+        sLastChart = chart;
+        return chart;
+    }
+
+    /**
+     * @return the last chart built, if it is of the location in the units, or null
+     */
+    public static TrendChart getLastChart(String locationSetting, String units) {
+        TrendChart chart = sLastChart;
+        return null != chart && ForecastRepository.isFor(chart.mLocationSetting, chart.mUnits,
+                locationSetting, units) ? chart : null;
+    }
+
+    /**
+     * @return true if the chart of the rows would be this one
+     */
+    public boolean matches(ForecastDiff.Snapshot rows) {
+        if (!ForecastRepository.isFor(rows.getLocationSetting(), rows.getUnits(),
+                mLocationSetting, mUnits) ||
+                Math.min(MAX_DAYS, rows.getCount()) != mDates.length) {
+            return false;
+        }
+        for (int i = 0; i < mDates.length; i++) {
+            ForecastRow row = rows.getRow(i);
+            if (row.getDate() != mDates[i] || row.getHigh() != mHighs[i] ||
+                    row.getLow() != mLows[i] || row.getHumidity() != mHumidities[i] ||
+                    row.getPressure() != mPressures[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // y of the value in its range, 0 at the top
+    private static float scale(double value, double min, double max) {
+        return max > min ? (float) (1 - (value - min) / (max - min)) : 0.5f;
+    }
+
+    private static void lineTo(Path path, int i, float x, float y) {
+        if (i == 0) {
+            path.moveTo(x, y);
+        } else {
+            path.lineTo(x, y);
+        }
+    }
+
+    public int getDayCount() {
+        return mDates.length;
+    }
+
+    /**
+     * @return the day of that date, or -1 if it isn't charted
+     */
+    public int getDay(long date) {
+        for (int i = 0; i < mDates.length; i++) {
+            if (mDates[i] == date) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return x of the day, between 0 and 1
+     */
+    public float getX(int day) {
+        return mX[day];
+    }
+
+    public String getDayLabel(int day) {
+        return mDayLabels[day];
+    }
+
+    // The lines are shared, callers must copy them before changing them, e.g. with Path.transform
+
+    public Path getHighPath() {
+        return mHighPath;
+    }
+
+    public Path getLowPath() {
+        return mLowPath;
+    }
+
+    public Path getHumidityPath() {
+        return mHumidityPath;
+    }
+
+    public Path getPressurePath() {
+        return mPressurePath;
+    }
+
+    public String getMaxTemperatureLabel() {
+        return mMaxTemperatureLabel;
+    }
+
+    public String getMinTemperatureLabel() {
+        return mMinTemperatureLabel;
+    }
+
+    public String getMaxPressureLabel() {
+        return mMaxPressureLabel;
+    }
+
+    public String getMinPressureLabel() {
+        return mMinPressureLabel;
+    }
+}
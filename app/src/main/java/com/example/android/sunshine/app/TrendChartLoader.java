@@ -0,0 +1,84 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.support.v4.content.AsyncTaskLoader;
+
+/**
+ * Builds the {@link TrendChart} of a location on the loader thread, or takes over the last one
+ * when the rows are the same.  The chart is kept by the loader, so the detail view gets it back
+ * after a rotation; restart the loader when the rows change.
+ */
+public class TrendChartLoader extends AsyncTaskLoader<TrendChart> {
+    private final String mLocationSetting;
+    private final String mUnits;
+    // The rows the list loaded, or null to read the location's forecast snapshot
+    private final ForecastDiff.Snapshot mRows;
+    private TrendChart mChart;
+
+    public TrendChartLoader(Context context, String locationSetting, String units,
+                            ForecastDiff.Snapshot rows) {
+        super(context);
+        mLocationSetting = locationSetting;
+        mUnits = units;
+        mRows = rows;
+    }
+
+    @Override
+    public TrendChart loadInBackground() {
+        ForecastDiff.Snapshot rows = mRows;
+        if (null == rows) {
+            rows = ForecastDiff.snapshot(getContext(), mLocationSetting, mUnits,
+                    TrendChart.MAX_DAYS);
+        }
+        if (null == rows) {
+            return null;
+        }
+        TrendChart chart = TrendChart.getLastChart(mLocationSetting, mUnits);
+        return null != chart && chart.matches(rows) ? chart : TrendChart.build(getContext(), rows);
+    }
+
+    @Override
+    public void deliverResult(TrendChart chart) {
+        mChart = chart;
+        if (isStarted()) {
+            super.deliverResult(chart);
+        }
+    }
+
+    @Override
+    protected void onStartLoading() {
+        if (null != mChart) {
+            deliverResult(mChart);
+        }
+        if (takeContentChanged() || null == mChart) {
+            forceLoad();
+        }
+    }
+
+    @Override
+    protected void onStopLoading() {
+        cancelLoad();
+    }
+
+    @Override
+    protected void onReset() {
+        super.onReset();
+        onStopLoading();
+        mChart = null;
+    }
+}
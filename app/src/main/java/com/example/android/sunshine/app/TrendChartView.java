@@ -0,0 +1,209 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.content.res.Resources;
+import android.graphics.Canvas;
+import android.graphics.Matrix;
+import android.graphics.Paint;
+import android.graphics.Path;
+import android.util.AttributeSet;
+import android.view.View;
+
+/**
+ * Draws a {@link TrendChart}: the high and low temperatures in the upper band, humidity and
+ * pressure in the lower one, and a marker on the selected day.
+ *
+ * The chart's lines are scaled to the view once per chart and size, in {@link #layoutChart},
+ * so drawing allocates and computes nothing; selecting another day only moves the marker.
+ */
+public class TrendChartView extends View {
+
+    // Parts of the plot's height
+    private static final float TEMPERATURE_BAND = 0.6f;
+    private static final float BAND_GAP = 0.1f;
+
+    private final Paint mHighPaint;
+    private final Paint mLowPaint;
+    private final Paint mHumidityPaint;
+    private final Paint mPressurePaint;
+    private final Paint mMarkerPaint;
+    private final Paint mLabelPaint;
+    private final int mLabelPadding;
+
+    private TrendChart mChart;
+    private long mSelectedDate;
+    private int mSelectedDay = -1;
+
+    // The chart laid out at the view's size
+    private final Matrix mMatrix = new Matrix();
+    private final Path mHighPath = new Path();
+    private final Path mLowPath = new Path();
+    private final Path mHumidityPath = new Path();
+    private final Path mPressurePath = new Path();
+    private float[] mDayX = new float[0];
+    private int mDayLabelStep = 1;
+    private float mPlotLeft;
+    private float mPlotRight;
+    private float mTemperatureTop;
+    private float mTemperatureBottom;
+    private float mLowerTop;
+    private float mLowerBottom;
+    private float mDayLabelY;
+
+    public TrendChartView(Context context) {
+        this(context, null);
+    }
+
+    public TrendChartView(Context context, AttributeSet attrs) {
+        this(context, attrs, 0);
+    }
+
+    public TrendChartView(Context context, AttributeSet attrs, int defStyleAttr) {
+        super(context, attrs, defStyleAttr);
+        Resources resources = getResources();
+        float lineWidth = resources.getDimension(R.dimen.trend_chart_line_width);
+        mHighPaint = linePaint(resources.getColor(R.color.white), lineWidth);
+        mLowPaint = linePaint(resources.getColor(R.color.detail_accent_label), lineWidth);
+        mHumidityPaint = linePaint(resources.getColor(R.color.primary_light), lineWidth);
+        mPressurePaint = linePaint(resources.getColor(R.color.accent), lineWidth);
+        mMarkerPaint = linePaint(resources.getColor(R.color.detail_accent_label), lineWidth / 2);
+
+        mLabelPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        mLabelPaint.setColor(resources.getColor(R.color.detail_accent_label));
+        mLabelPaint.setTextSize(resources.getDimension(R.dimen.trend_chart_label_text_size));
+        mLabelPadding = resources.getDimensionPixelSize(R.dimen.trend_chart_label_padding);
+    }
+
+    private static Paint linePaint(int color, float width) {
+        Paint paint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        paint.setColor(color);
+        paint.setStyle(Paint.Style.STROKE);
+        paint.setStrokeWidth(width);
+        paint.setStrokeJoin(Paint.Join.ROUND);
+        return paint;
+    }
+
+    /**
+     * @param chart the chart to show, or null to show none
+     */
+    public void setChart(TrendChart chart) {
+        if (chart == mChart) {
+            return;
+        }
+        mChart = chart;
+        mSelectedDay = null == chart ? -1 : chart.getDay(mSelectedDate);
+        setContentDescription(null == chart ? null :
+                getContext().getString(R.string.a11y_trend_chart, chart.getDayCount()));
+        layoutChart();
+        invalidate();
+    }
+
+    public void setSelectedDate(long date) {
+        mSelectedDate = date;
+        int day = null == mChart ? -1 : mChart.getDay(date);
+        if (day != mSelectedDay) {
+            mSelectedDay = day;
+            invalidate();
+        }
+    }
+
+    @Override
+    protected void onSizeChanged(int w, int h, int oldw, int oldh) {
+        super.onSizeChanged(w, h, oldw, oldh);
+        layoutChart();
+    }
+
+    // Scales the chart's lines to the view, and places the labels
+    private void layoutChart() {
+        if (null == mChart || getWidth() == 0) {
+            return;
+        }
+        float labelWidth = Math.max(
+                Math.max(mLabelPaint.measureText(mChart.getMaxTemperatureLabel()),
+                        mLabelPaint.measureText(mChart.getMinTemperatureLabel())),
+                Math.max(mLabelPaint.measureText(mChart.getMaxPressureLabel()),
+                        mLabelPaint.measureText(mChart.getMinPressureLabel())));
+        float labelHeight = mLabelPaint.getTextSize();
+
+        mPlotLeft = getPaddingLeft() + labelWidth + mLabelPadding;
+        mPlotRight = getWidth() - getPaddingRight() - mLabelPadding;
+        float plotTop = getPaddingTop() + labelHeight / 2;
+        mDayLabelY = getHeight() - getPaddingBottom();
+        float plotBottom = mDayLabelY - labelHeight - mLabelPadding;
+        float plotHeight = Math.max(0, plotBottom - plotTop);
+
+        mTemperatureTop = plotTop;
+        mTemperatureBottom = plotTop + plotHeight * TEMPERATURE_BAND;
+        mLowerTop = plotTop + plotHeight * (TEMPERATURE_BAND + BAND_GAP);
+        mLowerBottom = plotBottom;
+
+        float plotWidth = mPlotRight - mPlotLeft;
+        scale(mChart.getHighPath(), mHighPath, plotWidth, mTemperatureTop, mTemperatureBottom);
+        scale(mChart.getLowPath(), mLowPath, plotWidth, mTemperatureTop, mTemperatureBottom);
+        scale(mChart.getHumidityPath(), mHumidityPath, plotWidth, mLowerTop, mLowerBottom);
+        scale(mChart.getPressurePath(), mPressurePath, plotWidth, mLowerTop, mLowerBottom);
+
+        int count = mChart.getDayCount();
+        if (mDayX.length != count) {
+            mDayX = new float[count];
+        }
+        float widestDay = 0;
+        for (int i = 0; i < count; i++) {
+            mDayX[i] = mPlotLeft + mChart.getX(i) * plotWidth;
+            widestDay = Math.max(widestDay, mLabelPaint.measureText(mChart.getDayLabel(i)));
+        }
+        // Skip day labels when they would run into each other
+        float spacing = count > 1 ? plotWidth / (count - 1) : plotWidth;
+        mDayLabelStep = Math.max(1, (int) Math.ceil((widestDay + mLabelPadding) / spacing));
+    }
+
+    private void scale(Path line, Path scaled, float width, float top, float bottom) {
+        mMatrix.setScale(width, bottom - top);
+        mMatrix.postTranslate(mPlotLeft, top);
+        line.transform(mMatrix, scaled);
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        if (null == mChart) {
+            return;
+        }
+        if (mSelectedDay >= 0) {
+            float x = mDayX[mSelectedDay];
+            canvas.drawLine(x, mTemperatureTop, x, mLowerBottom, mMarkerPaint);
+        }
+
+        canvas.drawPath(mHumidityPath, mHumidityPaint);
+        canvas.drawPath(mPressurePath, mPressurePaint);
+        canvas.drawPath(mLowPath, mLowPaint);
+        canvas.drawPath(mHighPath, mHighPaint);
+
+        float left = getPaddingLeft();
+        float halfText = mLabelPaint.getTextSize() / 2;
+        mLabelPaint.setTextAlign(Paint.Align.LEFT);
+        canvas.drawText(mChart.getMaxTemperatureLabel(), left, mTemperatureTop + halfText, mLabelPaint);
+        canvas.drawText(mChart.getMinTemperatureLabel(), left, mTemperatureBottom + halfText, mLabelPaint);
+        canvas.drawText(mChart.getMaxPressureLabel(), left, mLowerTop + halfText, mLabelPaint);
+        canvas.drawText(mChart.getMinPressureLabel(), left, mLowerBottom + halfText, mLabelPaint);
+
+        mLabelPaint.setTextAlign(Paint.Align.CENTER);
+        for (int i = 0; i < mDayX.length; i += mDayLabelStep) {
+            canvas.drawText(mChart.getDayLabel(i), mDayX[i], mDayLabelY, mLabelPaint);
+        }
+    }
+}
@@ -36,18 +36,25 @@ public class Utility {
                 context.getString(R.string.pref_location_default));
     }
 
-    public static boolean isMetric(Context context) {
+    public static String getPreferredUnits(Context context) {
         SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(context);
         return prefs.getString(context.getString(R.string.pref_units_key),
-                context.getString(R.string.pref_units_metric))
-                .equals(context.getString(R.string.pref_units_metric));
+                context.getString(R.string.pref_units_metric));
+    }
+
+    public static boolean isMetric(Context context) {
+        return getPreferredUnits(context).equals(context.getString(R.string.pref_units_metric));
     }
 
     public static String formatTemperature(Context context, double temperature) {
+        return formatTemperature(context, temperature, isMetric(context));
+    }
+
+    public static String formatTemperature(Context context, double temperature, boolean isMetric) {
         // Data stored in Celsius by default.  If user prefers to see in Fahrenheit, convert
         // the values here.
         String suffix = "\u00B0";
-        if (!isMetric(context)) {
+        if (!isMetric) {
             temperature = (temperature * 1.8) + 32;
         }
 
@@ -0,0 +1,94 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentProvider;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.ParcelFileDescriptor;
+import android.webkit.MimeTypeMap;
+
+import com.example.android.sunshine.app.sync.ArtCache;
+import com.example.android.sunshine.app.sync.WallpaperCache;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+
+/**
+ * Serves the art images {@link ArtCache} rendered at the widget icon size, so the detail widget
+ * rows carry a URI the widget host opens itself, instead of a bitmap copied through every
+ * update.  Also serves the Muzei wallpapers {@link WallpaperCache} downloaded ahead of time.
+ * The images are those of the public art packs and wallpaper URLs; only files of those two
+ * directories are served, and only for reading.
+ */
+public class ArtProvider extends ContentProvider {
+
+    @Override
+    public boolean onCreate() {
+        return true;
+    }
+
+    @Override
+    public ParcelFileDescriptor openFile(Uri uri, String mode) throws FileNotFoundException {
+        if (!"r".equals(mode)) {
+            throw new FileNotFoundException("Read only: " + uri);
+        }
+        String fileName = WeatherContract.ArtEntry.getFileNameFromUri(uri);
+        File file = null;
+        if (null != fileName) {
+            file = WeatherContract.ArtEntry.isWallpaperUri(uri)
+                    ? WallpaperCache.getFile(getContext(), fileName)
+                    : ArtCache.getArtFile(getContext(), fileName);
+        }
+        if (null == file || !file.isFile()) {
+            throw new FileNotFoundException("No art at " + uri);
+        }
+        return ParcelFileDescriptor.open(file, ParcelFileDescriptor.MODE_READ_ONLY);
+    }
+
+    @Override
+    public String getType(Uri uri) {
+        if (WeatherContract.ArtEntry.isWallpaperUri(uri)) {
+            // Wallpapers keep the extension of their URL
+            String fileName = WeatherContract.ArtEntry.getFileNameFromUri(uri);
+            return MimeTypeMap.getSingleton().getMimeTypeFromExtension(
+                    fileName.substring(fileName.lastIndexOf('.') + 1));
+        }
+        return WeatherContract.ArtEntry.CONTENT_TYPE;
+    }
+
+    @Override
+    public Cursor query(Uri uri, String[] projection, String selection, String[] selectionArgs,
+                        String sortOrder) {
+        throw new UnsupportedOperationException("Unknown uri: " + uri);
+    }
+
+    @Override
+    public Uri insert(Uri uri, ContentValues values) {
+        throw new UnsupportedOperationException("Unknown uri: " + uri);
+    }
+
+    @Override
+    public int delete(Uri uri, String selection, String[] selectionArgs) {
+        throw new UnsupportedOperationException("Unknown uri: " + uri);
+    }
+
+    @Override
+    public int update(Uri uri, ContentValues values, String selection, String[] selectionArgs) {
+        throw new UnsupportedOperationException("Unknown uri: " + uri);
+    }
+}
@@ -15,11 +15,16 @@
  */
 package com.example.android.sunshine.app.data;
 
+import android.annotation.TargetApi;
 import android.content.ContentResolver;
 import android.content.ContentUris;
+import android.database.Cursor;
 import android.net.Uri;
+import android.os.Build;
+import android.os.Bundle;
 import android.provider.BaseColumns;
-import android.text.format.Time;
+
+import java.util.List;
 
 /**
  * Defines table and column names for the weather database.
@@ -43,15 +48,18 @@ public class WeatherContract {
     // At least, let's hope not.  Don't be that dev, reader.  Don't be that dev.
     public static final String PATH_WEATHER = "weather";
     public static final String PATH_LOCATION = "location";
+    public static final String PATH_PRESENTATION = "presentation";
 
     // To make it easy to query for the exact date, we normalize all dates that go into
     // the database to the start of the the Julian day at UTC.
     public static long normalizeDate(long startDate) {
         // normalize the start date to the beginning of the (UTC) day
-        Time time = new Time();
-        time.set(startDate);
-        int julianDay = Time.getJulianDay(startDate, time.gmtoff);
-        return time.setJulianDay(julianDay);
+        return WeatherDateNormalizer.getInstance().normalize(startDate);
+    }
+
+    // Batch version of normalizeDate, normalizes every value of the array in place.
+    public static void normalizeDates(long[] dates) {
+        WeatherDateNormalizer.getInstance().normalize(dates);
     }
 
     /* Inner class that defines the table contents of the location table */
@@ -126,6 +134,12 @@ public class WeatherContract {
         // Degrees are meteorological degrees (e.g, 0 is north, 180 is south).  Stored as floats.
         public static final String COLUMN_DEGREES = "degrees";
 
+        // Query parameters for keyset pagination of the location URIs (weather/* and
+        // presentation/*/*): only the rows dated after PARAM_AFTER_DATE, at most PARAM_LIMIT of
+        // them, in date order.  The next page starts after the last date of the previous one.
+        public static final String PARAM_AFTER_DATE = "after";
+        public static final String PARAM_LIMIT = "limit";
+
         public static Uri buildWeatherUri(long id) {
             return ContentUris.withAppendedId(CONTENT_URI, id);
         }
@@ -149,6 +163,21 @@ public class WeatherContract {
                     .appendPath(Long.toString(normalizeDate(date))).build();
         }
 
+        /**
+         * Adds the keyset pagination parameters to a location URI.
+         *
+         * @param locationUri a weather or presentation location URI
+         * @param afterDate the last (normalized) date of the previous page, or -1 for the first page
+         * @param limit the number of rows in a page
+         */
+        public static Uri buildPage(Uri locationUri, long afterDate, int limit) {
+            Uri.Builder builder = locationUri.buildUpon();
+            if (afterDate >= 0) {
+                builder.appendQueryParameter(PARAM_AFTER_DATE, Long.toString(afterDate));
+            }
+            return builder.appendQueryParameter(PARAM_LIMIT, Integer.toString(limit)).build();
+        }
+
         public static String getLocationSettingFromUri(Uri uri) {
             return uri.getPathSegments().get(1);
         }
@@ -157,6 +186,24 @@ public class WeatherContract {
             return Long.parseLong(uri.getPathSegments().get(2));
         }
 
+        // Returns -1 if the URI is not a page, or is the first one
+        public static long getAfterDateFromUri(Uri uri) {
+            String dateString = uri.getQueryParameter(PARAM_AFTER_DATE);
+            if (null != dateString && dateString.length() > 0)
+                return Long.parseLong(dateString);
+            else
+                return -1;
+        }
+
+        // Returns null if the URI is not a page, as expected by SQLiteQueryBuilder.query
+        public static String getLimitFromUri(Uri uri) {
+            String limitString = uri.getQueryParameter(PARAM_LIMIT);
+            if (null != limitString && limitString.length() > 0)
+                return Integer.toString(Integer.parseInt(limitString));
+            else
+                return null;
+        }
+
         public static long getStartDateFromUri(Uri uri) {
             String dateString = uri.getQueryParameter(COLUMN_DATE);
             if (null != dateString && dateString.length() > 0)
@@ -165,4 +212,304 @@ public class WeatherContract {
                 return 0;
         }
     }
+
+    /*
+        Inner class that defines the table contents of the presentation table.  Each row holds
+        the display values derived from one weather row for one unit system, so readers don't
+        have to recompute them on every bind.
+     */
+    public static final class PresentationEntry implements BaseColumns {
+
+        public static final Uri CONTENT_URI =
+                BASE_CONTENT_URI.buildUpon().appendPath(PATH_PRESENTATION).build();
+
+        public static final String CONTENT_TYPE =
+                ContentResolver.CURSOR_DIR_BASE_TYPE + "/" + CONTENT_AUTHORITY + "/" + PATH_PRESENTATION;
+        public static final String CONTENT_ITEM_TYPE =
+                ContentResolver.CURSOR_ITEM_BASE_TYPE + "/" + CONTENT_AUTHORITY + "/" + PATH_PRESENTATION;
+
+        public static final String TABLE_NAME = "presentation";
+
+        // Column with the foreign key into the weather table.
+        public static final String COLUMN_WEATHER_KEY = "weather_row_id";
+
+        // Unit system the temperatures were formatted for, one of UNITS_METRIC or UNITS_IMPERIAL
+        public static final String COLUMN_UNITS = "units";
+
+        // Localized condition string, e.g "Clear"
+        public static final String COLUMN_DESCRIPTION = "description";
+
+        // Drawable resource ids for the small icon and the large art of the condition
+        public static final String COLUMN_ICON_RES = "icon_res";
+        public static final String COLUMN_ART_RES = "art_res";
+
+        // High and low temperatures, formatted for the unit system
+        public static final String COLUMN_HIGH_TEXT = "high_text";
+        public static final String COLUMN_LOW_TEXT = "low_text";
+
+        // These match the values of the units preference
+        public static final String UNITS_METRIC = "metric";
+        public static final String UNITS_IMPERIAL = "imperial";
+
+        public static Uri buildPresentationUri(long id) {
+            return ContentUris.withAppendedId(CONTENT_URI, id);
+        }
+
+        public static Uri buildPresentationLocationWithStartDate(
+                String locationSetting, String units, long startDate) {
+            long normalizedDate = normalizeDate(startDate);
+            return CONTENT_URI.buildUpon().appendPath(locationSetting).appendPath(units)
+                    .appendQueryParameter(WeatherEntry.COLUMN_DATE, Long.toString(normalizedDate))
+                    .build();
+        }
+
+        public static Uri buildPresentationLocationWithDate(
+                String locationSetting, String units, long date) {
+            return CONTENT_URI.buildUpon().appendPath(locationSetting).appendPath(units)
+                    .appendPath(Long.toString(normalizeDate(date))).build();
+        }
+
+        public static String getLocationSettingFromUri(Uri uri) {
+            return uri.getPathSegments().get(1);
+        }
+
+        public static String getUnitsFromUri(Uri uri) {
+            return uri.getPathSegments().get(2);
+        }
+
+        public static long getDateFromUri(Uri uri) {
+            return Long.parseLong(uri.getPathSegments().get(3));
+        }
+
+        public static long getStartDateFromUri(Uri uri) {
+            return WeatherEntry.getStartDateFromUri(uri);
+        }
+    }
+
+    /*
+        The art images ArtProvider serves to the widget host, and the wallpapers it serves to
+        Muzei, by file name.  Unlike the weather data, these are readable by other apps, so
+        RemoteViews and Muzei can point to them by URI instead of carrying or downloading the
+        pixels.
+     */
+    public static final class ArtEntry {
+
+        public static final String CONTENT_AUTHORITY = "com.example.android.sunshine.app.art";
+
+        public static final Uri CONTENT_URI = Uri.parse("content://" + CONTENT_AUTHORITY);
+
+        public static final String PATH_WALLPAPER = "wallpaper";
+
+        public static final String CONTENT_TYPE = "image/png";
+
+        public static Uri buildArtUri(String fileName) {
+            return CONTENT_URI.buildUpon().appendPath(fileName).build();
+        }
+
+        public static Uri buildWallpaperUri(String fileName) {
+            return CONTENT_URI.buildUpon().appendPath(PATH_WALLPAPER).appendPath(fileName).build();
+        }
+
+        public static boolean isWallpaperUri(Uri uri) {
+            List<String> segments = uri.getPathSegments();
+            return segments.size() == 2 && PATH_WALLPAPER.equals(segments.get(0));
+        }
+
+        public static String getFileNameFromUri(Uri uri) {
+            return uri.getLastPathSegment();
+        }
+    }
+
+    /*
+        Methods of the provider's call() interface.  They answer the fixed questions of the
+        widgets, Muzei and the notification ("today for a location", "these days for a location",
+        "today for every location") with one Bundle of parallel arrays, without going through a
+        Cursor.  Callers pass EXTRA_VERSION so the provider can reject a request it doesn't know
+        how to answer, and check KEY_VERSION of the result before reading it.
+     */
+    public static final class ForecastCall {
+
+        // Bump this whenever a method's arguments or result keys change
+        public static final int VERSION = 1;
+
+        // The location setting is passed as the call() arg, except for METHOD_ALL_LOCATIONS_TODAY
+        public static final String METHOD_TODAY = "forecast_today";
+        public static final String METHOD_RANGE = "forecast_range";
+        public static final String METHOD_ALL_LOCATIONS_TODAY = "forecast_all_locations_today";
+
+        // Request extras.  The range is [EXTRA_START_DATE, EXTRA_END_DATE), both normalized.
+        public static final String EXTRA_VERSION = "version";
+        public static final String EXTRA_UNITS = "units";
+        public static final String EXTRA_START_DATE = "start_date";
+        public static final String EXTRA_END_DATE = "end_date";
+
+        // Result keys, every array has one element per day, in date order (or in location order
+        // for METHOD_ALL_LOCATIONS_TODAY)
+        public static final String KEY_VERSION = "version";
+        public static final String KEY_LOCATION_SETTINGS = "location_settings";  // String[]
+        public static final String KEY_IDS = "ids";                              // long[]
+        public static final String KEY_DATES = "dates";                          // long[]
+        public static final String KEY_WEATHER_IDS = "weather_ids";              // int[]
+        public static final String KEY_HIGHS = "highs";                          // double[]
+        public static final String KEY_LOWS = "lows";                            // double[]
+        public static final String KEY_ICON_RES = "icon_res";                    // int[]
+        public static final String KEY_ART_RES = "art_res";                      // int[]
+        public static final String KEY_DESCRIPTIONS = "descriptions";            // String[]
+        public static final String KEY_HIGH_TEXTS = "high_texts";                // String[]
+        public static final String KEY_LOW_TEXTS = "low_texts";                  // String[]
+
+        // Columns the provider selects to build a result, in this order
+        public static final String[] COLUMNS = {
+                LocationEntry.TABLE_NAME + "." + LocationEntry.COLUMN_LOCATION_SETTING,
+                WeatherEntry.TABLE_NAME + "." + WeatherEntry._ID,
+                WeatherEntry.TABLE_NAME + "." + WeatherEntry.COLUMN_DATE,
+                WeatherEntry.TABLE_NAME + "." + WeatherEntry.COLUMN_WEATHER_ID,
+                WeatherEntry.TABLE_NAME + "." + WeatherEntry.COLUMN_MAX_TEMP,
+                WeatherEntry.TABLE_NAME + "." + WeatherEntry.COLUMN_MIN_TEMP,
+                PresentationEntry.TABLE_NAME + "." + PresentationEntry.COLUMN_ICON_RES,
+                PresentationEntry.TABLE_NAME + "." + PresentationEntry.COLUMN_ART_RES,
+                PresentationEntry.TABLE_NAME + "." + PresentationEntry.COLUMN_DESCRIPTION,
+                PresentationEntry.TABLE_NAME + "." + PresentationEntry.COLUMN_HIGH_TEXT,
+                PresentationEntry.TABLE_NAME + "." + PresentationEntry.COLUMN_LOW_TEXT
+        };
+        // these indices must match COLUMNS
+        private static final int INDEX_LOCATION_SETTING = 0;
+        private static final int INDEX_ID = 1;
+        private static final int INDEX_DATE = 2;
+        private static final int INDEX_WEATHER_ID = 3;
+        private static final int INDEX_MAX_TEMP = 4;
+        private static final int INDEX_MIN_TEMP = 5;
+        private static final int INDEX_ICON_RES = 6;
+        private static final int INDEX_ART_RES = 7;
+        private static final int INDEX_DESCRIPTION = 8;
+        private static final int INDEX_HIGH_TEXT = 9;
+        private static final int INDEX_LOW_TEXT = 10;
+
+        /**
+         * @return the first day on or after today for the location, as a result with zero or one
+         * element
+         */
+        public static Bundle today(ContentResolver resolver, String locationSetting, String units) {
+            long today = normalizeDate(System.currentTimeMillis());
+            if (Build.VERSION.SDK_INT < Build.VERSION_CODES.HONEYCOMB) {
+                // call() was added in Honeycomb, ask the same question through query()
+                return query(resolver, locationSetting, units, today, Long.MAX_VALUE, 1);
+            }
+            return call(resolver, METHOD_TODAY, locationSetting, units, today, Long.MAX_VALUE);
+        }
+
+        /**
+         * @return the days of the location in [startDate, endDate)
+         */
+        public static Bundle range(ContentResolver resolver, String locationSetting, String units,
+                                   long startDate, long endDate) {
+            startDate = normalizeDate(startDate);
+            if (endDate != Long.MAX_VALUE) {
+                endDate = normalizeDate(endDate);
+            }
+            if (Build.VERSION.SDK_INT < Build.VERSION_CODES.HONEYCOMB) {
+                return query(resolver, locationSetting, units, startDate, endDate, Integer.MAX_VALUE);
+            }
+            return call(resolver, METHOD_RANGE, locationSetting, units, startDate, endDate);
+        }
+
+        /**
+         * @return the first day on or after today of every stored location, ordered by location
+         * setting.  Only available from Honeycomb, returns null before.
+         */
+        public static Bundle allLocationsToday(ContentResolver resolver, String units) {
+            if (Build.VERSION.SDK_INT < Build.VERSION_CODES.HONEYCOMB) {
+                return null;
+            }
+            return call(resolver, METHOD_ALL_LOCATIONS_TODAY, null, units,
+                    normalizeDate(System.currentTimeMillis()), Long.MAX_VALUE);
+        }
+
+        /**
+         * @return the number of days in a result, 0 for a missing or incompatible one
+         */
+        public static int getCount(Bundle result) {
+            if (null == result || result.getInt(KEY_VERSION) != VERSION) {
+                return 0;
+            }
+            long[] dates = result.getLongArray(KEY_DATES);
+            return null == dates ? 0 : dates.length;
+        }
+
+        /**
+         * Packs at most limit rows of a Cursor over COLUMNS into a result, and closes it.
+         */
+        public static Bundle toBundle(Cursor cursor, int limit) {
+            int count = Math.min(cursor.getCount(), limit);
+            String[] locationSettings = new String[count];
+            long[] ids = new long[count];
+            long[] dates = new long[count];
+            int[] weatherIds = new int[count];
+            double[] highs = new double[count];
+            double[] lows = new double[count];
+            int[] iconRes = new int[count];
+            int[] artRes = new int[count];
+            String[] descriptions = new String[count];
+            String[] highTexts = new String[count];
+            String[] lowTexts = new String[count];
+            try {
+                for (int i = 0; i < count && cursor.moveToNext(); i++) {
+                    locationSettings[i] = cursor.getString(INDEX_LOCATION_SETTING);
+                    ids[i] = cursor.getLong(INDEX_ID);
+                    dates[i] = cursor.getLong(INDEX_DATE);
+                    weatherIds[i] = cursor.getInt(INDEX_WEATHER_ID);
+                    highs[i] = cursor.getDouble(INDEX_MAX_TEMP);
+                    lows[i] = cursor.getDouble(INDEX_MIN_TEMP);
+                    iconRes[i] = cursor.getInt(INDEX_ICON_RES);
+                    artRes[i] = cursor.getInt(INDEX_ART_RES);
+                    descriptions[i] = cursor.getString(INDEX_DESCRIPTION);
+                    highTexts[i] = cursor.getString(INDEX_HIGH_TEXT);
+                    lowTexts[i] = cursor.getString(INDEX_LOW_TEXT);
+                }
+            } finally {
+                cursor.close();
+            }
+
+            Bundle result = new Bundle();
+            result.putInt(KEY_VERSION, VERSION);
+            result.putStringArray(KEY_LOCATION_SETTINGS, locationSettings);
+            result.putLongArray(KEY_IDS, ids);
+            result.putLongArray(KEY_DATES, dates);
+            result.putIntArray(KEY_WEATHER_IDS, weatherIds);
+            result.putDoubleArray(KEY_HIGHS, highs);
+            result.putDoubleArray(KEY_LOWS, lows);
+            result.putIntArray(KEY_ICON_RES, iconRes);
+            result.putIntArray(KEY_ART_RES, artRes);
+            result.putStringArray(KEY_DESCRIPTIONS, descriptions);
+            result.putStringArray(KEY_HIGH_TEXTS, highTexts);
+            result.putStringArray(KEY_LOW_TEXTS, lowTexts);
+            return result;
+        }
+
+        @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+        private static Bundle call(ContentResolver resolver, String method, String locationSetting,
+                                   String units, long startDate, long endDate) {
+            Bundle extras = new Bundle();
+            extras.putInt(EXTRA_VERSION, VERSION);
+            extras.putString(EXTRA_UNITS, units);
+            extras.putLong(EXTRA_START_DATE, startDate);
+            extras.putLong(EXTRA_END_DATE, endDate);
+            return resolver.call(BASE_CONTENT_URI, method, locationSetting, extras);
+        }
+
+        private static Bundle query(ContentResolver resolver, String locationSetting, String units,
+                                    long startDate, long endDate, int limit) {
+            Cursor cursor = resolver.query(
+                    PresentationEntry.buildPresentationLocationWithStartDate(
+                            locationSetting, units, startDate),
+                    COLUMNS,
+                    WeatherEntry.TABLE_NAME + "." + WeatherEntry.COLUMN_DATE + " < ?",
+                    new String[]{Long.toString(endDate)},
+                    WeatherEntry.TABLE_NAME + "." + WeatherEntry.COLUMN_DATE + " ASC");
+            if (null == cursor) {
+                return null;
+            }
+            return toBundle(cursor, limit);
+        }
+    }
 }
@@ -0,0 +1,151 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import java.util.TimeZone;
+
+/**
+ * Normalizes timestamps to the start of their local day using plain long arithmetic.
+ *
+ * This produces the same values as the {@link android.text.format.Time} based
+ * getJulianDay/setJulianDay round trip, but without allocating a Time for every value.  The
+ * default time zone is captured once and the boundaries of the most recently seen day are
+ * cached, so consecutive calls for the same day cost two comparisons.  Call
+ * {@link #onTimeZoneChanged()} when the device time zone changes.
+ */
+public class WeatherDateNormalizer {
+
+    // Same constants android.text.format.Time uses for its Julian day calculations
+    public static final int EPOCH_JULIAN_DAY = 2440588;
+    public static final long DAY_IN_MILLIS = 1000 * 60 * 60 * 24;
+
+    private static WeatherDateNormalizer sInstance;
+
+    private volatile TimeZone mZone;
+
+    // The most recently normalized day. Replaced as a whole so readers on other threads never
+    // see a half updated range.
+    private volatile DayRange mLastDay;
+
+    private static final class DayRange {
+        final int julianDay;
+        final long start;
+        final long end;
+
+        DayRange(int julianDay, long start, long end) {
+            this.julianDay = julianDay;
+            this.start = start;
+            this.end = end;
+        }
+    }
+
+    public static synchronized WeatherDateNormalizer getInstance() {
+        if (null == sInstance) {
+            sInstance = new WeatherDateNormalizer(TimeZone.getDefault());
+        }
+        return sInstance;
+    }
+
+    WeatherDateNormalizer(TimeZone zone) {
+        mZone = zone;
+    }
+
+    /**
+     * Re-reads the default time zone and drops the cached day.  Called from
+     * {@link TimeZoneChangedReceiver}.
+     */
+    public void onTimeZoneChanged() {
+        mZone = TimeZone.getDefault();
+        mLastDay = null;
+    }
+
+    /**
+     * @param millis a timestamp in milliseconds since the epoch
+     * @return the local Julian day containing the timestamp
+     */
+    public int getJulianDay(long millis) {
+        DayRange day = mLastDay;
+        if (null != day && millis >= day.start && millis < day.end) {
+            return day.julianDay;
+        }
+        return julianDayOf(mZone, millis);
+    }
+
+    /**
+     * @param millis a timestamp in milliseconds since the epoch
+     * @return the first millisecond of the local day containing the timestamp
+     */
+    public long normalize(long millis) {
+        DayRange day = mLastDay;
+        if (null != day && millis >= day.start && millis < day.end) {
+            return day.start;
+        }
+        TimeZone zone = mZone;
+        int julianDay = julianDayOf(zone, millis);
+        day = new DayRange(julianDay,
+                startOfJulianDay(zone, julianDay), startOfJulianDay(zone, julianDay + 1));
+        mLastDay = day;
+        return day.start;
+    }
+
+    /**
+     * Normalizes every value of the array in place.  Forecast data is sorted by day, so the
+     * cached day range is hit for every repeated day and each new day costs one lookup.
+     *
+     * @param millis timestamps in milliseconds since the epoch
+     */
+    public void normalize(long[] millis) {
+        for (int i = 0; i < millis.length; i++) {
+            millis[i] = normalize(millis[i]);
+        }
+    }
+
+    /**
+     * @param julianDay a local Julian day
+     * @return the first millisecond of that day in the current time zone
+     */
+    public long getStartOfJulianDay(int julianDay) {
+        DayRange day = mLastDay;
+        if (null != day && day.julianDay == julianDay) {
+            return day.start;
+        }
+        return startOfJulianDay(mZone, julianDay);
+    }
+
+    static int julianDayOf(TimeZone zone, long millis) {
+        // Matches Time.getJulianDay(millis, gmtoff), including its truncating division
+        return (int) ((millis + zone.getOffset(millis)) / DAY_IN_MILLIS) + EPOCH_JULIAN_DAY;
+    }
+
+    static long startOfJulianDay(TimeZone zone, int julianDay) {
+        // Local midnight expressed as if the zone were UTC
+        long localMidnight = (julianDay - EPOCH_JULIAN_DAY) * DAY_IN_MILLIS;
+
+        // Guess with the offset in effect around midnight, then correct with the offset in
+        // effect at the guess.  The two only differ when a transition is close to midnight.
+        long first = localMidnight - zone.getOffset(localMidnight - zone.getRawOffset());
+        long second = localMidnight - zone.getOffset(first);
+        if (first == second) {
+            return first;
+        }
+
+        // If a transition skips midnight the day starts at the transition itself, which is the
+        // earliest of the two candidates that still falls on the requested day.
+        long earlier = Math.min(first, second);
+        long later = Math.max(first, second);
+        return julianDayOf(zone, earlier) == julianDay ? earlier : later;
+    }
+}
@@ -20,6 +20,7 @@ import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
 
 import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.PresentationEntry;
 import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
 
 /**
@@ -28,7 +29,7 @@ import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
 public class WeatherDbHelper extends SQLiteOpenHelper {
 
     // If you change the database schema, you must increment the database version.
-    private static final int DATABASE_VERSION = 2;
+    private static final int DATABASE_VERSION = 3;
 
     static final String DATABASE_NAME = "weather.db";
 
@@ -79,8 +80,30 @@ public class WeatherDbHelper extends SQLiteOpenHelper {
                 " UNIQUE (" + WeatherEntry.COLUMN_DATE + ", " +
                 WeatherEntry.COLUMN_LOC_KEY + ") ON CONFLICT REPLACE);";
 
+        final String SQL_CREATE_PRESENTATION_TABLE = "CREATE TABLE " + PresentationEntry.TABLE_NAME + " (" +
+                PresentationEntry._ID + " INTEGER PRIMARY KEY," +
+
+                // the ID of the weather entry these display values were derived from
+                PresentationEntry.COLUMN_WEATHER_KEY + " INTEGER NOT NULL, " +
+                PresentationEntry.COLUMN_UNITS + " TEXT NOT NULL, " +
+
+                PresentationEntry.COLUMN_DESCRIPTION + " TEXT NOT NULL, " +
+                PresentationEntry.COLUMN_ICON_RES + " INTEGER NOT NULL, " +
+                PresentationEntry.COLUMN_ART_RES + " INTEGER NOT NULL, " +
+                PresentationEntry.COLUMN_HIGH_TEXT + " TEXT NOT NULL, " +
+                PresentationEntry.COLUMN_LOW_TEXT + " TEXT NOT NULL, " +
+
+                " FOREIGN KEY (" + PresentationEntry.COLUMN_WEATHER_KEY + ") REFERENCES " +
+                WeatherEntry.TABLE_NAME + " (" + WeatherEntry._ID + "), " +
+
+                // One set of display values per weather row and unit system, a rebuild
+                // simply replaces the previous one
+                " UNIQUE (" + PresentationEntry.COLUMN_WEATHER_KEY + ", " +
+                PresentationEntry.COLUMN_UNITS + ") ON CONFLICT REPLACE);";
+
         sqLiteDatabase.execSQL(SQL_CREATE_LOCATION_TABLE);
         sqLiteDatabase.execSQL(SQL_CREATE_WEATHER_TABLE);
+        sqLiteDatabase.execSQL(SQL_CREATE_PRESENTATION_TABLE);
     }
 
     @Override
@@ -93,6 +116,7 @@ public class WeatherDbHelper extends SQLiteOpenHelper {
         // should be your top priority before modifying this method.
         sqLiteDatabase.execSQL("DROP TABLE IF EXISTS " + LocationEntry.TABLE_NAME);
         sqLiteDatabase.execSQL("DROP TABLE IF EXISTS " + WeatherEntry.TABLE_NAME);
+        sqLiteDatabase.execSQL("DROP TABLE IF EXISTS " + PresentationEntry.TABLE_NAME);
         onCreate(sqLiteDatabase);
     }
 }
@@ -17,25 +17,42 @@ package com.example.android.sunshine.app.data;
 
 import android.annotation.TargetApi;
 import android.content.ContentProvider;
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
 import android.content.ContentValues;
+import android.content.OperationApplicationException;
 import android.content.UriMatcher;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteQueryBuilder;
 import android.net.Uri;
+import android.os.Bundle;
+import android.text.TextUtils;
+
+import com.example.android.sunshine.app.StartupTimings;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Set;
 
 public class WeatherProvider extends ContentProvider {
 
     // The URI Matcher used by this content provider.
     private static final UriMatcher sUriMatcher = buildUriMatcher();
     private WeatherDbHelper mOpenHelper;
+    // The uris changed by the batch applied on this thread, notified once it is committed
+    private final ThreadLocal<Set<Uri>> mBatchChanges = new ThreadLocal<Set<Uri>>();
 
     static final int WEATHER = 100;
     static final int WEATHER_WITH_LOCATION = 101;
     static final int WEATHER_WITH_LOCATION_AND_DATE = 102;
     static final int LOCATION = 300;
+    static final int PRESENTATION = 400;
+    static final int PRESENTATION_WITH_LOCATION = 401;
+    static final int PRESENTATION_WITH_LOCATION_AND_DATE = 402;
 
     private static final SQLiteQueryBuilder sWeatherByLocationSettingQueryBuilder;
+    private static final SQLiteQueryBuilder sPresentationByLocationSettingQueryBuilder;
 
     static{
         sWeatherByLocationSettingQueryBuilder = new SQLiteQueryBuilder();
@@ -49,6 +66,23 @@ public class WeatherProvider extends ContentProvider {
                         "." + WeatherContract.WeatherEntry.COLUMN_LOC_KEY +
                         " = " + WeatherContract.LocationEntry.TABLE_NAME +
                         "." + WeatherContract.LocationEntry._ID);
+
+        sPresentationByLocationSettingQueryBuilder = new SQLiteQueryBuilder();
+
+        //This is the weather/location join with one more inner join
+        //... INNER JOIN presentation ON presentation.weather_row_id = weather._id
+        sPresentationByLocationSettingQueryBuilder.setTables(
+                WeatherContract.WeatherEntry.TABLE_NAME + " INNER JOIN " +
+                        WeatherContract.LocationEntry.TABLE_NAME +
+                        " ON " + WeatherContract.WeatherEntry.TABLE_NAME +
+                        "." + WeatherContract.WeatherEntry.COLUMN_LOC_KEY +
+                        " = " + WeatherContract.LocationEntry.TABLE_NAME +
+                        "." + WeatherContract.LocationEntry._ID +
+                        " INNER JOIN " + WeatherContract.PresentationEntry.TABLE_NAME +
+                        " ON " + WeatherContract.PresentationEntry.TABLE_NAME +
+                        "." + WeatherContract.PresentationEntry.COLUMN_WEATHER_KEY +
+                        " = " + WeatherContract.WeatherEntry.TABLE_NAME +
+                        "." + WeatherContract.WeatherEntry._ID);
     }
 
     //location.location_setting = ?
@@ -68,6 +102,74 @@ public class WeatherProvider extends ContentProvider {
                     "." + WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + " = ? AND " +
                     WeatherContract.WeatherEntry.COLUMN_DATE + " = ? ";
 
+    //location.location_setting = ? AND presentation.units = ? AND date >= ?
+    private static final String sLocationSettingAndUnitsWithStartDateSelection =
+            WeatherContract.LocationEntry.TABLE_NAME +
+                    "." + WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + " = ? AND " +
+                    WeatherContract.PresentationEntry.TABLE_NAME +
+                    "." + WeatherContract.PresentationEntry.COLUMN_UNITS + " = ? AND " +
+                    WeatherContract.WeatherEntry.COLUMN_DATE + " >= ? ";
+
+    //location.location_setting = ? AND presentation.units = ? AND date = ?
+    private static final String sLocationSettingUnitsAndDaySelection =
+            WeatherContract.LocationEntry.TABLE_NAME +
+                    "." + WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + " = ? AND " +
+                    WeatherContract.PresentationEntry.TABLE_NAME +
+                    "." + WeatherContract.PresentationEntry.COLUMN_UNITS + " = ? AND " +
+                    WeatherContract.WeatherEntry.COLUMN_DATE + " = ? ";
+
+    //AND weather.date > ?
+    private static final String sAfterDateSelection =
+            " AND " + WeatherContract.WeatherEntry.TABLE_NAME +
+                    "." + WeatherContract.WeatherEntry.COLUMN_DATE + " > ? ";
+
+    //weather.date ASC, the only order keyset pages can be requested in
+    private static final String sPageSortOrder =
+            WeatherContract.WeatherEntry.TABLE_NAME +
+                    "." + WeatherContract.WeatherEntry.COLUMN_DATE + " ASC";
+
+    //weather_row_id NOT IN (SELECT _id FROM weather)
+    private static final String sOrphanedPresentationSelection =
+            WeatherContract.PresentationEntry.COLUMN_WEATHER_KEY + " NOT IN (SELECT " +
+                    WeatherContract.WeatherEntry._ID + " FROM " +
+                    WeatherContract.WeatherEntry.TABLE_NAME + ")";
+
+    //SELECT <ForecastCall.COLUMNS> FROM weather INNER JOIN location ... INNER JOIN presentation ...
+    //WHERE presentation.units = ? AND
+    private static final String sForecastCallSelect =
+            "SELECT " + TextUtils.join(", ", WeatherContract.ForecastCall.COLUMNS) +
+                    " FROM " + sPresentationByLocationSettingQueryBuilder.getTables() +
+                    " WHERE " + WeatherContract.PresentationEntry.TABLE_NAME +
+                    "." + WeatherContract.PresentationEntry.COLUMN_UNITS + " = ? AND ";
+
+    //... location.location_setting = ? AND date >= ? AND date < ? ORDER BY date ASC
+    private static final String sForecastRangeSql = sForecastCallSelect +
+            WeatherContract.LocationEntry.TABLE_NAME +
+            "." + WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + " = ? AND " +
+            WeatherContract.WeatherEntry.TABLE_NAME +
+            "." + WeatherContract.WeatherEntry.COLUMN_DATE + " >= ? AND " +
+            WeatherContract.WeatherEntry.TABLE_NAME +
+            "." + WeatherContract.WeatherEntry.COLUMN_DATE + " < ? ORDER BY " +
+            WeatherContract.WeatherEntry.TABLE_NAME +
+            "." + WeatherContract.WeatherEntry.COLUMN_DATE + " ASC";
+
+    private static final String sForecastTodaySql = sForecastRangeSql + " LIMIT 1";
+
+    //... date = (SELECT MIN(date) FROM weather AS later
+    //            WHERE later.location_id = weather.location_id AND later.date >= ?)
+    //ORDER BY location.location_setting ASC
+    private static final String sForecastAllLocationsTodaySql = sForecastCallSelect +
+            WeatherContract.WeatherEntry.TABLE_NAME +
+            "." + WeatherContract.WeatherEntry.COLUMN_DATE + " = (SELECT MIN(later." +
+            WeatherContract.WeatherEntry.COLUMN_DATE + ") FROM " +
+            WeatherContract.WeatherEntry.TABLE_NAME + " AS later WHERE later." +
+            WeatherContract.WeatherEntry.COLUMN_LOC_KEY + " = " +
+            WeatherContract.WeatherEntry.TABLE_NAME +
+            "." + WeatherContract.WeatherEntry.COLUMN_LOC_KEY + " AND later." +
+            WeatherContract.WeatherEntry.COLUMN_DATE + " >= ?) ORDER BY " +
+            WeatherContract.LocationEntry.TABLE_NAME +
+            "." + WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + " ASC";
+
     private Cursor getWeatherByLocationSetting(Uri uri, String[] projection, String sortOrder) {
         String locationSetting = WeatherContract.WeatherEntry.getLocationSettingFromUri(uri);
         long startDate = WeatherContract.WeatherEntry.getStartDateFromUri(uri);
@@ -83,13 +185,24 @@ public class WeatherProvider extends ContentProvider {
             selection = sLocationSettingWithStartDateSelection;
         }
 
+        String limit = WeatherContract.WeatherEntry.getLimitFromUri(uri);
+        long afterDate = WeatherContract.WeatherEntry.getAfterDateFromUri(uri);
+        if (afterDate >= 0) {
+            selection += sAfterDateSelection;
+            selectionArgs = appendArg(selectionArgs, Long.toString(afterDate));
+        }
+        if (limit != null || afterDate >= 0) {
+            sortOrder = sPageSortOrder;
+        }
+
         return sWeatherByLocationSettingQueryBuilder.query(mOpenHelper.getReadableDatabase(),
                 projection,
                 selection,
                 selectionArgs,
                 null,
                 null,
-                sortOrder
+                sortOrder,
+                limit
         );
     }
 
@@ -108,6 +221,70 @@ public class WeatherProvider extends ContentProvider {
         );
     }
 
+    private Cursor getPresentationByLocationSetting(Uri uri, String[] projection,
+            String selection, String[] selectionArgs, String sortOrder) {
+        String locationSetting = WeatherContract.PresentationEntry.getLocationSettingFromUri(uri);
+        String units = WeatherContract.PresentationEntry.getUnitsFromUri(uri);
+        long startDate = WeatherContract.PresentationEntry.getStartDateFromUri(uri);
+
+        // The caller's selection, if any, narrows the location's days further
+        String[] args = new String[]{locationSetting, units, Long.toString(startDate)};
+        if (!TextUtils.isEmpty(selection)) {
+            selection = sLocationSettingAndUnitsWithStartDateSelection + " AND (" + selection + ")";
+            if (selectionArgs != null) {
+                String[] allArgs = new String[args.length + selectionArgs.length];
+                System.arraycopy(args, 0, allArgs, 0, args.length);
+                System.arraycopy(selectionArgs, 0, allArgs, args.length, selectionArgs.length);
+                args = allArgs;
+            }
+        } else {
+            selection = sLocationSettingAndUnitsWithStartDateSelection;
+        }
+
+        String limit = WeatherContract.WeatherEntry.getLimitFromUri(uri);
+        long afterDate = WeatherContract.WeatherEntry.getAfterDateFromUri(uri);
+        if (afterDate >= 0) {
+            selection += sAfterDateSelection;
+            args = appendArg(args, Long.toString(afterDate));
+        }
+        if (limit != null || afterDate >= 0) {
+            sortOrder = sPageSortOrder;
+        }
+
+        return sPresentationByLocationSettingQueryBuilder.query(mOpenHelper.getReadableDatabase(),
+                projection,
+                selection,
+                args,
+                null,
+                null,
+                sortOrder,
+                limit
+        );
+    }
+
+    private static String[] appendArg(String[] args, String arg) {
+        String[] allArgs = new String[args.length + 1];
+        System.arraycopy(args, 0, allArgs, 0, args.length);
+        allArgs[args.length] = arg;
+        return allArgs;
+    }
+
+    private Cursor getPresentationByLocationSettingAndDate(
+            Uri uri, String[] projection, String sortOrder) {
+        String locationSetting = WeatherContract.PresentationEntry.getLocationSettingFromUri(uri);
+        String units = WeatherContract.PresentationEntry.getUnitsFromUri(uri);
+        long date = WeatherContract.PresentationEntry.getDateFromUri(uri);
+
+        return sPresentationByLocationSettingQueryBuilder.query(mOpenHelper.getReadableDatabase(),
+                projection,
+                sLocationSettingUnitsAndDaySelection,
+                new String[]{locationSetting, units, Long.toString(date)},
+                null,
+                null,
+                sortOrder
+        );
+    }
+
     /*
         Students: Here is where you need to create the UriMatcher. This UriMatcher will
         match each URI to the WEATHER, WEATHER_WITH_LOCATION, WEATHER_WITH_LOCATION_AND_DATE,
@@ -130,6 +307,10 @@ public class WeatherProvider extends ContentProvider {
         matcher.addURI(authority, WeatherContract.PATH_WEATHER + "/*/#", WEATHER_WITH_LOCATION_AND_DATE);
 
         matcher.addURI(authority, WeatherContract.PATH_LOCATION, LOCATION);
+
+        matcher.addURI(authority, WeatherContract.PATH_PRESENTATION, PRESENTATION);
+        matcher.addURI(authority, WeatherContract.PATH_PRESENTATION + "/*/*", PRESENTATION_WITH_LOCATION);
+        matcher.addURI(authority, WeatherContract.PATH_PRESENTATION + "/*/*/#", PRESENTATION_WITH_LOCATION_AND_DATE);
         return matcher;
     }
 
@@ -139,6 +320,7 @@ public class WeatherProvider extends ContentProvider {
      */
     @Override
     public boolean onCreate() {
+        StartupTimings.markProcessStart();
         mOpenHelper = new WeatherDbHelper(getContext());
         return true;
     }
@@ -164,6 +346,12 @@ public class WeatherProvider extends ContentProvider {
                 return WeatherContract.WeatherEntry.CONTENT_TYPE;
             case LOCATION:
                 return WeatherContract.LocationEntry.CONTENT_TYPE;
+            case PRESENTATION_WITH_LOCATION_AND_DATE:
+                return WeatherContract.PresentationEntry.CONTENT_ITEM_TYPE;
+            case PRESENTATION_WITH_LOCATION:
+                return WeatherContract.PresentationEntry.CONTENT_TYPE;
+            case PRESENTATION:
+                return WeatherContract.PresentationEntry.CONTENT_TYPE;
             default:
                 throw new UnsupportedOperationException("Unknown uri: " + uri);
         }
@@ -213,6 +401,30 @@ public class WeatherProvider extends ContentProvider {
                 );
                 break;
             }
+            // "presentation/*/*/#"
+            case PRESENTATION_WITH_LOCATION_AND_DATE: {
+                retCursor = getPresentationByLocationSettingAndDate(uri, projection, sortOrder);
+                break;
+            }
+            // "presentation/*/*"
+            case PRESENTATION_WITH_LOCATION: {
+                retCursor = getPresentationByLocationSetting(uri, projection, selection,
+                        selectionArgs, sortOrder);
+                break;
+            }
+            // "presentation"
+            case PRESENTATION: {
+                retCursor = mOpenHelper.getReadableDatabase().query(
+                        WeatherContract.PresentationEntry.TABLE_NAME,
+                        projection,
+                        selection,
+                        selectionArgs,
+                        null,
+                        null,
+                        sortOrder
+                );
+                break;
+            }
 
             default:
                 throw new UnsupportedOperationException("Unknown uri: " + uri);
@@ -248,10 +460,18 @@ public class WeatherProvider extends ContentProvider {
                     throw new android.database.SQLException("Failed to insert row into " + uri);
                 break;
             }
+            case PRESENTATION: {
+                long _id = db.insert(WeatherContract.PresentationEntry.TABLE_NAME, null, values);
+                if ( _id > 0 )
+                    returnUri = WeatherContract.PresentationEntry.buildPresentationUri(_id);
+                else
+                    throw new android.database.SQLException("Failed to insert row into " + uri);
+                break;
+            }
             default:
                 throw new UnsupportedOperationException("Unknown uri: " + uri);
         }
-        getContext().getContentResolver().notifyChange(uri, null);
+        notifyChange(uri);
         return returnUri;
     }
 
@@ -266,17 +486,24 @@ public class WeatherProvider extends ContentProvider {
             case WEATHER:
                 rowsDeleted = db.delete(
                         WeatherContract.WeatherEntry.TABLE_NAME, selection, selectionArgs);
+                // display values of deleted weather rows are useless, drop them as well
+                db.delete(WeatherContract.PresentationEntry.TABLE_NAME,
+                        sOrphanedPresentationSelection, null);
                 break;
             case LOCATION:
                 rowsDeleted = db.delete(
                         WeatherContract.LocationEntry.TABLE_NAME, selection, selectionArgs);
                 break;
+            case PRESENTATION:
+                rowsDeleted = db.delete(
+                        WeatherContract.PresentationEntry.TABLE_NAME, selection, selectionArgs);
+                break;
             default:
                 throw new UnsupportedOperationException("Unknown uri: " + uri);
         }
         // Because a null deletes all rows
         if (rowsDeleted != 0) {
-            getContext().getContentResolver().notifyChange(uri, null);
+            notifyChange(uri);
         }
         return rowsDeleted;
     }
@@ -289,6 +516,22 @@ public class WeatherProvider extends ContentProvider {
         }
     }
 
+    private void normalizeDates(ContentValues[] values) {
+        // normalize the date values of a whole batch in one pass
+        final String dateColumn = WeatherContract.WeatherEntry.COLUMN_DATE;
+        long[] dates = new long[values.length];
+        for (int i = 0; i < values.length; i++) {
+            Long dateValue = values[i].getAsLong(dateColumn);
+            dates[i] = null == dateValue ? 0 : dateValue;
+        }
+        WeatherContract.normalizeDates(dates);
+        for (int i = 0; i < values.length; i++) {
+            if (values[i].containsKey(dateColumn)) {
+                values[i].put(dateColumn, dates[i]);
+            }
+        }
+    }
+
     @Override
     public int update(
             Uri uri, ContentValues values, String selection, String[] selectionArgs) {
@@ -306,11 +549,15 @@ public class WeatherProvider extends ContentProvider {
                 rowsUpdated = db.update(WeatherContract.LocationEntry.TABLE_NAME, values, selection,
                         selectionArgs);
                 break;
+            case PRESENTATION:
+                rowsUpdated = db.update(WeatherContract.PresentationEntry.TABLE_NAME, values, selection,
+                        selectionArgs);
+                break;
             default:
                 throw new UnsupportedOperationException("Unknown uri: " + uri);
         }
         if (rowsUpdated != 0) {
-            getContext().getContentResolver().notifyChange(uri, null);
+            notifyChange(uri);
         }
         return rowsUpdated;
     }
@@ -319,13 +566,14 @@ public class WeatherProvider extends ContentProvider {
     public int bulkInsert(Uri uri, ContentValues[] values) {
         final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
         final int match = sUriMatcher.match(uri);
+        int returnCount;
         switch (match) {
             case WEATHER:
+                normalizeDates(values);
                 db.beginTransaction();
-                int returnCount = 0;
+                returnCount = 0;
                 try {
                     for (ContentValues value : values) {
-                        normalizeDate(value);
                         long _id = db.insert(WeatherContract.WeatherEntry.TABLE_NAME, null, value);
                         if (_id != -1) {
                             returnCount++;
@@ -335,13 +583,119 @@ public class WeatherProvider extends ContentProvider {
                 } finally {
                     db.endTransaction();
                 }
-                getContext().getContentResolver().notifyChange(uri, null);
+                notifyChange(uri);
+                return returnCount;
+            case PRESENTATION:
+                db.beginTransaction();
+                returnCount = 0;
+                try {
+                    // Replacing a weather row gives it a new id, so clear out display values
+                    // that no longer belong to any row before adding the new ones
+                    db.delete(WeatherContract.PresentationEntry.TABLE_NAME,
+                            sOrphanedPresentationSelection, null);
+                    for (ContentValues value : values) {
+                        long _id = db.insert(WeatherContract.PresentationEntry.TABLE_NAME, null, value);
+                        if (_id != -1) {
+                            returnCount++;
+                        }
+                    }
+                    db.setTransactionSuccessful();
+                } finally {
+                    db.endTransaction();
+                }
+                notifyChange(uri);
                 return returnCount;
             default:
                 return super.bulkInsert(uri, values);
         }
     }
 
+    /*
+        Applies the whole batch in one transaction, so readers see all of it or none of it.
+     */
+    @Override
+    public ContentProviderResult[] applyBatch(ArrayList<ContentProviderOperation> operations)
+            throws OperationApplicationException {
+        final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
+        Set<Uri> changes = new HashSet<Uri>();
+        mBatchChanges.set(changes);
+        ContentProviderResult[] results;
+        db.beginTransaction();
+        try {
+            results = super.applyBatch(operations);
+            // Weather rows replaced by the batch leave their display values behind
+            db.delete(WeatherContract.PresentationEntry.TABLE_NAME,
+                    sOrphanedPresentationSelection, null);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+            mBatchChanges.remove();
+        }
+        for (Uri uri : changes) {
+            getContext().getContentResolver().notifyChange(uri, null);
+        }
+        return results;
+    }
+
+    private void notifyChange(Uri uri) {
+        Set<Uri> batchChanges = mBatchChanges.get();
+        if (null != batchChanges) {
+            batchChanges.add(uri);
+        } else {
+            getContext().getContentResolver().notifyChange(uri, null);
+        }
+    }
+
+    /*
+        The call() fast path, see WeatherContract.ForecastCall.  Each method runs one fixed
+        statement and returns the rows as a Bundle of arrays instead of a Cursor.
+     */
+    @Override
+    @TargetApi(11)
+    public Bundle call(String method, String arg, Bundle extras) {
+        final String sql;
+        boolean allLocations = false;
+        switch (method) {
+            case WeatherContract.ForecastCall.METHOD_TODAY:
+                sql = sForecastTodaySql;
+                break;
+            case WeatherContract.ForecastCall.METHOD_RANGE:
+                sql = sForecastRangeSql;
+                break;
+            case WeatherContract.ForecastCall.METHOD_ALL_LOCATIONS_TODAY:
+                sql = sForecastAllLocationsTodaySql;
+                allLocations = true;
+                break;
+            default:
+                return super.call(method, arg, extras);
+        }
+
+        int version = extras == null ? 0 : extras.getInt(WeatherContract.ForecastCall.EXTRA_VERSION);
+        if (version != WeatherContract.ForecastCall.VERSION) {
+            throw new UnsupportedOperationException("Unsupported call version: " + version);
+        }
+        String units = extras.getString(WeatherContract.ForecastCall.EXTRA_UNITS);
+        if (units == null) {
+            units = WeatherContract.PresentationEntry.UNITS_METRIC;
+        }
+        String startDate = Long.toString(extras.getLong(WeatherContract.ForecastCall.EXTRA_START_DATE));
+        String endDate = Long.toString(
+                extras.getLong(WeatherContract.ForecastCall.EXTRA_END_DATE, Long.MAX_VALUE));
+
+        String[] selectionArgs;
+        if (allLocations) {
+            selectionArgs = new String[]{units, startDate};
+        } else {
+            if (arg == null) {
+                throw new IllegalArgumentException("Missing location setting for " + method);
+            }
+            selectionArgs = new String[]{units, arg, startDate, endDate};
+        }
+
+        Cursor cursor = mOpenHelper.getReadableDatabase().rawQuery(sql, selectionArgs);
+        return WeatherContract.ForecastCall.toBundle(cursor, Integer.MAX_VALUE);
+    }
+
     // You do not need to call this method. This is a method specifically to assist the testing
     // framework in running smoothly. You can read more at:
     // http://developer.android.com/reference/android/content/ContentProvider.html#shutdown()
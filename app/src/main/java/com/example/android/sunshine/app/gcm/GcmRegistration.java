@@ -15,29 +15,39 @@
  */
 package com.example.android.sunshine.app.gcm;
 
-import android.app.IntentService;
+import android.content.Context;
 import android.content.Intent;
 import android.content.SharedPreferences;
 import android.preference.PreferenceManager;
 import android.util.Log;
-import android.widget.Toast;
 
 import com.example.android.sunshine.app.MainActivity;
 import com.example.android.sunshine.app.R;
+import com.example.android.sunshine.app.sync.BackgroundWorkService;
 import com.google.android.gms.gcm.GoogleCloudMessaging;
 import com.google.android.gms.iid.InstanceID;
 
+/**
+ * Registers the app with GCM.  It runs on the {@link BackgroundWorkService}, after the work
+ * the user can see.
+ */
+public class GcmRegistration {
+    private static final String TAG = "GcmRegistration";
 
-public class RegistrationIntentService extends IntentService {
-    private static final String TAG = "RegIntentService";
-
-    public RegistrationIntentService() {
-        super(TAG);
+    /**
+     * Starts the registration in the background.
+     */
+    public static void start(Context context) {
+        BackgroundWorkService.enqueue(context,
+                new Intent(BackgroundWorkService.ACTION_REGISTER_GCM));
     }
 
-    @Override
-    protected void onHandleIntent(Intent intent) {
-        SharedPreferences sharedPreferences = PreferenceManager.getDefaultSharedPreferences(this);
+    /**
+     * Gets the token and sends it to the server.  This goes out to the network, so it must not
+     * be called from the UI thread.
+     */
+    public static void register(Context context) {
+        SharedPreferences sharedPreferences = PreferenceManager.getDefaultSharedPreferences(context);
 
         try {
             // In the (unlikely) event that multiple refresh operations occur simultaneously,
@@ -45,10 +55,10 @@ public class RegistrationIntentService extends IntentService {
             synchronized (TAG) {
                 // Initially this call goes out to the network to retrieve the token, subsequent calls
                 // are local.
-                InstanceID instanceID = InstanceID.getInstance(this);
+                InstanceID instanceID = InstanceID.getInstance(context);
 
                 // TODO: gcm_default sender ID comes from the API console
-                String senderId = getString(R.string.gcm_defaultSenderId);
+                String senderId = context.getString(R.string.gcm_defaultSenderId);
                 if ( senderId.length() != 0 ) {
                     String token = instanceID.getToken(senderId,
                             GoogleCloudMessaging.INSTANCE_ID_SCOPE, null);
@@ -76,7 +86,7 @@ public class RegistrationIntentService extends IntentService {
      *
      * @param token The new token.
      */
-    private void sendRegistrationToServer(String token) {
+    private static void sendRegistrationToServer(String token) {
         Log.i(TAG, "GCM Registration Token: " + token);
     }
 }
@@ -16,19 +16,13 @@
 
 package com.example.android.sunshine.app.gcm;
 
-import android.app.NotificationManager;
-import android.app.PendingIntent;
-import android.content.Context;
-import android.content.Intent;
-import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.os.Bundle;
-import android.support.v4.app.NotificationCompat;
 import android.util.Log;
 import android.widget.Toast;
 
-import com.example.android.sunshine.app.MainActivity;
 import com.example.android.sunshine.app.R;
+import com.example.android.sunshine.app.sync.ForecastChange;
+import com.example.android.sunshine.app.sync.ForecastDelta;
 import com.google.android.gms.gcm.GcmListenerService;
 
 import org.json.JSONException;
@@ -41,8 +35,11 @@ public class MyGcmListenerService extends GcmListenerService {
     private static final String EXTRA_DATA = "data";
     private static final String EXTRA_WEATHER = "weather";
     private static final String EXTRA_LOCATION = "location";
-
-    public static final int NOTIFICATION_ID = 1;
+    private static final String EXTRA_COLLAPSE_KEY = "collapse_key";
+    // The collapse key of messages the server didn't give one
+    private static final String DEFAULT_COLLAPSE_KEY = "do_not_collapse";
+    // Changed days of a location, see ForecastDelta
+    private static final String EXTRA_FORECAST_DELTA = "forecast_delta";
 
     /**
      * Called when message is received.
@@ -61,15 +58,31 @@ public class MyGcmListenerService extends GcmListenerService {
                 Toast.makeText(this, "SenderID string needs to be set", Toast.LENGTH_LONG).show();
             }
             // Not a bad idea to check that the message is coming from your server.
-            if ((senderId).equals(from)) {
-                // Process message and then post a notification of the received message.
+            if ((senderId).equals(from) && data.containsKey(EXTRA_FORECAST_DELTA)) {
+                // Written straight to the provider, the widgets and Muzei follow from the change
+                try {
+                    ForecastDelta delta = ForecastDelta.parse(data.getString(EXTRA_FORECAST_DELTA));
+                    ForecastChange change = delta.apply(this);
+                    Log.d(TAG, "Applied forecast delta " + change);
+                } catch (JSONException e) {
+                    Log.w(TAG, "Ignoring invalid forecast delta", e);
+                }
+            } else if ((senderId).equals(from)) {
+                // Process message and then add it to the alerts notification.
                 try {
                     JSONObject jsonObject = new JSONObject(data.getString(EXTRA_DATA));
                     String weather = jsonObject.getString(EXTRA_WEATHER);
                     String location = jsonObject.getString(EXTRA_LOCATION);
                     String alert =
                             String.format(getString(R.string.gcm_weather_alert), weather, location);
-                    sendNotification(alert);
+                    // Merged with the other alerts, duplicates and bursts don't each notify.
+                    // Alerts the server collapses together replace each other here too, GCM
+                    // sends the default key when the server didn't set one.
+                    String collapseKey = data.getString(EXTRA_COLLAPSE_KEY);
+                    if (null == collapseKey || DEFAULT_COLLAPSE_KEY.equals(collapseKey)) {
+                        collapseKey = weather;
+                    }
+                    WeatherAlerts.receive(this, location, collapseKey, alert);
                 } catch (JSONException e) {
                     // JSON parsing failed, so we just let this message go, since GCM is not one
                     // of our critical features.
@@ -78,33 +91,4 @@ public class MyGcmListenerService extends GcmListenerService {
             Log.i(TAG, "Received: " + data.toString());
         }
     }
-
-    /**
-     *  Put the message into a notification and post it.
-     *  This is just one simple example of what you might choose to do with a GCM message.
-     *
-     * @param message The alert message to be posted.
-     */
-    private void sendNotification(String message) {
-        NotificationManager mNotificationManager =
-                (NotificationManager) getSystemService(Context.NOTIFICATION_SERVICE);
-        PendingIntent contentIntent =
-                PendingIntent.getActivity(this, 0, new Intent(this, MainActivity.class), 0);
-
-        // Notifications using both a large and a small icon (which yours should!) need the large
-        // icon as a bitmap. So we need to create that here from the resource ID, and pass the
-        // object along in our notification builder. Generally, you want to use the app icon as the
-        // small icon, so that users understand what app is triggering this notification.
-        Bitmap largeIcon = BitmapFactory.decodeResource(this.getResources(), R.drawable.art_storm);
-        NotificationCompat.Builder mBuilder =
-                new NotificationCompat.Builder(this)
-                        .setSmallIcon(R.drawable.art_clear)
-                        .setLargeIcon(largeIcon)
-                        .setContentTitle("Weather Alert!")
-                        .setStyle(new NotificationCompat.BigTextStyle().bigText(message))
-                        .setContentText(message)
-                        .setPriority(NotificationCompat.PRIORITY_HIGH);
-        mBuilder.setContentIntent(contentIntent);
-        mNotificationManager.notify(NOTIFICATION_ID, mBuilder.build());
-    }
 }
\ No newline at end of file
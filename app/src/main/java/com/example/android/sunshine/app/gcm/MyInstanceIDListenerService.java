@@ -16,7 +16,6 @@
 
 package com.example.android.sunshine.app.gcm;
 
-import android.content.Intent;
 import com.google.android.gms.iid.InstanceIDListenerService;
 
 public class MyInstanceIDListenerService extends InstanceIDListenerService {
@@ -30,7 +29,6 @@ public class MyInstanceIDListenerService extends InstanceIDListenerService {
     @Override
     public void onTokenRefresh() {
         // Fetch updated Instance ID token.
-        Intent intent = new Intent(this, RegistrationIntentService.class);
-        startService(intent);
+        GcmRegistration.start(this);
     }
 }
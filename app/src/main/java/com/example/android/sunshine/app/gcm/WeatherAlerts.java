@@ -0,0 +1,230 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.gcm;
+
+import android.app.AlarmManager;
+import android.app.NotificationManager;
+import android.app.PendingIntent;
+import android.content.Context;
+import android.content.Intent;
+import android.content.SharedPreferences;
+import android.graphics.Bitmap;
+import android.os.SystemClock;
+import android.support.v4.app.NotificationCompat;
+import android.util.Log;
+
+import com.example.android.sunshine.app.MainActivity;
+import com.example.android.sunshine.app.R;
+import com.example.android.sunshine.app.sync.BackgroundWorkService;
+import com.example.android.sunshine.app.sync.LargeIconCache;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Collects the pushed weather alerts into one notification.  Alerts are grouped by location and
+ * type: a new alert replaces the one of its group, and the same alert again within
+ * {@link #DUPLICATE_WINDOW_MILLIS} is dropped.  The notification is updated at most once every
+ * {@link #MIN_UPDATE_INTERVAL_MILLIS}, the alerts of a burst are shown together by one later
+ * update, and only the first update of a shown notification makes a sound.
+ *
+ * The alerts are kept in SharedPreferences, GCM may start a new process for each message.
+ */
+public class WeatherAlerts {
+    private static final String LOG_TAG = WeatherAlerts.class.getSimpleName();
+
+    public static final int NOTIFICATION_ID = 1;
+
+    static final long DUPLICATE_WINDOW_MILLIS = 30 * 60 * 1000;
+    static final long MIN_UPDATE_INTERVAL_MILLIS = 10 * 1000;
+    // Alerts are dropped from the notification after this long
+    static final long EXPIRY_MILLIS = 6 * 60 * 60 * 1000;
+
+    private static final String PREFS_NAME = "weather_alerts";
+    private static final String KEY_ALERTS = "alerts";
+    private static final String KEY_LAST_POSTED = "last_posted";
+
+    private static final String JSON_GROUP = "group";
+    private static final String JSON_MESSAGE = "message";
+    private static final String JSON_TIME = "time";
+
+    private static final int MAX_LINES = 5;
+
+    /**
+     * Adds an alert, and updates the notification now or after the interval.  This reads and
+     * writes the SharedPreferences, so it must not be called from the UI thread.
+     *
+     * @param location the location of the alert
+     * @param type the kind of weather, e.g. "hurricane", or the GCM collapse key
+     * @param message the text shown for the alert
+     */
+    public static synchronized void receive(Context context, String location, String type,
+                                            String message) {
+        SharedPreferences prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        long now = System.currentTimeMillis();
+        List<JSONObject> alerts = load(prefs, now);
+        String group = location + "\u0000" + type;
+
+        try {
+            for (int i = 0; i < alerts.size(); i++) {
+                JSONObject alert = alerts.get(i);
+                if (!group.equals(alert.getString(JSON_GROUP))) {
+                    continue;
+                }
+                if (message.equals(alert.getString(JSON_MESSAGE)) &&
+                        now - alert.getLong(JSON_TIME) < DUPLICATE_WINDOW_MILLIS) {
+                    Log.d(LOG_TAG, "Dropping duplicate alert " + message);
+                    return;
+                }
+                alerts.remove(i);
+                break;
+            }
+            alerts.add(new JSONObject()
+                    .put(JSON_GROUP, group)
+                    .put(JSON_MESSAGE, message)
+                    .put(JSON_TIME, now));
+        } catch (JSONException e) {
+            // load only keeps complete entries
+            throw new AssertionError(e);
+        }
+        save(prefs, alerts);
+
+        // Elapsed time, so a clock change can't hold back the notification
+        long elapsed = SystemClock.elapsedRealtime();
+        long nextUpdate = prefs.getLong(KEY_LAST_POSTED, Long.MIN_VALUE / 2) +
+                MIN_UPDATE_INTERVAL_MILLIS;
+        if (elapsed < nextUpdate && nextUpdate - elapsed <= MIN_UPDATE_INTERVAL_MILLIS) {
+            // Doesn't wake the device, the burst is shown when it is awake anyway
+            AlarmManager alarmManager =
+                    (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
+            alarmManager.set(AlarmManager.ELAPSED_REALTIME, nextUpdate,
+                    getUpdateIntent(context));
+            return;
+        }
+        post(context, prefs, alerts, elapsed);
+    }
+
+    /**
+     * Updates the notification with the alerts received since it was last posted.  Started by
+     * the alarm set when alerts come in a burst.
+     */
+    public static synchronized void update(Context context) {
+        SharedPreferences prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        post(context, prefs, load(prefs, System.currentTimeMillis()),
+                SystemClock.elapsedRealtime());
+    }
+
+    /**
+     * Forgets the alerts, when the notification is dismissed.
+     */
+    public static synchronized void clear(Context context) {
+        context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE).edit()
+                .remove(KEY_ALERTS)
+                .apply();
+    }
+
+    private static PendingIntent getUpdateIntent(Context context) {
+        // One pending update at a time, a later burst only moves it
+        return PendingIntent.getService(context, 0,
+                new Intent(BackgroundWorkService.ACTION_UPDATE_ALERTS)
+                        .setClass(context, BackgroundWorkService.class),
+                PendingIntent.FLAG_UPDATE_CURRENT);
+    }
+
+    private static void post(Context context, SharedPreferences prefs, List<JSONObject> alerts,
+                             long elapsed) {
+        NotificationManager notificationManager =
+                (NotificationManager) context.getSystemService(Context.NOTIFICATION_SERVICE);
+        if (alerts.isEmpty()) {
+            notificationManager.cancel(NOTIFICATION_ID);
+            return;
+        }
+
+        List<String> messages = new ArrayList<String>(alerts.size());
+        for (JSONObject alert : alerts) {
+            messages.add(alert.optString(JSON_MESSAGE));
+        }
+        String latest = messages.get(messages.size() - 1);
+        String title = messages.size() == 1 ? context.getString(R.string.gcm_weather_alert_title)
+                : context.getString(R.string.gcm_weather_alerts_title, messages.size());
+
+        NotificationCompat.Style style;
+        if (messages.size() == 1) {
+            style = new NotificationCompat.BigTextStyle().bigText(latest);
+        } else {
+            // Newest first
+            NotificationCompat.InboxStyle inboxStyle = new NotificationCompat.InboxStyle();
+            for (int i = messages.size() - 1; i >= Math.max(0, messages.size() - MAX_LINES); i--) {
+                inboxStyle.addLine(messages.get(i));
+            }
+            style = inboxStyle;
+        }
+
+        // Notifications using both a large and a small icon (which yours should!) need the large
+        // icon as a bitmap.  The LargeIconCache decodes it at the notification's size, once per
+        // process.  Generally, you want to use the app icon as the small icon, so that users
+        // understand what app is triggering this notification.
+        Bitmap largeIcon = LargeIconCache.get(context, null, R.drawable.art_storm);
+        NotificationCompat.Builder builder = new NotificationCompat.Builder(context)
+                .setSmallIcon(R.drawable.art_clear)
+                .setLargeIcon(largeIcon)
+                .setContentTitle(title)
+                .setContentText(latest)
+                .setStyle(style)
+                .setNumber(messages.size())
+                .setOnlyAlertOnce(true)
+                .setPriority(NotificationCompat.PRIORITY_HIGH)
+                .setContentIntent(PendingIntent.getActivity(context, 0,
+                        new Intent(context, MainActivity.class), 0))
+                .setDeleteIntent(PendingIntent.getService(context, 0,
+                        new Intent(BackgroundWorkService.ACTION_CLEAR_ALERTS)
+                                .setClass(context, BackgroundWorkService.class), 0));
+        notificationManager.notify(NOTIFICATION_ID, builder.build());
+        prefs.edit().putLong(KEY_LAST_POSTED, elapsed).apply();
+    }
+
+    // The alerts not expired yet, oldest first.  Entries missing a value, e.g. written by another
+    // version, are dropped, so receive can read every value.
+    private static List<JSONObject> load(SharedPreferences prefs, long now) {
+        List<JSONObject> alerts = new ArrayList<JSONObject>();
+        try {
+            JSONArray stored = new JSONArray(prefs.getString(KEY_ALERTS, "[]"));
+            for (int i = 0; i < stored.length(); i++) {
+                JSONObject alert = stored.optJSONObject(i);
+                if (null == alert || !alert.has(JSON_GROUP) || !alert.has(JSON_MESSAGE) ||
+                        !alert.has(JSON_TIME)) {
+                    Log.w(LOG_TAG, "Dropping incomplete alert " + stored.opt(i));
+                    continue;
+                }
+                if (now - alert.getLong(JSON_TIME) < EXPIRY_MILLIS) {
+                    alerts.add(alert);
+                }
+            }
+        } catch (JSONException e) {
+            Log.w(LOG_TAG, "Dropping unreadable alerts", e);
+        }
+        return alerts;
+    }
+
+    private static void save(SharedPreferences prefs, List<JSONObject> alerts) {
+        // commit, the next message may come to a new process
+        prefs.edit().putString(KEY_ALERTS, new JSONArray(alerts).toString()).commit();
+    }
+}
@@ -16,27 +16,38 @@
 package com.example.android.sunshine.app.muzei;
 
 import android.content.Intent;
-import android.database.Cursor;
 import android.net.Uri;
+import android.os.Bundle;
+import android.util.Log;
 
 import com.example.android.sunshine.app.MainActivity;
 import com.example.android.sunshine.app.Utility;
 import com.example.android.sunshine.app.data.WeatherContract;
+import com.example.android.sunshine.app.data.WeatherDateNormalizer;
+import com.example.android.sunshine.app.sync.ForecastChange;
+import com.example.android.sunshine.app.sync.ForecastSnapshot;
 import com.example.android.sunshine.app.sync.SunshineSyncAdapter;
+import com.example.android.sunshine.app.sync.WallpaperCache;
 import com.google.android.apps.muzei.api.Artwork;
 import com.google.android.apps.muzei.api.MuzeiArtSource;
 
+import java.util.Calendar;
+import java.util.HashSet;
+import java.util.Set;
+
 /**
  * Muzei source that changes your background based on the current weather conditions
+ *
+ * The artwork is only published when the image, title or byline changed, since every publish
+ * makes Muzei load and process the wallpaper again.  Today's and tomorrow's images are
+ * downloaded ahead of time to the {@link WallpaperCache}, and an update is scheduled for local
+ * midnight, so the wallpaper changes with the day from a local file.
  */
 public class WeatherMuzeiSource extends MuzeiArtSource {
-    private static final String[] FORECAST_COLUMNS = new String[]{
-            WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
-            WeatherContract.WeatherEntry.COLUMN_SHORT_DESC
-    };
-    // these indices must match the projection
-    private static final int INDEX_WEATHER_ID = 0;
-    private static final int INDEX_SHORT_DESC = 1;
+    private static final String LOG_TAG = WeatherMuzeiSource.class.getSimpleName();
+
+    // After midnight, so the new day is today
+    private static final long MIDNIGHT_DELAY_MILLIS = 60 * 1000;
 
     public WeatherMuzeiSource() {
         super("WeatherMuzeiSource");
@@ -47,33 +58,95 @@ public class WeatherMuzeiSource extends MuzeiArtSource {
         super.onHandleIntent(intent);
         boolean dataUpdated = intent != null &&
                 SunshineSyncAdapter.ACTION_DATA_UPDATED.equals(intent.getAction());
-        if (dataUpdated && isEnabled()) {
+        if (dataUpdated && isEnabled() && touchesArtwork(ForecastChange.fromIntent(intent))) {
             onUpdate(UPDATE_REASON_OTHER);
         }
     }
 
+    // The wallpaper and title show today's conditions, and tomorrow's image is prefetched
+    private boolean touchesArtwork(ForecastChange change) {
+        long now = System.currentTimeMillis();
+        return change.touches(Utility.getPreferredLocation(this), now,
+                now + WeatherDateNormalizer.DAY_IN_MILLIS, ForecastChange.FIELD_CONDITIONS);
+    }
+
     @Override
     protected void onUpdate(int reason) {
         String location = Utility.getPreferredLocation(this);
-        Uri weatherForLocationUri = WeatherContract.WeatherEntry.buildWeatherLocationWithStartDate(
-                location, System.currentTimeMillis());
-        Cursor cursor = getContentResolver().query(weatherForLocationUri, FORECAST_COLUMNS, null,
-                null, WeatherContract.WeatherEntry.COLUMN_DATE + " ASC");
-        if (cursor.moveToFirst()) {
-            int weatherId = cursor.getInt(INDEX_WEATHER_ID);
-            String desc = cursor.getString(INDEX_SHORT_DESC);
+        int weatherId;
+        String description;
+        // Unknown without a snapshot
+        int tomorrowWeatherId = -1;
 
-            String imageUrl = Utility.getImageUrlForWeatherCondition(weatherId);
-            // Only publish a new wallpaper if we have a valid image
-            if (imageUrl != null) {
-                publishArtwork(new Artwork.Builder()
-                        .imageUri(Uri.parse(imageUrl))
-                        .title(desc)
-                        .byline(location)
-                        .viewIntent(new Intent(this, MainActivity.class))
-                        .build());
+        ForecastSnapshot snapshot = ForecastSnapshot.open(this, location);
+        int today = snapshot != null ? snapshot.findToday() : -1;
+        if (today >= 0) {
+            weatherId = snapshot.getWeatherId(today);
+            description = snapshot.getDescription(today);
+            if (today + 1 < snapshot.getDayCount()) {
+                tomorrowWeatherId = snapshot.getWeatherId(today + 1);
             }
+        } else {
+            Bundle forecast = WeatherContract.ForecastCall.today(getContentResolver(), location,
+                    Utility.getPreferredUnits(this));
+            if (WeatherContract.ForecastCall.getCount(forecast) == 0) {
+                return;
+            }
+            weatherId = forecast.getIntArray(WeatherContract.ForecastCall.KEY_WEATHER_IDS)[0];
+            description = forecast.getStringArray(WeatherContract.ForecastCall.KEY_DESCRIPTIONS)[0];
         }
-        cursor.close();
+
+        publishWeather(location, weatherId, description);
+        prefetch(weatherId, tomorrowWeatherId);
+        scheduleUpdate(getNextMidnight());
+    }
+
+    private void publishWeather(String location, int weatherId, String desc) {
+        String imageUrl = Utility.getImageUrlForWeatherCondition(weatherId);
+        // Only publish a new wallpaper if we have a valid image
+        if (imageUrl == null) {
+            return;
+        }
+        Artwork current = getCurrentArtwork();
+        if (current != null && imageUrl.equals(current.getToken()) &&
+                desc.equals(current.getTitle()) && location.equals(current.getByline())) {
+            Log.d(LOG_TAG, "Artwork unchanged, not published");
+            return;
+        }
+        // Muzei reads the local copy when it was prefetched, or downloads the image itself,
+        // publishing doesn't wait for the prefetch
+        Uri imageUri = WallpaperCache.getUri(this, imageUrl);
+        publishArtwork(new Artwork.Builder()
+                .imageUri(null != imageUri ? imageUri : Uri.parse(imageUrl))
+                .token(imageUrl)
+                .title(desc)
+                .byline(location)
+                .viewIntent(new Intent(this, MainActivity.class))
+                .build());
+    }
+
+    // Has tomorrow's likely image downloaded in the background, and the others dropped
+    private void prefetch(int weatherId, int tomorrowWeatherId) {
+        Set<String> imageUrls = new HashSet<String>();
+        String imageUrl = Utility.getImageUrlForWeatherCondition(weatherId);
+        if (null != imageUrl) {
+            imageUrls.add(imageUrl);
+        }
+        String tomorrowImageUrl = tomorrowWeatherId < 0 ? null :
+                Utility.getImageUrlForWeatherCondition(tomorrowWeatherId);
+        if (null != tomorrowImageUrl) {
+            imageUrls.add(tomorrowImageUrl);
+        }
+        WallpaperCache.startPrefetch(this, imageUrls);
+    }
+
+    private static long getNextMidnight() {
+        Calendar midnight = Calendar.getInstance();
+        midnight.add(Calendar.DAY_OF_YEAR, 1);
+        midnight.set(Calendar.HOUR_OF_DAY, 0);
+        midnight.set(Calendar.MINUTE, 0);
+        midnight.set(Calendar.SECOND, 0);
+        midnight.set(Calendar.MILLISECOND, 0);
+        return midnight.getTimeInMillis() + MIDNIGHT_DELAY_MILLIS;
     }
 }
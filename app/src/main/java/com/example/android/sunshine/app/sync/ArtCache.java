@@ -0,0 +1,264 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.annotation.SuppressLint;
+import android.content.Context;
+import android.content.Intent;
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.net.Uri;
+import android.os.Build;
+import android.util.Log;
+
+import com.bumptech.glide.BitmapRequestBuilder;
+import com.bumptech.glide.Glide;
+import com.bumptech.glide.request.FutureTarget;
+import com.example.android.sunshine.app.ArtPreloader;
+import com.example.android.sunshine.app.R;
+import com.example.android.sunshine.app.Utility;
+import com.example.android.sunshine.app.data.WeatherContract;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Keeps every image of the active art pack in Glide's disk cache, already decoded and scaled to
+ * each size the app shows it at: the list icon, the today and detail icon, the detail widget
+ * icon and the notification large icon.  A pack only has one image per condition group, so
+ * this is a few dozen small files, and afterwards none of those consumers waits on the network
+ * or decodes a full size image.
+ *
+ * The requests built here are the ones the consumers use, so they share their cache keys.
+ *
+ * The detail widget icons are also rendered to PNG files, which ArtProvider serves to the widget
+ * host, so widget rows carry a URI rather than the pixels.  So are the notification large icons,
+ * which {@link LargeIconCache} decodes without going through Glide.
+ */
+public class ArtCache {
+    private static final String LOG_TAG = ArtCache.class.getSimpleName();
+
+    // One condition of each group Utility.getArtUrlForWeatherCondition tells apart
+    private static final int[] CONDITION_GROUPS = {200, 300, 500, 600, 701, 800, 801, 802};
+
+    private static final String ART_DIRECTORY = "art";
+
+    /**
+     * @return the distinct art URLs of the active pack, empty when using the local graphics
+     */
+    public static Set<String> getArtUrls(Context context) {
+        Set<String> urls = new LinkedHashSet<String>();
+        if (!Utility.usingLocalGraphics(context)) {
+            for (int weatherId : CONDITION_GROUPS) {
+                urls.add(Utility.getArtUrlForWeatherCondition(context, weatherId));
+            }
+        }
+        return urls;
+    }
+
+    /**
+     * Builds the request for the art as a bitmap, for the consumers that can't take a drawable.
+     * Use with into(width, height).
+     */
+    public static BitmapRequestBuilder<String, Bitmap> requestBitmap(Context context, String artUrl) {
+        return Glide.with(context)
+                .load(artUrl)
+                .asBitmap()
+                .fitCenter();
+    }
+
+    /**
+     * @return the width and height of the notification's large icon
+     */
+    @SuppressLint("InlinedApi")
+    public static int[] getNotificationIconSize(Context context) {
+        Resources resources = context.getResources();
+        // On Honeycomb and higher devices, we can retrieve the size of the large icon
+        // Prior to that, we use a fixed size
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
+            return new int[]{
+                    resources.getDimensionPixelSize(android.R.dimen.notification_large_icon_width),
+                    resources.getDimensionPixelSize(android.R.dimen.notification_large_icon_height)};
+        }
+        int size = resources.getDimensionPixelSize(R.dimen.notification_large_icon_default);
+        return new int[]{size, size};
+    }
+
+    /**
+     * @return the size of the detail widget's icons
+     */
+    public static int getWidgetIconSize(Context context) {
+        return context.getResources().getDimensionPixelSize(R.dimen.list_icon);
+    }
+
+    /**
+     * @return the name of the file of the art at that size, in the art directory
+     */
+    public static String getArtFileName(String artUrl, int size) {
+        return getArtFileName(artUrl, size, size);
+    }
+
+    /**
+     * @return the name of the file of the art fitted in width by height, in the art directory
+     */
+    public static String getArtFileName(String artUrl, int width, int height) {
+        return width + "x" + height + "_" + Integer.toHexString(artUrl.hashCode()) + ".png";
+    }
+
+    /**
+     * @return the file of that name in the art directory, or null if the name isn't a plain
+     * file name
+     */
+    public static File getArtFile(Context context, String fileName) {
+        if (fileName.isEmpty() || fileName.contains(File.separator) || fileName.startsWith(".")) {
+            return null;
+        }
+        return new File(new File(context.getCacheDir(), ART_DIRECTORY), fileName);
+    }
+
+    /**
+     * @return the URI ArtProvider serves the art file at
+     */
+    public static Uri getArtUri(String artUrl, int size) {
+        return WeatherContract.ArtEntry.buildArtUri(getArtFileName(artUrl, size));
+    }
+
+    /**
+     * Renders the art at that size to its file, unless it is there already.  This blocks, so it
+     * must not be called from the UI thread.
+     *
+     * @return true if the file is there
+     */
+    public static boolean renderArtFile(Context context, String artUrl, int size)
+            throws InterruptedException {
+        return renderArtFile(context, artUrl, size, size);
+    }
+
+    /**
+     * Same as {@link #renderArtFile(Context, String, int)}, fitted in width by height.
+     */
+    public static boolean renderArtFile(Context context, final String artUrl, int width,
+                                        int height) throws InterruptedException {
+        File file = getArtFile(context, getArtFileName(artUrl, width, height));
+        if (file.isFile()) {
+            return true;
+        }
+        FutureTarget<Bitmap> target = requestBitmap(context, artUrl).into(width, height);
+        try {
+            final Bitmap bitmap = target.get();
+            // Written aside and renamed, so the widget host never reads half a file, and the
+            // warm-up and the widgets rendering the same file don't mix theirs
+            AtomicFiles.write(file, new AtomicFiles.Content() {
+                @Override
+                public void writeTo(OutputStream out) throws IOException {
+                    if (!bitmap.compress(Bitmap.CompressFormat.PNG, 100, out)) {
+                        throw new IOException("Unable to compress " + artUrl);
+                    }
+                }
+            });
+            return true;
+        } catch (ExecutionException | IOException e) {
+            Log.w(LOG_TAG, "Unable to render " + artUrl, e);
+            return false;
+        } finally {
+            // The bitmap goes back to Glide's pool
+            Glide.clear(target);
+        }
+    }
+
+    /**
+     * Runs {@link #warmUp} in the background, after the other work of the
+     * {@link BackgroundWorkService}, unless the local graphics are used.
+     */
+    public static void startWarmUp(Context context) {
+        if (!Utility.usingLocalGraphics(context)) {
+            BackgroundWorkService.enqueue(context,
+                    new Intent(BackgroundWorkService.ACTION_WARM_UP_ART));
+        }
+    }
+
+    /**
+     * Loads every image of the active pack at every size.  Images already in the cache are read
+     * back from it, which checks they are still there and readable, and the missing ones are
+     * downloaded again.  The widget and notification icon files are rendered, and the files of
+     * other packs or sizes deleted.  This blocks, so it must not be called from the UI thread.
+     *
+     * @param context Context used to read the art pack preference and to reach Glide
+     * @return the number of images that couldn't be loaded
+     */
+    public static int warmUp(Context context) {
+        int[] notificationSize = getNotificationIconSize(context);
+        int widgetSize = getWidgetIconSize(context);
+        int smallSize = context.getResources().getDimensionPixelSize(R.dimen.list_icon);
+        int largeSize = context.getResources().getDimensionPixelSize(R.dimen.today_icon);
+
+        int failed = 0;
+        Set<String> artFileNames = new HashSet<String>();
+        for (String artUrl : getArtUrls(context)) {
+            artFileNames.add(getArtFileName(artUrl, widgetSize));
+            artFileNames.add(getArtFileName(artUrl, notificationSize[0], notificationSize[1]));
+            try {
+                load(ArtPreloader.request(context, artUrl, false).into(smallSize, smallSize));
+                load(ArtPreloader.request(context, artUrl, true).into(largeSize, largeSize));
+                load(requestBitmap(context, artUrl).into(widgetSize, widgetSize));
+                if (!renderArtFile(context, artUrl, widgetSize)) {
+                    failed++;
+                }
+                if (!renderArtFile(context, artUrl, notificationSize[0], notificationSize[1])) {
+                    failed++;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return failed + 1;
+            } catch (ExecutionException e) {
+                Log.w(LOG_TAG, "Unable to cache " + artUrl, e);
+                failed++;
+            }
+        }
+        deleteArtFilesExcept(context, artFileNames);
+        return failed;
+    }
+
+    // Waits for the image to be in the caches, then releases the request and its resource
+    private static void load(FutureTarget<?> target)
+            throws InterruptedException, ExecutionException {
+        try {
+            target.get();
+        } finally {
+            Glide.clear(target);
+        }
+    }
+
+    private static void deleteArtFilesExcept(Context context, Set<String> fileNames) {
+        File[] files = new File(context.getCacheDir(), ART_DIRECTORY).listFiles();
+        if (null == files) {
+            return;
+        }
+        for (File file : files) {
+            if (fileNames.contains(file.getName()) || AtomicFiles.isBeingWritten(file)) {
+                continue;
+            }
+            if (!file.delete()) {
+                Log.w(LOG_TAG, "Unable to delete " + file);
+            }
+        }
+    }
+}
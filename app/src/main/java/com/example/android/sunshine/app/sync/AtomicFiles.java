@@ -0,0 +1,82 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Writes files aside and renames them into place, so a reader sees either the previous file or
+ * the whole new one.  Every write gets its own temporary file: writers of the same file can't
+ * rename or truncate each other's, and the last rename wins.
+ *
+ * Code cleaning up a directory skips the files {@link #isBeingWritten(File)}.
+ */
+class AtomicFiles {
+    private static final String LOG_TAG = AtomicFiles.class.getSimpleName();
+
+    private static final String TEMP_SUFFIX = ".part";
+    // Older temporary files were left by a writer that died, and can be deleted
+    private static final long ABANDONED_MILLIS = 60 * 60 * 1000;
+
+    interface Content {
+        void writeTo(OutputStream out) throws IOException;
+    }
+
+    /**
+     * Replaces the file with the content, creating its directory if needed.  This writes and
+     * syncs the file, so it must not be called from the UI thread.
+     *
+     * @throws IOException if the file couldn't be written, it is then left as it was
+     */
+    static void write(File file, Content content) throws IOException {
+        File directory = file.getParentFile();
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Unable to create " + directory);
+        }
+        File temp = File.createTempFile(file.getName(), TEMP_SUFFIX, directory);
+        boolean renamed = false;
+        try {
+            FileOutputStream out = new FileOutputStream(temp);
+            try {
+                content.writeTo(out);
+                out.getFD().sync();
+            } finally {
+                out.close();
+            }
+            renamed = temp.renameTo(file);
+            if (!renamed) {
+                throw new IOException("Unable to replace " + file);
+            }
+        } finally {
+            if (!renamed && !temp.delete()) {
+                Log.w(LOG_TAG, "Unable to delete " + temp);
+            }
+        }
+    }
+
+    /**
+     * @return true if the file is the temporary file of a write that may still be going on
+     */
+    static boolean isBeingWritten(File file) {
+        return file.getName().endsWith(TEMP_SUFFIX) &&
+                System.currentTimeMillis() - file.lastModified() < ABANDONED_MILLIS;
+    }
+}
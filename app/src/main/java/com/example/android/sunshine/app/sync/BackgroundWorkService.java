@@ -0,0 +1,282 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.app.Service;
+import android.appwidget.AppWidgetManager;
+import android.content.Context;
+import android.content.Intent;
+import android.os.IBinder;
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.example.android.sunshine.app.gcm.GcmRegistration;
+import com.example.android.sunshine.app.gcm.WeatherAlerts;
+import com.example.android.sunshine.app.widget.TodayWidgetUpdater;
+
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the app's background work that follows a data update on one worker thread, most visible
+ * first: the Today widgets, then the notifications, then the wallpaper prefetch, then the GCM
+ * registration, then the art cache warm-up.  Work is started like an IntentService, with
+ * {@link #enqueue}, so it survives the component that asked for it, and the service stops once
+ * the queue is empty.
+ *
+ * Work still waiting when the same work is asked for again is superseded: the older one is
+ * dropped, and the Today widget ids it was forced to update are carried over.  Work already
+ * running isn't interrupted.
+ */
+public class BackgroundWorkService extends Service {
+    private static final String LOG_TAG = BackgroundWorkService.class.getSimpleName();
+
+    public static final String ACTION_UPDATE_TODAY_WIDGETS =
+            "com.example.android.sunshine.app.action.UPDATE_TODAY_WIDGETS";
+    public static final String ACTION_NOTIFY_WEATHER =
+            "com.example.android.sunshine.app.action.NOTIFY_WEATHER";
+    public static final String ACTION_UPDATE_ALERTS =
+            "com.example.android.sunshine.app.action.UPDATE_ALERTS";
+    public static final String ACTION_CLEAR_ALERTS =
+            "com.example.android.sunshine.app.action.CLEAR_ALERTS";
+    public static final String ACTION_PREFETCH_WALLPAPERS =
+            "com.example.android.sunshine.app.action.PREFETCH_WALLPAPERS";
+    public static final String ACTION_REGISTER_GCM =
+            "com.example.android.sunshine.app.action.REGISTER_GCM";
+    public static final String ACTION_WARM_UP_ART =
+            "com.example.android.sunshine.app.action.WARM_UP_ART";
+
+    // Lower runs first
+    static final int PRIORITY_WIDGET = 0;
+    static final int PRIORITY_NOTIFICATION = 1;
+    static final int PRIORITY_WALLPAPER = 2;
+    static final int PRIORITY_REGISTRATION = 3;
+    static final int PRIORITY_ART = 4;
+
+    static final String EXTRA_IMAGE_URLS = "image_urls";
+
+    private ThreadPoolExecutor mExecutor;
+    // Work waiting to run, by action
+    private final Map<String, Work> mPending = new HashMap<String, Work>();
+    private int mLastStartId;
+    private boolean mRunning;
+    private long mSequence;
+
+    // Queue metrics, logged when the service stops
+    private int mMaxDepth;
+    private int mRunCount;
+    private int mSupersededCount;
+    private long mTotalWaitMillis;
+
+    /**
+     * Starts the work in the background.
+     *
+     * @param work one of the ACTION_ intents, with its extras
+     */
+    public static void enqueue(Context context, Intent work) {
+        context.startService(work.setClass(context, BackgroundWorkService.class));
+    }
+
+    /**
+     * Updates the Today widgets.
+     *
+     * @param appWidgetIds ids to update even if their content didn't change, or null
+     */
+    public static void updateTodayWidgets(Context context, int[] appWidgetIds) {
+        enqueue(context, new Intent(ACTION_UPDATE_TODAY_WIDGETS)
+                .putExtra(AppWidgetManager.EXTRA_APPWIDGET_IDS, appWidgetIds));
+    }
+
+    static int getPriority(String action) {
+        if (ACTION_UPDATE_TODAY_WIDGETS.equals(action)) {
+            return PRIORITY_WIDGET;
+        } else if (ACTION_NOTIFY_WEATHER.equals(action) || ACTION_UPDATE_ALERTS.equals(action) ||
+                ACTION_CLEAR_ALERTS.equals(action)) {
+            return PRIORITY_NOTIFICATION;
+        } else if (ACTION_PREFETCH_WALLPAPERS.equals(action)) {
+            return PRIORITY_WALLPAPER;
+        } else if (ACTION_REGISTER_GCM.equals(action)) {
+            return PRIORITY_REGISTRATION;
+        } else if (ACTION_WARM_UP_ART.equals(action)) {
+            return PRIORITY_ART;
+        }
+        return -1;
+    }
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        mExecutor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+                new PriorityBlockingQueue<Runnable>(), new ThreadFactory() {
+            @Override
+            public Thread newThread(final Runnable runnable) {
+                return new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                        runnable.run();
+                    }
+                }, "BackgroundWork");
+            }
+        });
+    }
+
+    @Override
+    public int onStartCommand(Intent intent, int flags, int startId) {
+        synchronized (mPending) {
+            mLastStartId = startId;
+            String action = null == intent ? null : intent.getAction();
+            int priority = getPriority(action);
+            if (priority < 0) {
+                Log.w(LOG_TAG, "Unknown work " + action);
+                stopIfIdle();
+                return START_NOT_STICKY;
+            }
+            Work superseded = mPending.remove(action);
+            if (null != superseded && mExecutor.remove(superseded)) {
+                mSupersededCount++;
+                carryOver(superseded.mIntent, intent);
+            }
+            Work work = new Work(intent, priority, mSequence++);
+            mPending.put(action, work);
+            mExecutor.execute(work);
+            mMaxDepth = Math.max(mMaxDepth, mExecutor.getQueue().size());
+        }
+        return START_NOT_STICKY;
+    }
+
+    // Forced widget updates must happen even when a later request didn't ask for them
+    private static void carryOver(Intent from, Intent to) {
+        int[] fromIds = from.getIntArrayExtra(AppWidgetManager.EXTRA_APPWIDGET_IDS);
+        if (null == fromIds) {
+            return;
+        }
+        int[] toIds = to.getIntArrayExtra(AppWidgetManager.EXTRA_APPWIDGET_IDS);
+        Set<Integer> ids = new LinkedHashSet<Integer>();
+        for (int id : fromIds) {
+            ids.add(id);
+        }
+        if (null != toIds) {
+            for (int id : toIds) {
+                ids.add(id);
+            }
+        }
+        int[] merged = new int[ids.size()];
+        int i = 0;
+        for (int id : ids) {
+            merged[i++] = id;
+        }
+        to.putExtra(AppWidgetManager.EXTRA_APPWIDGET_IDS, merged);
+    }
+
+    private void run(Intent intent) throws InterruptedException {
+        String action = intent.getAction();
+        if (ACTION_UPDATE_TODAY_WIDGETS.equals(action)) {
+            TodayWidgetUpdater.update(this,
+                    intent.getIntArrayExtra(AppWidgetManager.EXTRA_APPWIDGET_IDS));
+        } else if (ACTION_NOTIFY_WEATHER.equals(action)) {
+            SunshineSyncAdapter.notifyWeather(this);
+        } else if (ACTION_UPDATE_ALERTS.equals(action)) {
+            WeatherAlerts.update(this);
+        } else if (ACTION_CLEAR_ALERTS.equals(action)) {
+            WeatherAlerts.clear(this);
+        } else if (ACTION_PREFETCH_WALLPAPERS.equals(action)) {
+            WallpaperCache.prefetch(this, intent.getStringArrayExtra(EXTRA_IMAGE_URLS));
+        } else if (ACTION_REGISTER_GCM.equals(action)) {
+            GcmRegistration.register(this);
+        } else if (ACTION_WARM_UP_ART.equals(action)) {
+            ArtCache.warmUp(this);
+        }
+    }
+
+    // Called with mPending held
+    private void stopIfIdle() {
+        if (mPending.isEmpty() && !mRunning) {
+            // Only stops if no start came in since the last one
+            stopSelf(mLastStartId);
+        }
+    }
+
+    @Override
+    public void onDestroy() {
+        mExecutor.shutdown();
+        synchronized (mPending) {
+            Log.d(LOG_TAG, "Ran " + mRunCount + " superseded " + mSupersededCount +
+                    " max queue depth " + mMaxDepth + " average wait " +
+                    (mRunCount == 0 ? 0 : mTotalWaitMillis / mRunCount) + "ms");
+        }
+        super.onDestroy();
+    }
+
+    @Override
+    public IBinder onBind(Intent intent) {
+        return null;
+    }
+
+    private class Work implements Runnable, Comparable<Work> {
+        final Intent mIntent;
+        final int mPriority;
+        // Keeps the order of work of the same priority
+        final long mSequence;
+        final long mQueuedAt = SystemClock.elapsedRealtime();
+
+        Work(Intent intent, int priority, long sequence) {
+            mIntent = intent;
+            mPriority = priority;
+            mSequence = sequence;
+        }
+
+        @Override
+        public void run() {
+            synchronized (mPending) {
+                if (mPending.get(mIntent.getAction()) == this) {
+                    mPending.remove(mIntent.getAction());
+                }
+                mRunning = true;
+                mRunCount++;
+                mTotalWaitMillis += SystemClock.elapsedRealtime() - mQueuedAt;
+            }
+            try {
+                BackgroundWorkService.this.run(mIntent);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (RuntimeException e) {
+                // One consumer failing must not take down the work queued after it
+                Log.e(LOG_TAG, "Work failed " + mIntent.getAction(), e);
+            } finally {
+                synchronized (mPending) {
+                    mRunning = false;
+                    stopIfIdle();
+                }
+            }
+        }
+
+        @Override
+        public int compareTo(Work another) {
+            if (mPriority != another.mPriority) {
+                return mPriority < another.mPriority ? -1 : 1;
+            }
+            return mSequence < another.mSequence ? -1 : (mSequence == another.mSequence ? 0 : 1);
+        }
+    }
+}
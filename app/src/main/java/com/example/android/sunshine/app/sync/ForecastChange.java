@@ -0,0 +1,185 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.content.Intent;
+
+import com.example.android.sunshine.app.data.WeatherContract;
+
+/**
+ * What a data update changed: one location, the range of days touched, and which fields of
+ * those days.  It travels as extras of the {@link SunshineSyncAdapter#ACTION_DATA_UPDATED}
+ * intents, so each consumer can tell whether the part it shows changed before doing any work.
+ *
+ * The range and fields are a summary, a consumer may still find its days unchanged, but it is
+ * never told nothing changed when something it shows did.
+ */
+public class ForecastChange {
+
+    // The weather id and description
+    public static final int FIELD_CONDITIONS = 1;
+    // The high and low
+    public static final int FIELD_TEMPERATURES = 1 << 1;
+    // Humidity, pressure and wind
+    public static final int FIELD_OTHER = 1 << 2;
+    public static final int FIELD_ALL = FIELD_CONDITIONS | FIELD_TEMPERATURES | FIELD_OTHER;
+
+    static final String EXTRA_LOCATION = "forecast_change_location";
+    static final String EXTRA_FIRST_DATE = "forecast_change_first_date";
+    static final String EXTRA_LAST_DATE = "forecast_change_last_date";
+    static final String EXTRA_FIELDS = "forecast_change_fields";
+
+    // null for every location
+    private final String mLocationSetting;
+    private final long mFirstDate;
+    private final long mLastDate;
+    private final int mFields;
+
+    ForecastChange(String locationSetting, long firstDate, long lastDate, int fields) {
+        mLocationSetting = locationSetting;
+        mFirstDate = firstDate;
+        mLastDate = lastDate;
+        mFields = fields;
+    }
+
+    /**
+     * @param locationSetting the location changed, or null for every location
+     * @return a change of every field of every day
+     */
+    public static ForecastChange everything(String locationSetting) {
+        return new ForecastChange(locationSetting, Long.MIN_VALUE, Long.MAX_VALUE, FIELD_ALL);
+    }
+
+    /**
+     * Compares the snapshots of a location from before and after an update.  A day in only one
+     * of them changed in every field.
+     *
+     * @param before the snapshot before the update, or null if there was none
+     * @param after the snapshot after the update, or null if there is none
+     * @return the change, which is empty if the days are the same
+     */
+    public static ForecastChange between(String locationSetting, ForecastSnapshot before,
+                                         ForecastSnapshot after) {
+        if (null == before || null == after) {
+            return everything(locationSetting);
+        }
+        long firstDate = Long.MAX_VALUE;
+        long lastDate = Long.MIN_VALUE;
+        int fields = 0;
+
+        // Both are in date order, walk them together
+        int b = 0;
+        int a = 0;
+        while (b < before.getDayCount() || a < after.getDayCount()) {
+            long beforeDate = b < before.getDayCount() ? before.getDate(b) : Long.MAX_VALUE;
+            long afterDate = a < after.getDayCount() ? after.getDate(a) : Long.MAX_VALUE;
+            long date = Math.min(beforeDate, afterDate);
+            int dayFields;
+            if (beforeDate != afterDate) {
+                dayFields = FIELD_ALL;
+            } else {
+                dayFields = compareDay(before, b, after, a);
+            }
+            if (dayFields != 0) {
+                fields |= dayFields;
+                firstDate = Math.min(firstDate, date);
+                lastDate = Math.max(lastDate, date);
+            }
+            if (beforeDate == date) {
+                b++;
+            }
+            if (afterDate == date) {
+                a++;
+            }
+        }
+        return new ForecastChange(locationSetting, firstDate, lastDate, fields);
+    }
+
+    private static int compareDay(ForecastSnapshot before, int b, ForecastSnapshot after, int a) {
+        int fields = 0;
+        if (before.getWeatherId(b) != after.getWeatherId(a) ||
+                !before.getDescription(b).equals(after.getDescription(a))) {
+            fields |= FIELD_CONDITIONS;
+        }
+        if (before.getHigh(b) != after.getHigh(a) || before.getLow(b) != after.getLow(a)) {
+            fields |= FIELD_TEMPERATURES;
+        }
+        if (before.getHumidity(b) != after.getHumidity(a) ||
+                before.getPressure(b) != after.getPressure(a) ||
+                before.getWindSpeed(b) != after.getWindSpeed(a) ||
+                before.getDegrees(b) != after.getDegrees(a)) {
+            fields |= FIELD_OTHER;
+        }
+        return fields;
+    }
+
+    /**
+     * Reads the change from the extras of a data updated intent.
+     *
+     * @return the change, or a change of everything if the intent doesn't carry one
+     */
+    public static ForecastChange fromIntent(Intent intent) {
+        if (!intent.hasExtra(EXTRA_FIELDS)) {
+            return everything(null);
+        }
+        return new ForecastChange(intent.getStringExtra(EXTRA_LOCATION),
+                intent.getLongExtra(EXTRA_FIRST_DATE, Long.MIN_VALUE),
+                intent.getLongExtra(EXTRA_LAST_DATE, Long.MAX_VALUE),
+                intent.getIntExtra(EXTRA_FIELDS, FIELD_ALL));
+    }
+
+    /**
+     * Adds the change to the extras of the intent.
+     *
+     * @return the intent
+     */
+    public Intent putInto(Intent intent) {
+        return intent.putExtra(EXTRA_LOCATION, mLocationSetting)
+                .putExtra(EXTRA_FIRST_DATE, mFirstDate)
+                .putExtra(EXTRA_LAST_DATE, mLastDate)
+                .putExtra(EXTRA_FIELDS, mFields);
+    }
+
+    public boolean isEmpty() {
+        return mFields == 0;
+    }
+
+    /**
+     * @param locationSetting the location shown, or null for a consumer showing every location
+     * @param firstDate the first day shown, in milliseconds, it doesn't need to be normalized
+     * @param lastDate the last day shown, same as firstDate
+     * @param fields the FIELD_ flags of the fields shown
+     * @return true if any of those fields of those days may have changed
+     */
+    public boolean touches(String locationSetting, long firstDate, long lastDate, int fields) {
+        if ((mFields & fields) == 0) {
+            return false;
+        }
+        if (null != mLocationSetting && null != locationSetting &&
+                !mLocationSetting.equals(locationSetting)) {
+            return false;
+        }
+        long first = firstDate == Long.MIN_VALUE ? firstDate : WeatherContract.normalizeDate(firstDate);
+        long last = lastDate == Long.MAX_VALUE ? lastDate : WeatherContract.normalizeDate(lastDate);
+        return first <= mLastDate && mFirstDate <= last;
+    }
+
+    @Override
+    public String toString() {
+        return "ForecastChange{" + mLocationSetting + " " + mFirstDate + ".." + mLastDate +
+                " fields=" + mFields + "}";
+    }
+}
@@ -0,0 +1,56 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.content.Context;
+import android.content.Intent;
+import android.os.Build;
+import android.util.Log;
+
+import com.example.android.sunshine.app.muzei.WeatherMuzeiSource;
+
+/**
+ * Tells the consumers that don't observe the provider, the widgets and Muzei, what a data
+ * update changed.  They are manifest components that may not be running, so the change is sent
+ * as extras of the {@link SunshineSyncAdapter#ACTION_DATA_UPDATED} broadcast and service
+ * intents rather than to listeners; read it back with {@link ForecastChange#fromIntent}.
+ */
+public class ForecastChangeBus {
+    private static final String LOG_TAG = ForecastChangeBus.class.getSimpleName();
+
+    /**
+     * Sends the change to the widgets and Muzei, or nothing if it is empty.
+     *
+     * @param context Context used to send the broadcast and start Muzei
+     */
+    public static void post(Context context, ForecastChange change) {
+        if (change.isEmpty()) {
+            Log.d(LOG_TAG, "Nothing changed, consumers not told");
+            return;
+        }
+        Log.d(LOG_TAG, "Posting " + change);
+        // Setting the package ensures that only components in our app will receive the broadcast
+        context.sendBroadcast(change.putInto(new Intent(SunshineSyncAdapter.ACTION_DATA_UPDATED)
+                .setPackage(context.getPackageName())));
+
+        // Muzei is only compatible with Jelly Bean MR1+ devices, so there's no need to update the
+        // Muzei background on lower API level devices
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR1) {
+            context.startService(change.putInto(new Intent(SunshineSyncAdapter.ACTION_DATA_UPDATED)
+                    .setClass(context, WeatherMuzeiSource.class)));
+        }
+    }
+}
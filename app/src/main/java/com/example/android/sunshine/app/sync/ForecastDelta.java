@@ -0,0 +1,262 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.util.Log;
+
+import com.example.android.sunshine.app.data.WeatherContract;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+import com.example.android.sunshine.app.data.WeatherDateNormalizer;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Changed fields of some days of a stored location, as pushed over GCM, e.g.
+ *
+ * <pre>
+ * {"location": "94043",
+ *  "days": [{"date": 1445299200000, "weather_id": 202, "description": "Thunderstorm",
+ *            "high": 31.5}]}
+ * </pre>
+ *
+ * A day only carries the fields that changed, the others keep their stored value; a day that
+ * isn't stored yet must carry them all.  Temperatures are in Celsius and wind speeds in meters
+ * per second, like the values the sync stores.
+ *
+ * Applying a delta writes the days with their display values, rewrites the snapshot of the
+ * location, and posts the {@link ForecastChange}, like a sync does, without going to the network.
+ */
+public class ForecastDelta {
+    private static final String LOG_TAG = ForecastDelta.class.getSimpleName();
+
+    static final String KEY_LOCATION = "location";
+    static final String KEY_DAYS = "days";
+    static final String KEY_DATE = "date";
+    static final String KEY_WEATHER_ID = "weather_id";
+    static final String KEY_DESCRIPTION = "description";
+    static final String KEY_HIGH = "high";
+    static final String KEY_LOW = "low";
+    static final String KEY_HUMIDITY = "humidity";
+    static final String KEY_PRESSURE = "pressure";
+    static final String KEY_WIND_SPEED = "wind_speed";
+    static final String KEY_DEGREES = "degrees";
+
+    // The sync keeps yesterday and fetches 14 days, a delta may not go beyond
+    private static final int MAX_DAYS_AHEAD = 14;
+
+    // The columns a day is stored with, besides the location key and the date
+    private static final String[] VALUE_COLUMNS = {
+            WeatherEntry.COLUMN_WEATHER_ID,
+            WeatherEntry.COLUMN_SHORT_DESC,
+            WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherEntry.COLUMN_MIN_TEMP,
+            WeatherEntry.COLUMN_HUMIDITY,
+            WeatherEntry.COLUMN_PRESSURE,
+            WeatherEntry.COLUMN_WIND_SPEED,
+            WeatherEntry.COLUMN_DEGREES
+    };
+
+    private final String mLocationSetting;
+    // The changed columns of each day, with its normalized date
+    private final List<ContentValues> mDays;
+
+    private ForecastDelta(String locationSetting, List<ContentValues> days) {
+        mLocationSetting = locationSetting;
+        mDays = days;
+    }
+
+    /**
+     * Parses and checks a pushed delta.
+     *
+     * @throws JSONException if it isn't a delta, or a value is out of range
+     */
+    public static ForecastDelta parse(String json) throws JSONException {
+        JSONObject delta = new JSONObject(json);
+        String locationSetting = delta.getString(KEY_LOCATION);
+        if (locationSetting.isEmpty()) {
+            throw new JSONException("Empty location");
+        }
+        JSONArray days = delta.getJSONArray(KEY_DAYS);
+        if (days.length() == 0 || days.length() > MAX_DAYS_AHEAD + 2) {
+            throw new JSONException("Unexpected number of days " + days.length());
+        }
+
+        long today = WeatherContract.normalizeDate(System.currentTimeMillis());
+        List<ContentValues> values = new ArrayList<ContentValues>(days.length());
+        for (int i = 0; i < days.length(); i++) {
+            JSONObject day = days.getJSONObject(i);
+            ContentValues dayValues = new ContentValues();
+
+            long date = WeatherContract.normalizeDate(day.getLong(KEY_DATE));
+            if (date < today - WeatherDateNormalizer.DAY_IN_MILLIS ||
+                    date > today + MAX_DAYS_AHEAD * WeatherDateNormalizer.DAY_IN_MILLIS) {
+                throw new JSONException("Date out of range " + date);
+            }
+            dayValues.put(WeatherEntry.COLUMN_DATE, date);
+
+            if (day.has(KEY_WEATHER_ID)) {
+                dayValues.put(WeatherEntry.COLUMN_WEATHER_ID,
+                        (int) checkRange(day, KEY_WEATHER_ID, 200, 999));
+            }
+            if (day.has(KEY_DESCRIPTION)) {
+                String description = day.getString(KEY_DESCRIPTION);
+                if (description.isEmpty()) {
+                    throw new JSONException("Empty description");
+                }
+                dayValues.put(WeatherEntry.COLUMN_SHORT_DESC, description);
+            }
+            if (day.has(KEY_HIGH)) {
+                dayValues.put(WeatherEntry.COLUMN_MAX_TEMP, checkRange(day, KEY_HIGH, -100, 100));
+            }
+            if (day.has(KEY_LOW)) {
+                dayValues.put(WeatherEntry.COLUMN_MIN_TEMP, checkRange(day, KEY_LOW, -100, 100));
+            }
+            if (day.has(KEY_HUMIDITY)) {
+                dayValues.put(WeatherEntry.COLUMN_HUMIDITY, checkRange(day, KEY_HUMIDITY, 0, 100));
+            }
+            if (day.has(KEY_PRESSURE)) {
+                dayValues.put(WeatherEntry.COLUMN_PRESSURE, checkRange(day, KEY_PRESSURE, 0, 2000));
+            }
+            if (day.has(KEY_WIND_SPEED)) {
+                dayValues.put(WeatherEntry.COLUMN_WIND_SPEED,
+                        checkRange(day, KEY_WIND_SPEED, 0, 200));
+            }
+            if (day.has(KEY_DEGREES)) {
+                dayValues.put(WeatherEntry.COLUMN_DEGREES, checkRange(day, KEY_DEGREES, 0, 360));
+            }
+            if (dayValues.size() == 1) {
+                throw new JSONException("Nothing changed on " + date);
+            }
+            values.add(dayValues);
+        }
+        return new ForecastDelta(locationSetting, values);
+    }
+
+    private static double checkRange(JSONObject day, String key, double min, double max)
+            throws JSONException {
+        double value = day.getDouble(key);
+        if (!(value >= min && value <= max)) {
+            throw new JSONException(key + " out of range " + value);
+        }
+        return value;
+    }
+
+    public String getLocationSetting() {
+        return mLocationSetting;
+    }
+
+    /**
+     * Writes the delta to the provider and tells the consumers.  This queries the provider, so
+     * it must not be called from the UI thread.
+     *
+     * @param context Context used to access the provider and post the change
+     * @return what changed, or null if the delta couldn't be applied: the location isn't stored,
+     * a new day doesn't carry every field, or the write failed
+     */
+    public ForecastChange apply(Context context) {
+        long locationId = findLocationId(context);
+        if (locationId < 0) {
+            Log.w(LOG_TAG, "Ignoring delta of unknown location " + mLocationSetting);
+            return null;
+        }
+
+        // The stored days the delta changes, to merge it with
+        Map<Long, ContentValues> stored = new HashMap<Long, ContentValues>();
+        StringBuilder selection = new StringBuilder(WeatherEntry.COLUMN_LOC_KEY + " = ? AND " +
+                WeatherEntry.COLUMN_DATE + " IN (");
+        String[] selectionArgs = new String[mDays.size() + 1];
+        selectionArgs[0] = Long.toString(locationId);
+        for (int i = 0; i < mDays.size(); i++) {
+            selection.append(i == 0 ? "?" : ", ?");
+            selectionArgs[i + 1] = mDays.get(i).getAsLong(WeatherEntry.COLUMN_DATE).toString();
+        }
+        selection.append(")");
+        String[] projection = new String[VALUE_COLUMNS.length + 2];
+        projection[0] = WeatherEntry.COLUMN_LOC_KEY;
+        projection[1] = WeatherEntry.COLUMN_DATE;
+        System.arraycopy(VALUE_COLUMNS, 0, projection, 2, VALUE_COLUMNS.length);
+        Cursor cursor = context.getContentResolver().query(WeatherEntry.CONTENT_URI, projection,
+                selection.toString(), selectionArgs, null);
+        if (null != cursor) {
+            try {
+                while (cursor.moveToNext()) {
+                    ContentValues values = new ContentValues();
+                    DatabaseUtils.cursorRowToContentValues(cursor, values);
+                    stored.put(values.getAsLong(WeatherEntry.COLUMN_DATE), values);
+                }
+            } finally {
+                cursor.close();
+            }
+        }
+
+        ContentValues[] merged = new ContentValues[mDays.size()];
+        for (int i = 0; i < mDays.size(); i++) {
+            ContentValues day = mDays.get(i);
+            ContentValues values = stored.get(day.getAsLong(WeatherEntry.COLUMN_DATE));
+            if (null == values) {
+                for (String column : VALUE_COLUMNS) {
+                    if (!day.containsKey(column)) {
+                        Log.w(LOG_TAG, "Ignoring delta, new day without " + column);
+                        return null;
+                    }
+                }
+                values = new ContentValues();
+                values.put(WeatherEntry.COLUMN_LOC_KEY, locationId);
+            }
+            values.putAll(day);
+            merged[i] = values;
+        }
+        // Only the delta's days get new display values, in the same transaction
+        if (PresentationBuilder.insertWithWeather(context, merged) == 0) {
+            return null;
+        }
+
+        ForecastSnapshot before = ForecastSnapshot.open(context, mLocationSetting);
+        ForecastSnapshotWriter.write(context, mLocationSetting);
+        ForecastChange change = ForecastChange.between(mLocationSetting, before,
+                ForecastSnapshot.open(context, mLocationSetting));
+        ForecastChangeBus.post(context, change);
+        return change;
+    }
+
+    private long findLocationId(Context context) {
+        Cursor cursor = context.getContentResolver().query(
+                WeatherContract.LocationEntry.CONTENT_URI,
+                new String[]{WeatherContract.LocationEntry._ID},
+                WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + " = ?",
+                new String[]{mLocationSetting},
+                null);
+        if (null == cursor) {
+            return -1;
+        }
+        try {
+            return cursor.moveToFirst() ? cursor.getLong(0) : -1;
+        } finally {
+            cursor.close();
+        }
+    }
+}
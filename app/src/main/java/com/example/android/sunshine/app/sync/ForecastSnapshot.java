@@ -0,0 +1,346 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.content.Context;
+import android.net.Uri;
+import android.util.Log;
+
+import com.example.android.sunshine.app.data.WeatherContract;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Read-only view of the binary forecast snapshot written by {@link ForecastSnapshotWriter} at
+ * the end of each sync.  Widgets, Muzei, the notification and the wear relay only need a few
+ * fields of a few days, so they read them from this memory-mapped file instead of querying and
+ * joining through the ContentProvider.
+ *
+ * The file is laid out as a fixed size header, one fixed size record per day (sorted by date,
+ * so a day is found by offset), and a table of the strings the records refer to by index:
+ *
+ * <pre>
+ * header:  int magic, int version, long writtenAt, int dayCount, int stringCount, int signature
+ * day:     long rowId, long date, int weatherId, int iconRes, int artRes,
+ *          double high, double low, double humidity, double pressure, double windSpeed,
+ *          double degrees, int description, int highText[2], int lowText[2]
+ * strings: int byteLength, UTF-8 bytes
+ * </pre>
+ *
+ * {@link #open(Context, String)} returns null when the file is missing, was written by another
+ * format version, or holds display strings for another locale or build; callers then fall back
+ * to the provider.
+ */
+public class ForecastSnapshot {
+    private static final String LOG_TAG = ForecastSnapshot.class.getSimpleName();
+
+    static final String SNAPSHOT_DIR = "forecast_snapshots";
+
+    static final int MAGIC = 0x53534E50; // "SSNP"
+    // Bump this whenever the layout below changes, older files are then ignored
+    static final int VERSION = 1;
+
+    static final int HEADER_SIZE = 4 + 4 + 8 + 4 + 4 + 4;
+    static final int RECORD_SIZE = 8 + 8 + 4 + 4 + 4 + 8 * 6 + 4 * 5;
+
+    // Offsets within a day record
+    private static final int OFFSET_ROW_ID = 0;
+    private static final int OFFSET_DATE = 8;
+    private static final int OFFSET_WEATHER_ID = 16;
+    private static final int OFFSET_ICON_RES = 20;
+    private static final int OFFSET_ART_RES = 24;
+    private static final int OFFSET_HIGH = 28;
+    private static final int OFFSET_LOW = 36;
+    private static final int OFFSET_HUMIDITY = 44;
+    private static final int OFFSET_PRESSURE = 52;
+    private static final int OFFSET_WIND_SPEED = 60;
+    private static final int OFFSET_DEGREES = 68;
+    private static final int OFFSET_DESCRIPTION = 76;
+    private static final int OFFSET_HIGH_TEXT = 80;
+    private static final int OFFSET_LOW_TEXT = 88;
+
+    // Index of each unit system in the highText and lowText pairs
+    static final int UNITS_INDEX_METRIC = 0;
+    static final int UNITS_INDEX_IMPERIAL = 1;
+
+    private final String mLocationSetting;
+    private final ByteBuffer mBuffer;
+    private final long mWrittenAt;
+    private final int mDayCount;
+    private final String[] mStrings;
+
+    private ForecastSnapshot(String locationSetting, ByteBuffer buffer, long writtenAt,
+                             int dayCount, String[] strings) {
+        mLocationSetting = locationSetting;
+        mBuffer = buffer;
+        mWrittenAt = writtenAt;
+        mDayCount = dayCount;
+        mStrings = strings;
+    }
+
+    /**
+     * Maps the snapshot of the given location.
+     *
+     * @param context Context used to find the snapshot directory
+     * @param locationSetting the location setting the snapshot was written for
+     * @return the snapshot, or null if there is no usable one and the provider should be queried
+     */
+    public static ForecastSnapshot open(Context context, String locationSetting) {
+        File file = getSnapshotFile(context, locationSetting);
+        if (!file.exists()) {
+            return null;
+        }
+
+        FileInputStream in = null;
+        try {
+            in = new FileInputStream(file);
+            FileChannel channel = in.getChannel();
+            // The mapping stays valid after the channel is closed
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+            if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+                return null;
+            }
+            long writtenAt = buffer.getLong(8);
+            int dayCount = buffer.getInt(16);
+            int stringCount = buffer.getInt(20);
+            int signatureIndex = buffer.getInt(24);
+
+            // A truncated or corrupt file must not make the readers allocate or index past it,
+            // every string takes at least its length
+            long stringsOffset = HEADER_SIZE + (long) dayCount * RECORD_SIZE;
+            if (dayCount < 0 || stringCount < 0 || stringsOffset > buffer.limit() ||
+                    stringCount > (buffer.limit() - stringsOffset) / 4 ||
+                    signatureIndex < 0 || signatureIndex >= stringCount) {
+                Log.w(LOG_TAG, "Ignoring corrupt snapshot " + file);
+                return null;
+            }
+            for (int day = 0; day < dayCount; day++) {
+                int offset = HEADER_SIZE + day * RECORD_SIZE;
+                if (!isStringIndex(buffer, offset + OFFSET_DESCRIPTION, 1, stringCount) ||
+                        !isStringIndex(buffer, offset + OFFSET_HIGH_TEXT, 2, stringCount) ||
+                        !isStringIndex(buffer, offset + OFFSET_LOW_TEXT, 2, stringCount)) {
+                    Log.w(LOG_TAG, "Ignoring corrupt snapshot " + file);
+                    return null;
+                }
+            }
+
+            String[] strings = new String[stringCount];
+            buffer.position((int) stringsOffset);
+            for (int i = 0; i < stringCount; i++) {
+                int length = buffer.getInt();
+                if (length < 0 || length > buffer.remaining()) {
+                    Log.w(LOG_TAG, "Ignoring corrupt snapshot " + file);
+                    return null;
+                }
+                byte[] bytes = new byte[length];
+                buffer.get(bytes);
+                strings[i] = new String(bytes, "UTF-8");
+            }
+
+            if (!PresentationBuilder.getSignature().equals(strings[signatureIndex])) {
+                // Built for another locale or build, the strings and resource ids can't be used
+                return null;
+            }
+            return new ForecastSnapshot(locationSetting, buffer, writtenAt, dayCount, strings);
+        } catch (IOException | BufferUnderflowException | IndexOutOfBoundsException e) {
+            Log.w(LOG_TAG, "Ignoring unreadable snapshot " + file, e);
+            return null;
+        } finally {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException e) {
+                    Log.e(LOG_TAG, "Error closing snapshot", e);
+                }
+            }
+        }
+    }
+
+    private static boolean isStringIndex(ByteBuffer buffer, int offset, int count,
+                                         int stringCount) {
+        for (int i = 0; i < count; i++) {
+            int index = buffer.getInt(offset + i * 4);
+            if (index < 0 || index >= stringCount) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    static File getSnapshotDir(Context context) {
+        return new File(context.getFilesDir(), SNAPSHOT_DIR);
+    }
+
+    static File getSnapshotFile(Context context, String locationSetting) {
+        return new File(getSnapshotDir(context), getSnapshotFileName(locationSetting));
+    }
+
+    static String getSnapshotFileName(String locationSetting) {
+        // Location settings are free text, keep them from escaping the directory
+        return Uri.encode(locationSetting) + ".bin";
+    }
+
+    static byte[] encode(String string) {
+        try {
+            return string.getBytes("UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            // Every platform supports UTF-8
+            throw new AssertionError(e);
+        }
+    }
+
+    static int getUnitsIndex(String units) {
+        return WeatherContract.PresentationEntry.UNITS_IMPERIAL.equals(units)
+                ? UNITS_INDEX_IMPERIAL : UNITS_INDEX_METRIC;
+    }
+
+    public String getLocationSetting() {
+        return mLocationSetting;
+    }
+
+    /**
+     * @return the time the snapshot was written, in milliseconds
+     */
+    public long getWrittenAt() {
+        return mWrittenAt;
+    }
+
+    public int getDayCount() {
+        return mDayCount;
+    }
+
+    /**
+     * @param date a date in milliseconds, it doesn't need to be normalized
+     * @return the index of the day holding that date, or -1 if it isn't in the snapshot
+     */
+    public int findDay(long date) {
+        int index = findFirstDayOnOrAfter(date);
+        if (index >= 0 && getDate(index) == WeatherContract.normalizeDate(date)) {
+            return index;
+        }
+        return -1;
+    }
+
+    /**
+     * @param date a date in milliseconds, it doesn't need to be normalized
+     * @return the index of the first day on or after that date, or -1 if there is none
+     */
+    public int findFirstDayOnOrAfter(long date) {
+        long normalizedDate = WeatherContract.normalizeDate(date);
+        int low = 0;
+        int high = mDayCount - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            if (getDate(middle) < normalizedDate) {
+                low = middle + 1;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return low < mDayCount ? low : -1;
+    }
+
+    /**
+     * @return the index of today, or of the first day after it, or -1 if the snapshot only holds
+     * past days
+     */
+    public int findToday() {
+        return findFirstDayOnOrAfter(System.currentTimeMillis());
+    }
+
+    public long getRowId(int day) {
+        return mBuffer.getLong(getRecordOffset(day) + OFFSET_ROW_ID);
+    }
+
+    public long getDate(int day) {
+        return mBuffer.getLong(getRecordOffset(day) + OFFSET_DATE);
+    }
+
+    public int getWeatherId(int day) {
+        return mBuffer.getInt(getRecordOffset(day) + OFFSET_WEATHER_ID);
+    }
+
+    public int getIconResource(int day) {
+        return mBuffer.getInt(getRecordOffset(day) + OFFSET_ICON_RES);
+    }
+
+    public int getArtResource(int day) {
+        return mBuffer.getInt(getRecordOffset(day) + OFFSET_ART_RES);
+    }
+
+    public double getHigh(int day) {
+        return mBuffer.getDouble(getRecordOffset(day) + OFFSET_HIGH);
+    }
+
+    public double getLow(int day) {
+        return mBuffer.getDouble(getRecordOffset(day) + OFFSET_LOW);
+    }
+
+    public double getHumidity(int day) {
+        return mBuffer.getDouble(getRecordOffset(day) + OFFSET_HUMIDITY);
+    }
+
+    public double getPressure(int day) {
+        return mBuffer.getDouble(getRecordOffset(day) + OFFSET_PRESSURE);
+    }
+
+    public double getWindSpeed(int day) {
+        return mBuffer.getDouble(getRecordOffset(day) + OFFSET_WIND_SPEED);
+    }
+
+    public double getDegrees(int day) {
+        return mBuffer.getDouble(getRecordOffset(day) + OFFSET_DEGREES);
+    }
+
+    public String getDescription(int day) {
+        return mStrings[mBuffer.getInt(getRecordOffset(day) + OFFSET_DESCRIPTION)];
+    }
+
+    /**
+     * @param day index of the day
+     * @param units one of the PresentationEntry units
+     * @return the formatted high temperature
+     */
+    public String getHighText(int day, String units) {
+        return mStrings[mBuffer.getInt(
+                getRecordOffset(day) + OFFSET_HIGH_TEXT + 4 * getUnitsIndex(units))];
+    }
+
+    /**
+     * @param day index of the day
+     * @param units one of the PresentationEntry units
+     * @return the formatted low temperature
+     */
+    public String getLowText(int day, String units) {
+        return mStrings[mBuffer.getInt(
+                getRecordOffset(day) + OFFSET_LOW_TEXT + 4 * getUnitsIndex(units))];
+    }
+
+    private int getRecordOffset(int day) {
+        if (day < 0 || day >= mDayCount) {
+            throw new IndexOutOfBoundsException("Day " + day + " of " + mDayCount);
+        }
+        return HEADER_SIZE + day * RECORD_SIZE;
+    }
+}
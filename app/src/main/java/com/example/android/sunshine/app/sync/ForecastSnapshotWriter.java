@@ -0,0 +1,267 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.util.Log;
+
+import com.example.android.sunshine.app.data.WeatherContract;
+import com.example.android.sunshine.app.data.WeatherContract.PresentationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Writes the {@link ForecastSnapshot} files from the weather and presentation tables.  Called
+ * once the sync, or a presentation rebuild, has committed its rows.
+ */
+public class ForecastSnapshotWriter {
+    private static final String LOG_TAG = ForecastSnapshotWriter.class.getSimpleName();
+
+    private static final String[] SNAPSHOT_COLUMNS = {
+            WeatherEntry.TABLE_NAME + "." + WeatherEntry._ID,
+            WeatherEntry.COLUMN_DATE,
+            WeatherEntry.COLUMN_WEATHER_ID,
+            PresentationEntry.COLUMN_ICON_RES,
+            PresentationEntry.COLUMN_ART_RES,
+            WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherEntry.COLUMN_MIN_TEMP,
+            WeatherEntry.COLUMN_HUMIDITY,
+            WeatherEntry.COLUMN_PRESSURE,
+            WeatherEntry.COLUMN_WIND_SPEED,
+            WeatherEntry.COLUMN_DEGREES,
+            PresentationEntry.COLUMN_DESCRIPTION,
+            PresentationEntry.COLUMN_HIGH_TEXT,
+            PresentationEntry.COLUMN_LOW_TEXT
+    };
+    // these indices must match the projection
+    private static final int INDEX_ROW_ID = 0;
+    private static final int INDEX_DATE = 1;
+    private static final int INDEX_WEATHER_ID = 2;
+    private static final int INDEX_ICON_RES = 3;
+    private static final int INDEX_ART_RES = 4;
+    private static final int INDEX_MAX_TEMP = 5;
+    private static final int INDEX_MIN_TEMP = 6;
+    private static final int INDEX_HUMIDITY = 7;
+    private static final int INDEX_PRESSURE = 8;
+    private static final int INDEX_WIND_SPEED = 9;
+    private static final int INDEX_DEGREES = 10;
+    private static final int INDEX_DESCRIPTION = 11;
+    private static final int INDEX_HIGH_TEXT = 12;
+    private static final int INDEX_LOW_TEXT = 13;
+
+    private static final String[] UNITS_TEXT_COLUMNS = {
+            WeatherEntry.COLUMN_DATE,
+            PresentationEntry.COLUMN_HIGH_TEXT,
+            PresentationEntry.COLUMN_LOW_TEXT
+    };
+    // these indices must match the projection
+    private static final int INDEX_UNITS_DATE = 0;
+    private static final int INDEX_UNITS_HIGH_TEXT = 1;
+    private static final int INDEX_UNITS_LOW_TEXT = 2;
+
+    /**
+     * Writes the snapshot of every stored location, and deletes the snapshots of locations that
+     * are no longer stored.  This queries the provider, so it must not be called from the UI
+     * thread.
+     *
+     * @param context Context used to access the provider and the files directory
+     */
+    public static void writeAll(Context context) {
+        Cursor locationCursor = context.getContentResolver().query(
+                WeatherContract.LocationEntry.CONTENT_URI,
+                new String[]{WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING},
+                null, null, null);
+        if (null == locationCursor) {
+            return;
+        }
+
+        Set<String> written = new HashSet<String>();
+        try {
+            while (locationCursor.moveToNext()) {
+                String locationSetting = locationCursor.getString(0);
+                if (write(context, locationSetting)) {
+                    written.add(ForecastSnapshot.getSnapshotFileName(locationSetting));
+                }
+            }
+        } finally {
+            locationCursor.close();
+        }
+
+        File[] files = ForecastSnapshot.getSnapshotDir(context).listFiles();
+        if (null != files) {
+            for (File file : files) {
+                // Another writer's file may not be in place yet
+                if (!written.contains(file.getName()) && !AtomicFiles.isBeingWritten(file)) {
+                    file.delete();
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes the snapshot of one location.  The file is replaced atomically, so a reader sees
+     * either the previous snapshot or the new one.  Writers are serialized, so the snapshot
+     * written last was also read from the provider last.
+     *
+     * @param context Context used to access the provider and the files directory
+     * @param locationSetting the location to write
+     * @return true if the snapshot was written
+     */
+    public static synchronized boolean write(Context context, String locationSetting) {
+        final byte[] bytes = build(context, locationSetting);
+        if (null == bytes) {
+            return false;
+        }
+
+        try {
+            AtomicFiles.write(ForecastSnapshot.getSnapshotFile(context, locationSetting),
+                    new AtomicFiles.Content() {
+                        @Override
+                        public void writeTo(OutputStream out) throws IOException {
+                            out.write(bytes);
+                        }
+                    });
+            return true;
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Error writing snapshot for " + locationSetting, e);
+            return false;
+        }
+    }
+
+    private static byte[] build(Context context, String locationSetting) {
+        // Read the imperial text first, the main query below holds the metric values
+        Cursor unitsCursor = context.getContentResolver().query(
+                PresentationEntry.buildPresentationLocationWithStartDate(
+                        locationSetting, PresentationEntry.UNITS_IMPERIAL, 0),
+                UNITS_TEXT_COLUMNS, null, null, WeatherEntry.COLUMN_DATE + " ASC");
+        if (null == unitsCursor) {
+            return null;
+        }
+        List<String> imperialHighs = new ArrayList<String>();
+        List<String> imperialLows = new ArrayList<String>();
+        List<Long> imperialDates = new ArrayList<Long>();
+        try {
+            while (unitsCursor.moveToNext()) {
+                imperialDates.add(unitsCursor.getLong(INDEX_UNITS_DATE));
+                imperialHighs.add(unitsCursor.getString(INDEX_UNITS_HIGH_TEXT));
+                imperialLows.add(unitsCursor.getString(INDEX_UNITS_LOW_TEXT));
+            }
+        } finally {
+            unitsCursor.close();
+        }
+
+        Cursor cursor = context.getContentResolver().query(
+                PresentationEntry.buildPresentationLocationWithStartDate(
+                        locationSetting, PresentationEntry.UNITS_METRIC, 0),
+                SNAPSHOT_COLUMNS, null, null, WeatherEntry.COLUMN_DATE + " ASC");
+        if (null == cursor) {
+            return null;
+        }
+
+        // Strings are stored once and referred to by index, most days share their description
+        // and several share a temperature
+        List<String> strings = new ArrayList<String>();
+        Map<String, Integer> stringIndices = new HashMap<String, Integer>();
+        ByteArrayOutputStream records = new ByteArrayOutputStream(
+                cursor.getCount() * ForecastSnapshot.RECORD_SIZE);
+        DataOutputStream out = new DataOutputStream(records);
+        int dayCount = 0;
+        try {
+            if (cursor.getCount() != imperialDates.size()) {
+                // A rebuild happened between the two queries, the next one will write the file
+                return null;
+            }
+            while (cursor.moveToNext()) {
+                long date = cursor.getLong(INDEX_DATE);
+                if (date != imperialDates.get(dayCount)) {
+                    return null;
+                }
+                out.writeLong(cursor.getLong(INDEX_ROW_ID));
+                out.writeLong(date);
+                out.writeInt(cursor.getInt(INDEX_WEATHER_ID));
+                out.writeInt(cursor.getInt(INDEX_ICON_RES));
+                out.writeInt(cursor.getInt(INDEX_ART_RES));
+                out.writeDouble(cursor.getDouble(INDEX_MAX_TEMP));
+                out.writeDouble(cursor.getDouble(INDEX_MIN_TEMP));
+                out.writeDouble(cursor.getDouble(INDEX_HUMIDITY));
+                out.writeDouble(cursor.getDouble(INDEX_PRESSURE));
+                out.writeDouble(cursor.getDouble(INDEX_WIND_SPEED));
+                out.writeDouble(cursor.getDouble(INDEX_DEGREES));
+                out.writeInt(intern(cursor.getString(INDEX_DESCRIPTION), strings, stringIndices));
+                // ForecastSnapshot.UNITS_INDEX_METRIC, then UNITS_INDEX_IMPERIAL
+                out.writeInt(intern(cursor.getString(INDEX_HIGH_TEXT), strings, stringIndices));
+                out.writeInt(intern(imperialHighs.get(dayCount), strings, stringIndices));
+                out.writeInt(intern(cursor.getString(INDEX_LOW_TEXT), strings, stringIndices));
+                out.writeInt(intern(imperialLows.get(dayCount), strings, stringIndices));
+                dayCount++;
+            }
+        } catch (IOException e) {
+            // Can't happen when writing to memory
+            throw new AssertionError(e);
+        } finally {
+            cursor.close();
+        }
+
+        int signatureIndex = intern(PresentationBuilder.getSignature(), strings, stringIndices);
+
+        ByteArrayOutputStream file = new ByteArrayOutputStream(
+                ForecastSnapshot.HEADER_SIZE + records.size() + strings.size() * 16);
+        out = new DataOutputStream(file);
+        try {
+            out.writeInt(ForecastSnapshot.MAGIC);
+            out.writeInt(ForecastSnapshot.VERSION);
+            out.writeLong(System.currentTimeMillis());
+            out.writeInt(dayCount);
+            out.writeInt(strings.size());
+            out.writeInt(signatureIndex);
+            records.writeTo(out);
+            for (String string : strings) {
+                byte[] bytes = ForecastSnapshot.encode(string);
+                out.writeInt(bytes.length);
+                out.write(bytes);
+            }
+            out.flush();
+        } catch (IOException e) {
+            throw new AssertionError(e);
+        }
+        return file.toByteArray();
+    }
+
+    private static int intern(String string, List<String> strings, Map<String, Integer> indices) {
+        if (null == string) {
+            string = "";
+        }
+        Integer index = indices.get(string);
+        if (null == index) {
+            index = strings.size();
+            strings.add(string);
+            indices.put(string, index);
+        }
+        return index;
+    }
+}
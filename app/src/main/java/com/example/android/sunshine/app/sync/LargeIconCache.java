@@ -0,0 +1,100 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.content.Context;
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.support.v4.util.LruCache;
+
+import java.io.File;
+
+/**
+ * Notification large icons, at notification_large_icon_width by notification_large_icon_height.
+ *
+ * An art pack image comes from the file {@link ArtCache} rendered at that size; when there is
+ * none yet, e.g. for a pack picked since the last warm up, the condition's art resource is used
+ * instead, scaled down while decoding.  Either way nothing waits on the network, and decoded
+ * icons are kept for the process, so posting a notification costs the same with any pack.
+ */
+public class LargeIconCache {
+
+    // Enough for the condition groups of a pack, and the art resources
+    private static final int MAX_ICONS = 16;
+
+    private static final LruCache<String, Bitmap> sIcons = new LruCache<String, Bitmap>(MAX_ICONS);
+
+    /**
+     * @param artUrl the art of the active pack, or null when using the local graphics
+     * @param artResourceId the art resource of the condition, used when the art isn't rendered
+     * @return the large icon
+     */
+    public static Bitmap get(Context context, String artUrl, int artResourceId) {
+        int[] size = ArtCache.getNotificationIconSize(context);
+        if (null != artUrl) {
+            String fileName = ArtCache.getArtFileName(artUrl, size[0], size[1]);
+            Bitmap icon = sIcons.get(fileName);
+            if (null == icon) {
+                File file = ArtCache.getArtFile(context, fileName);
+                icon = file.isFile() ? BitmapFactory.decodeFile(file.getPath()) : null;
+                if (null != icon) {
+                    sIcons.put(fileName, icon);
+                }
+            }
+            if (null != icon) {
+                return icon;
+            }
+        }
+
+        String key = "res:" + artResourceId + ":" + size[0] + "x" + size[1];
+        Bitmap icon = sIcons.get(key);
+        if (null == icon) {
+            icon = decodeResource(context.getResources(), artResourceId, size[0], size[1]);
+            sIcons.put(key, icon);
+        }
+        return icon;
+    }
+
+    // Decodes the resource fitted in width by height, subsampled so the full image is never
+    // allocated
+    private static Bitmap decodeResource(Resources resources, int resourceId, int width,
+                                        int height) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeResource(resources, resourceId, options);
+        options.inSampleSize = 1;
+        while (options.outWidth / (options.inSampleSize * 2) >= width &&
+                options.outHeight / (options.inSampleSize * 2) >= height) {
+            options.inSampleSize *= 2;
+        }
+        options.inJustDecodeBounds = false;
+        Bitmap bitmap = BitmapFactory.decodeResource(resources, resourceId, options);
+
+        float scale = Math.min((float) width / bitmap.getWidth(),
+                (float) height / bitmap.getHeight());
+        if (scale >= 1) {
+            return bitmap;
+        }
+        Bitmap scaled = Bitmap.createScaledBitmap(bitmap,
+                Math.max(1, Math.round(bitmap.getWidth() * scale)),
+                Math.max(1, Math.round(bitmap.getHeight() * scale)), true);
+        if (scaled != bitmap) {
+            bitmap.recycle();
+        }
+        return scaled;
+    }
+}
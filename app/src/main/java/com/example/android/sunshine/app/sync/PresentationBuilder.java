@@ -0,0 +1,220 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.content.ContentProviderOperation;
+import android.content.ContentValues;
+import android.content.Context;
+import android.content.OperationApplicationException;
+import android.content.SharedPreferences;
+import android.database.Cursor;
+import android.os.RemoteException;
+import android.preference.PreferenceManager;
+import android.util.Log;
+import android.util.SparseArray;
+
+import com.example.android.sunshine.app.BuildConfig;
+import com.example.android.sunshine.app.R;
+import com.example.android.sunshine.app.Utility;
+import com.example.android.sunshine.app.data.WeatherContract;
+import com.example.android.sunshine.app.data.WeatherContract.PresentationEntry;
+
+import java.util.ArrayList;
+import java.util.Locale;
+
+/**
+ * Computes the display values of every stored weather row, for both unit systems, and writes
+ * them to the presentation table.
+ *
+ * The values depend on the locale (condition strings) and on the build (resource ids), so the
+ * combination they were built with is remembered and {@link #isStale(Context)} tells whether a
+ * rebuild is needed.  The unit preference is not part of that, since both systems are stored.
+ *
+ * New weather rows are written with {@link #insertWithWeather}, in the same transaction as their
+ * display values, so a reader never sees a day without them.
+ */
+public class PresentationBuilder {
+    private static final String LOG_TAG = PresentationBuilder.class.getSimpleName();
+
+    private static final String[] WEATHER_COLUMNS = {
+            WeatherContract.WeatherEntry._ID,
+            WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
+            WeatherContract.WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherContract.WeatherEntry.COLUMN_MIN_TEMP
+    };
+    // these indices must match the projection
+    private static final int INDEX_ID = 0;
+    private static final int INDEX_WEATHER_ID = 1;
+    private static final int INDEX_MAX_TEMP = 2;
+    private static final int INDEX_MIN_TEMP = 3;
+
+    private static final String[] UNITS = {
+            PresentationEntry.UNITS_METRIC,
+            PresentationEntry.UNITS_IMPERIAL
+    };
+
+    // The weather ids the resource mappings are hashed over
+    private static final int FIRST_WEATHER_ID = 200;
+    private static final int LAST_WEATHER_ID = 999;
+
+    private static String sResourceHash;
+
+    /**
+     * Rebuilds the presentation table from the weather table.  This queries the provider, so it
+     * must not be called from the UI thread.
+     *
+     * @param context Context used to access the provider and resources
+     * @return the number of presentation rows written
+     */
+    public static int rebuild(Context context) {
+        Cursor cursor = context.getContentResolver().query(WeatherContract.WeatherEntry.CONTENT_URI,
+                WEATHER_COLUMNS, null, null, null);
+        if (null == cursor) {
+            return 0;
+        }
+
+        ContentValues[] values = new ContentValues[cursor.getCount() * UNITS.length];
+        SparseArray<String> descriptions = new SparseArray<String>();
+        int count = 0;
+        try {
+            while (cursor.moveToNext()) {
+                long rowId = cursor.getLong(INDEX_ID);
+                int weatherId = cursor.getInt(INDEX_WEATHER_ID);
+                double high = cursor.getDouble(INDEX_MAX_TEMP);
+                double low = cursor.getDouble(INDEX_MIN_TEMP);
+
+                for (ContentValues presentationValues : buildValues(context, descriptions,
+                        weatherId, high, low)) {
+                    presentationValues.put(PresentationEntry.COLUMN_WEATHER_KEY, rowId);
+                    values[count++] = presentationValues;
+                }
+            }
+        } finally {
+            cursor.close();
+        }
+
+        int inserted = context.getContentResolver().bulkInsert(PresentationEntry.CONTENT_URI, values);
+
+        SharedPreferences.Editor editor = PreferenceManager.getDefaultSharedPreferences(context).edit();
+        editor.putString(context.getString(R.string.pref_presentation_signature_key),
+                getSignature());
+        editor.commit();
+
+        Log.d(LOG_TAG, "Presentation rebuilt. " + inserted + " Inserted");
+        return inserted;
+    }
+
+    /**
+     * Writes weather rows and their display values in one transaction.  Rows replacing stored
+     * days get new ids, written separately the joined queries would miss those days in between.
+     * This writes to the provider, so it must not be called from the UI thread.
+     *
+     * @param context Context used to access the provider and resources
+     * @param weatherValues the weather rows, with at least the weather id and temperatures
+     * @return the number of weather rows written
+     */
+    public static int insertWithWeather(Context context, ContentValues[] weatherValues) {
+        ArrayList<ContentProviderOperation> operations = new ArrayList<ContentProviderOperation>(
+                weatherValues.length * (UNITS.length + 1));
+        SparseArray<String> descriptions = new SparseArray<String>();
+        for (ContentValues weather : weatherValues) {
+            int weatherIndex = operations.size();
+            operations.add(ContentProviderOperation
+                    .newInsert(WeatherContract.WeatherEntry.CONTENT_URI)
+                    .withValues(weather)
+                    .build());
+            for (ContentValues presentationValues : buildValues(context, descriptions,
+                    weather.getAsInteger(WeatherContract.WeatherEntry.COLUMN_WEATHER_ID),
+                    weather.getAsDouble(WeatherContract.WeatherEntry.COLUMN_MAX_TEMP),
+                    weather.getAsDouble(WeatherContract.WeatherEntry.COLUMN_MIN_TEMP))) {
+                operations.add(ContentProviderOperation
+                        .newInsert(PresentationEntry.CONTENT_URI)
+                        .withValues(presentationValues)
+                        .withValueBackReference(PresentationEntry.COLUMN_WEATHER_KEY,
+                                weatherIndex)
+                        .build());
+            }
+        }
+
+        try {
+            context.getContentResolver().applyBatch(WeatherContract.CONTENT_AUTHORITY, operations);
+        } catch (RemoteException | OperationApplicationException e) {
+            Log.e(LOG_TAG, "Error writing weather rows", e);
+            return 0;
+        }
+        Log.d(LOG_TAG, "Weather and presentation written. " + weatherValues.length + " Inserted");
+        return weatherValues.length;
+    }
+
+    // The display values of one weather row, one per unit system, without the row's id
+    private static ContentValues[] buildValues(Context context, SparseArray<String> descriptions,
+                                               int weatherId, double high, double low) {
+        // Most days of a forecast share a handful of conditions, only look each string up once
+        String description = descriptions.get(weatherId);
+        if (null == description) {
+            description = Utility.getStringForWeatherCondition(context, weatherId);
+            descriptions.put(weatherId, description);
+        }
+        int iconRes = Utility.getIconResourceForWeatherCondition(weatherId);
+        int artRes = Utility.getArtResourceForWeatherCondition(weatherId);
+
+        ContentValues[] values = new ContentValues[UNITS.length];
+        for (int i = 0; i < UNITS.length; i++) {
+            boolean isMetric = PresentationEntry.UNITS_METRIC.equals(UNITS[i]);
+            ContentValues presentationValues = new ContentValues();
+            presentationValues.put(PresentationEntry.COLUMN_UNITS, UNITS[i]);
+            presentationValues.put(PresentationEntry.COLUMN_DESCRIPTION, description);
+            presentationValues.put(PresentationEntry.COLUMN_ICON_RES, iconRes);
+            presentationValues.put(PresentationEntry.COLUMN_ART_RES, artRes);
+            presentationValues.put(PresentationEntry.COLUMN_HIGH_TEXT,
+                    Utility.formatTemperature(context, high, isMetric));
+            presentationValues.put(PresentationEntry.COLUMN_LOW_TEXT,
+                    Utility.formatTemperature(context, low, isMetric));
+            values[i] = presentationValues;
+        }
+        return values;
+    }
+
+    /**
+     * @param context Context used to get the SharedPreferences
+     * @return true if the stored presentation values were built for another locale or build
+     */
+    public static boolean isStale(Context context) {
+        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(context);
+        String signature = prefs.getString(
+                context.getString(R.string.pref_presentation_signature_key), null);
+        return !getSignature().equals(signature);
+    }
+
+    static String getSignature() {
+        return Locale.getDefault().toString() + "/" + BuildConfig.VERSION_CODE + "/" +
+                getResourceHash();
+    }
+
+    // Resource ids can change between builds with the same version code, e.g. during
+    // development, so the ids the conditions map to are part of the signature as well
+    private static String getResourceHash() {
+        if (null == sResourceHash) {
+            int hash = 1;
+            for (int weatherId = FIRST_WEATHER_ID; weatherId <= LAST_WEATHER_ID; weatherId++) {
+                hash = 31 * hash + Utility.getIconResourceForWeatherCondition(weatherId);
+                hash = 31 * hash + Utility.getArtResourceForWeatherCondition(weatherId);
+            }
+            sResourceHash = Integer.toHexString(hash);
+        }
+        return sResourceHash;
+    }
+}
@@ -0,0 +1,52 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.app.IntentService;
+import android.content.Context;
+import android.content.Intent;
+
+/**
+ * IntentService which rebuilds the stored presentation values from the local weather data,
+ * without going to the network.  Started when the locale changes, or when the stored values were
+ * built by an older version of the app.
+ */
+public class PresentationRebuildService extends IntentService {
+
+    public PresentationRebuildService() {
+        super("PresentationRebuildService");
+    }
+
+    /**
+     * Starts a rebuild if the stored values don't match the current locale and build.
+     *
+     * @param context Context used to start the service
+     */
+    public static void rebuildIfStale(Context context) {
+        if (PresentationBuilder.isStale(context)) {
+            context.startService(new Intent(context, PresentationRebuildService.class));
+        }
+    }
+
+    @Override
+    protected void onHandleIntent(Intent intent) {
+        if (PresentationBuilder.rebuild(this) > 0) {
+            ForecastSnapshotWriter.writeAll(this);
+            // Widgets and Muzei don't observe the provider, let them know the text changed
+            ForecastChangeBus.post(this, ForecastChange.everything(null));
+        }
+    }
+}
@@ -0,0 +1,164 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.content.Context;
+import android.content.Intent;
+import android.net.Uri;
+import android.util.Log;
+
+import com.bumptech.glide.Glide;
+import com.bumptech.glide.request.target.Target;
+import com.example.android.sunshine.app.data.WeatherContract;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Local copies of the Muzei wallpapers, which ArtProvider serves.  The Muzei source has the
+ * images of today and tomorrow downloaded ahead of time, so publishing one usually only hands
+ * Muzei a local file: no wait on the network when the day changes, and no download of an image
+ * already seen.
+ */
+public class WallpaperCache {
+    private static final String LOG_TAG = WallpaperCache.class.getSimpleName();
+
+    private static final String WALLPAPER_DIRECTORY = "wallpaper";
+
+    /**
+     * @return the name of the local copy of the image, keeping its extension
+     */
+    public static String getFileName(String imageUrl) {
+        String name = Integer.toHexString(imageUrl.hashCode());
+        int dot = imageUrl.lastIndexOf('.');
+        if (dot > imageUrl.lastIndexOf('/')) {
+            name += imageUrl.substring(dot).toLowerCase(Locale.US);
+        }
+        return name;
+    }
+
+    /**
+     * @return the file of that name in the wallpaper directory, or null if the name isn't a
+     * plain file name
+     */
+    public static File getFile(Context context, String fileName) {
+        if (fileName.isEmpty() || fileName.contains(File.separator) || fileName.startsWith(".")) {
+            return null;
+        }
+        return new File(new File(context.getCacheDir(), WALLPAPER_DIRECTORY), fileName);
+    }
+
+    /**
+     * @return the URI ArtProvider serves the local copy of the image at, or null if it hasn't
+     * been downloaded
+     */
+    public static Uri getUri(Context context, String imageUrl) {
+        String fileName = getFileName(imageUrl);
+        return getFile(context, fileName).isFile()
+                ? WeatherContract.ArtEntry.buildWallpaperUri(fileName) : null;
+    }
+
+    /**
+     * Downloads the image, unless it is there already.  This blocks, so it must not be called
+     * from the UI thread.
+     *
+     * @return true if the local copy is there
+     */
+    public static boolean download(Context context, String imageUrl) throws InterruptedException {
+        File file = getFile(context, getFileName(imageUrl));
+        if (file.isFile()) {
+            return true;
+        }
+        try {
+            final File source = Glide.with(context)
+                    .load(imageUrl)
+                    .downloadOnly(Target.SIZE_ORIGINAL, Target.SIZE_ORIGINAL)
+                    .get();
+            // Copied aside and renamed, so Muzei never reads half a file
+            AtomicFiles.write(file, new AtomicFiles.Content() {
+                @Override
+                public void writeTo(OutputStream out) throws IOException {
+                    InputStream in = new FileInputStream(source);
+                    try {
+                        byte[] buffer = new byte[8192];
+                        int count;
+                        while ((count = in.read(buffer)) != -1) {
+                            out.write(buffer, 0, count);
+                        }
+                    } finally {
+                        in.close();
+                    }
+                }
+            });
+            return true;
+        } catch (ExecutionException | IOException e) {
+            Log.w(LOG_TAG, "Unable to download " + imageUrl, e);
+            return false;
+        }
+    }
+
+    /**
+     * Downloads the images and deletes the local copies of the others in the background, on the
+     * {@link BackgroundWorkService}.
+     */
+    public static void startPrefetch(Context context, Set<String> imageUrls) {
+        BackgroundWorkService.enqueue(context,
+                new Intent(BackgroundWorkService.ACTION_PREFETCH_WALLPAPERS)
+                        .putExtra(BackgroundWorkService.EXTRA_IMAGE_URLS,
+                                imageUrls.toArray(new String[imageUrls.size()])));
+    }
+
+    /**
+     * Downloads the images and deletes the local copies of the others.  This blocks, so it must
+     * not be called from the UI thread.
+     */
+    static void prefetch(Context context, String[] imageUrls) throws InterruptedException {
+        for (String imageUrl : imageUrls) {
+            download(context, imageUrl);
+        }
+        keepOnly(context, new HashSet<String>(Arrays.asList(imageUrls)));
+    }
+
+    /**
+     * Deletes the local copies of the other images.
+     */
+    public static void keepOnly(Context context, Set<String> imageUrls) {
+        File[] files = new File(context.getCacheDir(), WALLPAPER_DIRECTORY).listFiles();
+        if (null == files) {
+            return;
+        }
+        Set<String> fileNames = new HashSet<String>();
+        for (String imageUrl : imageUrls) {
+            fileNames.add(getFileName(imageUrl));
+        }
+        for (File file : files) {
+            if (fileNames.contains(file.getName()) || AtomicFiles.isBeingWritten(file)) {
+                continue;
+            }
+            if (!file.delete()) {
+                Log.w(LOG_TAG, "Unable to delete " + file);
+            }
+        }
+    }
+}
@@ -25,7 +25,7 @@ public class WearListenerService extends WearableListenerService {
                 Log.d(LOG_TAG, "Got Listener at path " + path);
                 if (path.equals(WEATHER_PATH)) {
                     Log.d(LOG_TAG,"Requesting Update");
-                    SunshineSyncAdapter.syncImmediately(this);
+                    SunshineSyncAdapter.syncImmediatelyForWear(this);
                 }
             }
         }
@@ -0,0 +1,209 @@
+package com.example.android.sunshine.app.widget;
+
+import android.annotation.TargetApi;
+import android.content.Context;
+import android.content.Intent;
+import android.net.Uri;
+import android.os.Binder;
+import android.os.Build;
+import android.os.Bundle;
+import android.widget.AdapterView;
+import android.widget.RemoteViews;
+import android.widget.RemoteViewsService;
+
+import com.example.android.sunshine.app.R;
+import com.example.android.sunshine.app.Utility;
+import com.example.android.sunshine.app.data.WeatherContract;
+import com.example.android.sunshine.app.sync.ArtCache;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * RemoteViewsService filling the dashboard widget, one row per stored location with its
+ * weather today.  Every location is read with one ForecastCall.allLocationsToday() call.
+ *
+ * Rows are kept by location with the hash of their content, and only rebuilt when that changes.
+ * They only carry text and the resource or URI of their icon, so an update stays small however
+ * many locations there are, and the host only asks for the rows it shows.
+ */
+@TargetApi(Build.VERSION_CODES.HONEYCOMB)
+public class DashboardWidgetRemoteViewsService extends RemoteViewsService {
+
+    @Override
+    public RemoteViewsFactory onGetViewFactory(Intent intent) {
+        return new RemoteViewsFactory() {
+            // Result of the ForecastCall.allLocationsToday() call
+            private Bundle data = null;
+            private int iconSize;
+            // The art URLs whose icon file is ready, null when using the local graphics
+            private Set<String> readyArtUrls = null;
+            // The rows built so far and the hash of their content, by location
+            private final Map<String, RemoteViews> rowViews = new HashMap<String, RemoteViews>();
+            private final Map<String, Long> rowHashes = new HashMap<String, Long>();
+
+            @Override
+            public void onCreate() {
+                // Nothing to do
+            }
+
+            @Override
+            public void onDataSetChanged() {
+                String units = Utility.getPreferredUnits(DashboardWidgetRemoteViewsService.this);
+                // The provider isn't exported, call it with our own identity rather than the
+                // widget host's
+                final long identityToken = Binder.clearCallingIdentity();
+                data = WeatherContract.ForecastCall.allLocationsToday(getContentResolver(), units);
+                Binder.restoreCallingIdentity(identityToken);
+                loadIcons();
+
+                // Forget the rows of locations that are gone
+                Set<String> locations = new HashSet<String>();
+                for (int position = 0; position < getCount(); position++) {
+                    locations.add(getLocationSetting(position));
+                }
+                rowViews.keySet().retainAll(locations);
+                rowHashes.keySet().retainAll(locations);
+            }
+
+            // Renders the icon files of the rows that aren't there yet, this blocks on Glide
+            private void loadIcons() {
+                Context context = DashboardWidgetRemoteViewsService.this;
+                if (Utility.usingLocalGraphics(context)) {
+                    readyArtUrls = null;
+                    return;
+                }
+                iconSize = ArtCache.getWidgetIconSize(context);
+                readyArtUrls = new HashSet<String>();
+
+                Set<String> artUrls = new LinkedHashSet<String>();
+                int[] weatherIds = getCount() == 0 ? new int[0] :
+                        data.getIntArray(WeatherContract.ForecastCall.KEY_WEATHER_IDS);
+                for (int weatherId : weatherIds) {
+                    artUrls.add(Utility.getArtUrlForWeatherCondition(context, weatherId));
+                }
+                for (String artUrl : artUrls) {
+                    try {
+                        // Usually rendered by the ArtCache warm up already
+                        if (ArtCache.renderArtFile(context, artUrl, iconSize)) {
+                            readyArtUrls.add(artUrl);
+                        }
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                }
+            }
+
+            private String getLocationSetting(int position) {
+                return data.getStringArray(
+                        WeatherContract.ForecastCall.KEY_LOCATION_SETTINGS)[position];
+            }
+
+            @Override
+            public void onDestroy() {
+                data = null;
+                readyArtUrls = null;
+                rowViews.clear();
+                rowHashes.clear();
+            }
+
+            @Override
+            public int getCount() {
+                return WeatherContract.ForecastCall.getCount(data);
+            }
+
+            @Override
+            public RemoteViews getViewAt(int position) {
+                if (position == AdapterView.INVALID_POSITION || position >= getCount()) {
+                    return null;
+                }
+                String locationSetting = getLocationSetting(position);
+                int weatherId = data.getIntArray(
+                        WeatherContract.ForecastCall.KEY_WEATHER_IDS)[position];
+                int weatherArtResourceId = data.getIntArray(
+                        WeatherContract.ForecastCall.KEY_ICON_RES)[position];
+                String description = data.getStringArray(
+                        WeatherContract.ForecastCall.KEY_DESCRIPTIONS)[position];
+                long dateInMillis = data.getLongArray(
+                        WeatherContract.ForecastCall.KEY_DATES)[position];
+                String formattedMaxTemperature = data.getStringArray(
+                        WeatherContract.ForecastCall.KEY_HIGH_TEXTS)[position];
+                String formattedMinTemperature = data.getStringArray(
+                        WeatherContract.ForecastCall.KEY_LOW_TEXTS)[position];
+                Uri weatherArtUri = null;
+                if (readyArtUrls != null) {
+                    // Rendered by onDataSetChanged, only missing if it couldn't be loaded
+                    String weatherArtUrl = Utility.getArtUrlForWeatherCondition(
+                            DashboardWidgetRemoteViewsService.this, weatherId);
+                    if (readyArtUrls.contains(weatherArtUrl)) {
+                        weatherArtUri = ArtCache.getArtUri(weatherArtUrl, iconSize);
+                    }
+                }
+
+                long hash = WidgetUpdater.hash(R.layout.widget_dashboard_list_item,
+                        weatherArtResourceId, weatherArtUri, description, dateInMillis,
+                        formattedMaxTemperature, formattedMinTemperature);
+                Long previousHash = rowHashes.get(locationSetting);
+                RemoteViews views = rowViews.get(locationSetting);
+                if (views != null && previousHash != null && previousHash == hash) {
+                    return views;
+                }
+
+                views = new RemoteViews(getPackageName(), R.layout.widget_dashboard_list_item);
+                if (weatherArtUri != null) {
+                    views.setImageViewUri(R.id.widget_icon, weatherArtUri);
+                } else {
+                    views.setImageViewResource(R.id.widget_icon, weatherArtResourceId);
+                }
+                if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.ICE_CREAM_SANDWICH_MR1) {
+                    setRemoteContentDescription(views, description);
+                }
+                views.setTextViewText(R.id.widget_location, locationSetting);
+                views.setTextViewText(R.id.widget_description, description);
+                views.setTextViewText(R.id.widget_high_temperature, formattedMaxTemperature);
+                views.setTextViewText(R.id.widget_low_temperature, formattedMinTemperature);
+
+                final Intent fillInIntent = new Intent();
+                fillInIntent.setData(WeatherContract.WeatherEntry.buildWeatherLocationWithDate(
+                        locationSetting, dateInMillis));
+                views.setOnClickFillInIntent(R.id.widget_list_item, fillInIntent);
+
+                rowViews.put(locationSetting, views);
+                rowHashes.put(locationSetting, hash);
+                return views;
+            }
+
+            @TargetApi(Build.VERSION_CODES.ICE_CREAM_SANDWICH_MR1)
+            private void setRemoteContentDescription(RemoteViews views, String description) {
+                views.setContentDescription(R.id.widget_icon, description);
+            }
+
+            @Override
+            public RemoteViews getLoadingView() {
+                return new RemoteViews(getPackageName(), R.layout.widget_dashboard_list_item);
+            }
+
+            @Override
+            public int getViewTypeCount() {
+                return 1;
+            }
+
+            @Override
+            public long getItemId(int position) {
+                if (position < 0 || position >= getCount())
+                    return position;
+                // Weather rows are replaced on every sync, the location stays
+                return getLocationSetting(position).hashCode();
+            }
+
+            @Override
+            public boolean hasStableIds() {
+                return true;
+            }
+        };
+    }
+}
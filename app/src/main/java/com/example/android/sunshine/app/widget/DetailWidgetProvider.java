@@ -15,6 +15,9 @@ import android.widget.RemoteViews;
 import com.example.android.sunshine.app.DetailActivity;
 import com.example.android.sunshine.app.MainActivity;
 import com.example.android.sunshine.app.R;
+import com.example.android.sunshine.app.Utility;
+import com.example.android.sunshine.app.data.WeatherDateNormalizer;
+import com.example.android.sunshine.app.sync.ForecastChange;
 import com.example.android.sunshine.app.sync.SunshineSyncAdapter;
 
 /**
@@ -57,7 +60,12 @@ public class DetailWidgetProvider extends AppWidgetProvider {
     @Override
     public void onReceive(@NonNull Context context, @NonNull Intent intent) {
         super.onReceive(context, intent);
-        if (SunshineSyncAdapter.ACTION_DATA_UPDATED.equals(intent.getAction())) {
+        // The list shows the conditions and temperatures from today on, and drops yesterday
+        if (SunshineSyncAdapter.ACTION_DATA_UPDATED.equals(intent.getAction()) &&
+                ForecastChange.fromIntent(intent).touches(Utility.getPreferredLocation(context),
+                        System.currentTimeMillis() - WeatherDateNormalizer.DAY_IN_MILLIS,
+                        Long.MAX_VALUE,
+                        ForecastChange.FIELD_CONDITIONS | ForecastChange.FIELD_TEMPERATURES)) {
             AppWidgetManager appWidgetManager = AppWidgetManager.getInstance(context);
             int[] appWidgetIds = appWidgetManager.getAppWidgetIds(
                     new ComponentName(context, getClass()));
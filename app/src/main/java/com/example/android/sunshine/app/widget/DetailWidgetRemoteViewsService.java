@@ -1,51 +1,56 @@
 package com.example.android.sunshine.app.widget;
 
 import android.annotation.TargetApi;
+import android.content.Context;
 import android.content.Intent;
-import android.database.Cursor;
-import android.graphics.Bitmap;
 import android.net.Uri;
 import android.os.Binder;
 import android.os.Build;
+import android.os.Bundle;
+import android.os.Parcel;
 import android.util.Log;
 import android.widget.AdapterView;
 import android.widget.RemoteViews;
 import android.widget.RemoteViewsService;
 
-import com.bumptech.glide.Glide;
-import com.bumptech.glide.request.target.Target;
+import com.example.android.sunshine.app.BuildConfig;
 import com.example.android.sunshine.app.R;
 import com.example.android.sunshine.app.Utility;
 import com.example.android.sunshine.app.data.WeatherContract;
+import com.example.android.sunshine.app.sync.ArtCache;
+import com.example.android.sunshine.app.sync.ForecastSnapshot;
 
-import java.util.concurrent.ExecutionException;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Set;
 
 /**
  * RemoteViewsService controlling the data being shown in the scrollable weather detail widget
+ *
+ * With an art pack, onDataSetChanged renders the art of every row at the widget's icon size to
+ * the files ArtProvider serves, so getViewAt never waits on Glide, and rows only carry the URI
+ * of their icon; the widget host reads the pixels from the file itself.  Debug builds log how
+ * many bytes of RemoteViews each update sent.
  */
 @TargetApi(Build.VERSION_CODES.HONEYCOMB)
 public class DetailWidgetRemoteViewsService extends RemoteViewsService {
     public final String LOG_TAG = DetailWidgetRemoteViewsService.class.getSimpleName();
-    private static final String[] FORECAST_COLUMNS = {
-            WeatherContract.WeatherEntry.TABLE_NAME + "." + WeatherContract.WeatherEntry._ID,
-            WeatherContract.WeatherEntry.COLUMN_DATE,
-            WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
-            WeatherContract.WeatherEntry.COLUMN_SHORT_DESC,
-            WeatherContract.WeatherEntry.COLUMN_MAX_TEMP,
-            WeatherContract.WeatherEntry.COLUMN_MIN_TEMP
-    };
-    // these indices must match the projection
-    static final int INDEX_WEATHER_ID = 0;
-    static final int INDEX_WEATHER_DATE = 1;
-    static final int INDEX_WEATHER_CONDITION_ID = 2;
-    static final int INDEX_WEATHER_DESC = 3;
-    static final int INDEX_WEATHER_MAX_TEMP = 4;
-    static final int INDEX_WEATHER_MIN_TEMP = 5;
 
     @Override
     public RemoteViewsFactory onGetViewFactory(Intent intent) {
         return new RemoteViewsFactory() {
-            private Cursor data = null;
+            // Result of a ForecastCall.range() call, only used when there is no snapshot
+            private Bundle data = null;
+            // When there is a snapshot, rows are read from it starting at firstDay instead
+            private ForecastSnapshot snapshot = null;
+            private int firstDay = 0;
+            private String units;
+            private int iconSize;
+            // The art URLs whose icon file is ready, null when using the local graphics
+            private Set<String> readyArtUrls = null;
+            // What the rows sent since the last onDataSetChanged weighed, in debug builds
+            private int payloadRows;
+            private long payloadBytes;
 
             @Override
             public void onCreate() {
@@ -54,74 +59,149 @@ public class DetailWidgetRemoteViewsService extends RemoteViewsService {
 
             @Override
             public void onDataSetChanged() {
-                if (data != null) {
-                    data.close();
+                logPayload();
+                data = null;
+                String location = Utility.getPreferredLocation(DetailWidgetRemoteViewsService.this);
+                units = Utility.getPreferredUnits(DetailWidgetRemoteViewsService.this);
+                snapshot = ForecastSnapshot.open(DetailWidgetRemoteViewsService.this, location);
+                if (snapshot != null) {
+                    firstDay = snapshot.findToday();
+                    if (firstDay >= 0) {
+                        loadIcons();
+                        return;
+                    }
+                    snapshot = null;
                 }
                 // This method is called by the app hosting the widget (e.g., the launcher)
                 // However, our ContentProvider is not exported so it doesn't have access to the
                 // data. Therefore we need to clear (and finally restore) the calling identity so
                 // that calls use our process and permission
                 final long identityToken = Binder.clearCallingIdentity();
-                String location = Utility.getPreferredLocation(DetailWidgetRemoteViewsService.this);
-                Uri weatherForLocationUri = WeatherContract.WeatherEntry
-                        .buildWeatherLocationWithStartDate(location, System.currentTimeMillis());
-                data = getContentResolver().query(weatherForLocationUri,
-                        FORECAST_COLUMNS,
-                        null,
-                        null,
-                        WeatherContract.WeatherEntry.COLUMN_DATE + " ASC");
+                data = WeatherContract.ForecastCall.range(getContentResolver(), location, units,
+                        System.currentTimeMillis(), Long.MAX_VALUE);
                 Binder.restoreCallingIdentity(identityToken);
+                loadIcons();
+            }
+
+            // Renders the icon files of the rows that aren't there yet, this blocks on Glide
+            private void loadIcons() {
+                Context context = DetailWidgetRemoteViewsService.this;
+                if (Utility.usingLocalGraphics(context)) {
+                    readyArtUrls = null;
+                    return;
+                }
+                iconSize = ArtCache.getWidgetIconSize(context);
+                readyArtUrls = new HashSet<String>();
+
+                Set<String> artUrls = new LinkedHashSet<String>();
+                for (int position = 0; position < getCount(); position++) {
+                    artUrls.add(Utility.getArtUrlForWeatherCondition(context,
+                            getWeatherId(position)));
+                }
+                for (String artUrl : artUrls) {
+                    try {
+                        // Usually rendered by the ArtCache warm up already
+                        if (ArtCache.renderArtFile(context, artUrl, iconSize)) {
+                            readyArtUrls.add(artUrl);
+                        }
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                }
+            }
+
+            private int getWeatherId(int position) {
+                if (snapshot != null) {
+                    return snapshot.getWeatherId(firstDay + position);
+                }
+                return data.getIntArray(WeatherContract.ForecastCall.KEY_WEATHER_IDS)[position];
+            }
+
+            private void logPayload() {
+                if (BuildConfig.DEBUG && payloadRows > 0) {
+                    Log.d(LOG_TAG, "Update sent " + payloadRows + " rows, " + payloadBytes +
+                            " bytes");
+                }
+                payloadRows = 0;
+                payloadBytes = 0;
+            }
+
+            // The size of the rows as sent to the widget host, only measured in debug builds
+            private void countPayload(RemoteViews views) {
+                if (BuildConfig.DEBUG) {
+                    Parcel parcel = Parcel.obtain();
+                    views.writeToParcel(parcel, 0);
+                    payloadBytes += parcel.dataSize();
+                    parcel.recycle();
+                    payloadRows++;
+                }
             }
 
             @Override
             public void onDestroy() {
-                if (data != null) {
-                    data.close();
-                    data = null;
-                }
+                logPayload();
+                data = null;
+                snapshot = null;
+                readyArtUrls = null;
             }
 
             @Override
             public int getCount() {
-                return data == null ? 0 : data.getCount();
+                if (snapshot != null) {
+                    return snapshot.getDayCount() - firstDay;
+                }
+                return WeatherContract.ForecastCall.getCount(data);
             }
 
             @Override
             public RemoteViews getViewAt(int position) {
-                if (position == AdapterView.INVALID_POSITION ||
-                        data == null || !data.moveToPosition(position)) {
+                if (position == AdapterView.INVALID_POSITION || position >= getCount()) {
                     return null;
                 }
+                int weatherId;
+                int weatherArtResourceId;
+                String description;
+                long dateInMillis;
+                String formattedMaxTemperature;
+                String formattedMinTemperature;
+                if (snapshot != null) {
+                    int day = firstDay + position;
+                    weatherId = snapshot.getWeatherId(day);
+                    weatherArtResourceId = snapshot.getIconResource(day);
+                    description = snapshot.getDescription(day);
+                    dateInMillis = snapshot.getDate(day);
+                    formattedMaxTemperature = snapshot.getHighText(day, units);
+                    formattedMinTemperature = snapshot.getLowText(day, units);
+                } else {
+                    weatherId = data.getIntArray(
+                            WeatherContract.ForecastCall.KEY_WEATHER_IDS)[position];
+                    weatherArtResourceId = data.getIntArray(
+                            WeatherContract.ForecastCall.KEY_ICON_RES)[position];
+                    description = data.getStringArray(
+                            WeatherContract.ForecastCall.KEY_DESCRIPTIONS)[position];
+                    dateInMillis = data.getLongArray(
+                            WeatherContract.ForecastCall.KEY_DATES)[position];
+                    formattedMaxTemperature = data.getStringArray(
+                            WeatherContract.ForecastCall.KEY_HIGH_TEXTS)[position];
+                    formattedMinTemperature = data.getStringArray(
+                            WeatherContract.ForecastCall.KEY_LOW_TEXTS)[position];
+                }
                 RemoteViews views = new RemoteViews(getPackageName(),
                         R.layout.widget_detail_list_item);
-                int weatherId = data.getInt(INDEX_WEATHER_CONDITION_ID);
-                int weatherArtResourceId = Utility.getIconResourceForWeatherCondition(weatherId);
-                Bitmap weatherArtImage = null;
-                if ( !Utility.usingLocalGraphics(DetailWidgetRemoteViewsService.this) ) {
-                    String weatherArtResourceUrl = Utility.getArtUrlForWeatherCondition(
+                Uri weatherArtUri = null;
+                if (readyArtUrls != null) {
+                    // Rendered by onDataSetChanged, only missing if it couldn't be loaded
+                    String weatherArtUrl = Utility.getArtUrlForWeatherCondition(
                             DetailWidgetRemoteViewsService.this, weatherId);
-                    try {
-                        weatherArtImage = Glide.with(DetailWidgetRemoteViewsService.this)
-                                .load(weatherArtResourceUrl)
-                                .asBitmap()
-                                .error(weatherArtResourceId)
-                                .into(Target.SIZE_ORIGINAL, Target.SIZE_ORIGINAL).get();
-                    } catch (InterruptedException | ExecutionException e) {
-                        Log.e(LOG_TAG, "Error retrieving large icon from " + weatherArtResourceUrl, e);
+                    if (readyArtUrls.contains(weatherArtUrl)) {
+                        weatherArtUri = ArtCache.getArtUri(weatherArtUrl, iconSize);
                     }
                 }
-                String description = data.getString(INDEX_WEATHER_DESC);
-                long dateInMillis = data.getLong(INDEX_WEATHER_DATE);
                 String formattedDate = Utility.getFriendlyDayString(
                         DetailWidgetRemoteViewsService.this, dateInMillis, false);
-                double maxTemp = data.getDouble(INDEX_WEATHER_MAX_TEMP);
-                double minTemp = data.getDouble(INDEX_WEATHER_MIN_TEMP);
-                String formattedMaxTemperature =
-                        Utility.formatTemperature(DetailWidgetRemoteViewsService.this, maxTemp);
-                String formattedMinTemperature =
-                        Utility.formatTemperature(DetailWidgetRemoteViewsService.this, minTemp);
-                if (weatherArtImage != null) {
-                    views.setImageViewBitmap(R.id.widget_icon, weatherArtImage);
+                if (weatherArtUri != null) {
+                    views.setImageViewUri(R.id.widget_icon, weatherArtUri);
                 } else {
                     views.setImageViewResource(R.id.widget_icon, weatherArtResourceId);
                 }
@@ -141,6 +221,7 @@ public class DetailWidgetRemoteViewsService extends RemoteViewsService {
                         dateInMillis);
                 fillInIntent.setData(weatherUri);
                 views.setOnClickFillInIntent(R.id.widget_list_item, fillInIntent);
+                countPayload(views);
                 return views;
             }
 
@@ -161,9 +242,11 @@ public class DetailWidgetRemoteViewsService extends RemoteViewsService {
 
             @Override
             public long getItemId(int position) {
-                if (data.moveToPosition(position))
-                    return data.getLong(INDEX_WEATHER_ID);
-                return position;
+                if (position < 0 || position >= getCount())
+                    return position;
+                if (snapshot != null)
+                    return snapshot.getRowId(firstDay + position);
+                return data.getLongArray(WeatherContract.ForecastCall.KEY_IDS)[position];
             }
 
             @Override
@@ -22,32 +22,50 @@ import android.content.Intent;
 import android.os.Bundle;
 import android.support.annotation.NonNull;
 
+import com.example.android.sunshine.app.Utility;
+import com.example.android.sunshine.app.data.WeatherDateNormalizer;
+import com.example.android.sunshine.app.sync.BackgroundWorkService;
+import com.example.android.sunshine.app.sync.ForecastChange;
 import com.example.android.sunshine.app.sync.SunshineSyncAdapter;
 
 /**
  * Provider for a horizontally expandable widget showing today's weather.
  *
- * Delegates widget updating to {@link TodayWidgetIntentService} to ensure that
- * data retrieval is done on a background thread
+ * Delegates widget updating to {@link TodayWidgetUpdater}, on the {@link BackgroundWorkService},
+ * to ensure that data retrieval is done on a background thread
  */
 public class TodayWidgetProvider extends AppWidgetProvider {
 
     @Override
     public void onUpdate(Context context, AppWidgetManager appWidgetManager, int[] appWidgetIds) {
-        context.startService(new Intent(context, TodayWidgetIntentService.class));
+        // The system asked for these, they may have nothing to show yet
+        BackgroundWorkService.updateTodayWidgets(context, appWidgetIds);
     }
 
     @Override
     public void onAppWidgetOptionsChanged(Context context, AppWidgetManager appWidgetManager,
                                           int appWidgetId, Bundle newOptions) {
-        context.startService(new Intent(context, TodayWidgetIntentService.class));
+        // The layout is picked by size, so the resized widget is only updated if that changes it
+        BackgroundWorkService.updateTodayWidgets(context, null);
+    }
+
+    @Override
+    public void onDeleted(Context context, int[] appWidgetIds) {
+        WidgetUpdater.forget(context, TodayWidgetUpdater.HASHES_NAME, appWidgetIds);
     }
 
     @Override
     public void onReceive(@NonNull Context context, @NonNull Intent intent) {
         super.onReceive(context, intent);
         if (SunshineSyncAdapter.ACTION_DATA_UPDATED.equals(intent.getAction())) {
-            context.startService(new Intent(context, TodayWidgetIntentService.class));
+            // Only today's conditions and temperatures are shown.  Yesterday is checked too, the
+            // first sync of a day drops it and that moves the widget on to the new day.
+            long now = System.currentTimeMillis();
+            if (ForecastChange.fromIntent(intent).touches(Utility.getPreferredLocation(context),
+                    now - WeatherDateNormalizer.DAY_IN_MILLIS, now,
+                    ForecastChange.FIELD_CONDITIONS | ForecastChange.FIELD_TEMPERATURES)) {
+                BackgroundWorkService.updateTodayWidgets(context, null);
+            }
         }
     }
 }
@@ -0,0 +1,168 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.widget;
+
+import android.annotation.TargetApi;
+import android.app.PendingIntent;
+import android.appwidget.AppWidgetManager;
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.Intent;
+import android.os.Build;
+import android.os.Bundle;
+import android.util.DisplayMetrics;
+import android.util.TypedValue;
+import android.widget.RemoteViews;
+
+import com.example.android.sunshine.app.MainActivity;
+import com.example.android.sunshine.app.R;
+import com.example.android.sunshine.app.Utility;
+import com.example.android.sunshine.app.data.WeatherContract;
+import com.example.android.sunshine.app.sync.BackgroundWorkService;
+import com.example.android.sunshine.app.sync.ForecastSnapshot;
+
+/**
+ * Updates all Today widgets with the latest data.  It runs on the
+ * {@link BackgroundWorkService}, ahead of the other work that follows a data update.
+ *
+ * Widgets whose content didn't change since their last update are skipped, see
+ * {@link WidgetUpdater}; the forced ids are updated regardless.
+ */
+public class TodayWidgetUpdater {
+    static final String HASHES_NAME = "today_widget_hashes";
+
+    /**
+     * Updates the widgets.  This queries the provider, so it must not be called from the UI
+     * thread.
+     *
+     * @param forcedAppWidgetIds ids to update even if their content didn't change, or null
+     */
+    public static void update(final Context context, int[] forcedAppWidgetIds) {
+        // Retrieve all of the Today widget ids: these are the widgets we need to update
+        AppWidgetManager appWidgetManager = AppWidgetManager.getInstance(context);
+        int[] appWidgetIds = appWidgetManager.getAppWidgetIds(new ComponentName(context,
+                TodayWidgetProvider.class));
+
+        // Get today's data from the snapshot, or ask the ContentProvider if there is none
+        String location = Utility.getPreferredLocation(context);
+        String units = Utility.getPreferredUnits(context);
+        final int weatherArtResourceId;
+        final String description;
+        final String formattedMaxTemperature;
+        final String formattedMinTemperature;
+
+        ForecastSnapshot snapshot = ForecastSnapshot.open(context, location);
+        int today = snapshot != null ? snapshot.findToday() : -1;
+        if (today >= 0) {
+            weatherArtResourceId = snapshot.getArtResource(today);
+            description = snapshot.getDescription(today);
+            formattedMaxTemperature = snapshot.getHighText(today, units);
+            formattedMinTemperature = snapshot.getLowText(today, units);
+        } else {
+            Bundle forecast = WeatherContract.ForecastCall.today(
+                    context.getContentResolver(), location, units);
+            if (WeatherContract.ForecastCall.getCount(forecast) == 0) {
+                return;
+            }
+            weatherArtResourceId = forecast.getIntArray(WeatherContract.ForecastCall.KEY_ART_RES)[0];
+            description = forecast.getStringArray(WeatherContract.ForecastCall.KEY_DESCRIPTIONS)[0];
+            formattedMaxTemperature =
+                    forecast.getStringArray(WeatherContract.ForecastCall.KEY_HIGH_TEXTS)[0];
+            formattedMinTemperature =
+                    forecast.getStringArray(WeatherContract.ForecastCall.KEY_LOW_TEXTS)[0];
+        }
+
+        // Perform this loop procedure for each Today widget
+        WidgetUpdater updater = new WidgetUpdater(context, HASHES_NAME, forcedAppWidgetIds);
+        for (int appWidgetId : appWidgetIds) {
+            // Find the correct layout based on the widget's width
+            int widgetWidth = getWidgetWidth(context, appWidgetManager, appWidgetId);
+            int defaultWidth = context.getResources().getDimensionPixelSize(R.dimen.widget_today_default_width);
+            int largeWidth = context.getResources().getDimensionPixelSize(R.dimen.widget_today_large_width);
+            int layoutId;
+            if (widgetWidth >= largeWidth) {
+                layoutId = R.layout.widget_today_large;
+            } else if (widgetWidth >= defaultWidth) {
+                layoutId = R.layout.widget_today;
+            } else {
+                layoutId = R.layout.widget_today_small;
+            }
+            updater.add(appWidgetId, layoutId, weatherArtResourceId, description,
+                    formattedMaxTemperature, formattedMinTemperature);
+        }
+
+        // Only the widgets that changed, in one update per layout
+        updater.apply(appWidgetManager, new WidgetUpdater.ViewsBuilder() {
+            @Override
+            public RemoteViews build(int layoutId) {
+                return buildViews(context, layoutId, weatherArtResourceId, description,
+                        formattedMaxTemperature, formattedMinTemperature);
+            }
+        });
+    }
+
+    private static RemoteViews buildViews(Context context, int layoutId, int weatherArtResourceId, String description,
+                                   String formattedMaxTemperature, String formattedMinTemperature) {
+        RemoteViews views = new RemoteViews(context.getPackageName(), layoutId);
+
+        // Add the data to the RemoteViews
+        views.setImageViewResource(R.id.widget_icon, weatherArtResourceId);
+        // Content Descriptions for RemoteViews were only added in ICS MR1
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.ICE_CREAM_SANDWICH_MR1) {
+            setRemoteContentDescription(views, description);
+        }
+        views.setTextViewText(R.id.widget_description, description);
+        views.setTextViewText(R.id.widget_high_temperature, formattedMaxTemperature);
+        views.setTextViewText(R.id.widget_low_temperature, formattedMinTemperature);
+
+        // Create an Intent to launch MainActivity
+        Intent launchIntent = new Intent(context, MainActivity.class);
+        PendingIntent pendingIntent = PendingIntent.getActivity(context, 0, launchIntent, 0);
+        views.setOnClickPendingIntent(R.id.widget, pendingIntent);
+        return views;
+    }
+
+    private static int getWidgetWidth(Context context, AppWidgetManager appWidgetManager,
+                                      int appWidgetId) {
+        // Prior to Jelly Bean, widgets were always their default size
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN) {
+            return context.getResources().getDimensionPixelSize(R.dimen.widget_today_default_width);
+        }
+        // For Jelly Bean and higher devices, widgets can be resized - the current size can be
+        // retrieved from the newly added App Widget Options
+        return getWidgetWidthFromOptions(context, appWidgetManager, appWidgetId);
+    }
+
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    private static int getWidgetWidthFromOptions(Context context,
+                                                 AppWidgetManager appWidgetManager,
+                                                 int appWidgetId) {
+        Bundle options = appWidgetManager.getAppWidgetOptions(appWidgetId);
+        if (options.containsKey(AppWidgetManager.OPTION_APPWIDGET_MIN_WIDTH)) {
+            int minWidthDp = options.getInt(AppWidgetManager.OPTION_APPWIDGET_MIN_WIDTH);
+            // The width returned is in dp, but we'll convert it to pixels to match the other widths
+            DisplayMetrics displayMetrics = context.getResources().getDisplayMetrics();
+            return (int) TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_DIP, minWidthDp,
+                    displayMetrics);
+        }
+        return  context.getResources().getDimensionPixelSize(R.dimen.widget_today_default_width);
+    }
+
+    @TargetApi(Build.VERSION_CODES.ICE_CREAM_SANDWICH_MR1)
+    private static void setRemoteContentDescription(RemoteViews views, String description) {
+        views.setContentDescription(R.id.widget_icon, description);
+    }
+}
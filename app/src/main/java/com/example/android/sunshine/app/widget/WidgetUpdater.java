@@ -0,0 +1,149 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.widget;
+
+import android.appwidget.AppWidgetManager;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.widget.RemoteViews;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Updates a provider's widgets only when what they show changed.
+ *
+ * Each widget is {@link #add added} with the layout picked for its size and the values it
+ * shows.  Their hash is compared with the one of the last update sent to that widget, kept in
+ * SharedPreferences so it survives the process, and unchanged widgets are skipped.  Widgets
+ * showing the same layout and values share one RemoteViews and one updateAppWidget call.
+ *
+ * Updates the system asks for, e.g. for a new widget or after the launcher restarted, have to
+ * be sent even when unchanged: pass those widget ids as forced.
+ */
+public class WidgetUpdater {
+
+    /**
+     * Builds the views of a group of widgets.
+     */
+    public interface ViewsBuilder {
+        RemoteViews build(int layoutId);
+    }
+
+    private static final String KEY_PREFIX = "hash_";
+
+    private final SharedPreferences mHashes;
+    private final Set<Integer> mForced = new HashSet<Integer>();
+    // Widgets to update, by layout and hash of their content
+    private final Map<Long, List<Integer>> mGroups = new LinkedHashMap<Long, List<Integer>>();
+    private final Map<Long, Integer> mGroupLayouts = new LinkedHashMap<Long, Integer>();
+
+    /**
+     * @param name the name of the SharedPreferences file of the provider's hashes
+     * @param forcedIds the widgets to update even if unchanged, or null
+     */
+    public WidgetUpdater(Context context, String name, int[] forcedIds) {
+        mHashes = context.getSharedPreferences(name, Context.MODE_PRIVATE);
+        if (null != forcedIds) {
+            for (int appWidgetId : forcedIds) {
+                mForced.add(appWidgetId);
+            }
+        }
+    }
+
+    /**
+     * Adds a widget, it is updated by {@link #apply} if the layout or the values differ from its
+     * last update.
+     *
+     * @param values what the widget shows, their toString() is hashed
+     */
+    public void add(int appWidgetId, int layoutId, Object... values) {
+        long hash = hash(layoutId, values);
+        if (!mForced.contains(appWidgetId) &&
+                mHashes.getLong(KEY_PREFIX + appWidgetId, 0) == hash) {
+            return;
+        }
+        List<Integer> group = mGroups.get(hash);
+        if (null == group) {
+            group = new ArrayList<Integer>();
+            mGroups.put(hash, group);
+            mGroupLayouts.put(hash, layoutId);
+        }
+        group.add(appWidgetId);
+    }
+
+    /**
+     * Sends the updates, one per group of widgets with the same layout and values.
+     *
+     * @return the number of updates sent
+     */
+    public int apply(AppWidgetManager appWidgetManager, ViewsBuilder builder) {
+        SharedPreferences.Editor editor = mHashes.edit();
+        for (Map.Entry<Long, List<Integer>> group : mGroups.entrySet()) {
+            List<Integer> ids = group.getValue();
+            int[] appWidgetIds = new int[ids.size()];
+            for (int i = 0; i < appWidgetIds.length; i++) {
+                appWidgetIds[i] = ids.get(i);
+                editor.putLong(KEY_PREFIX + appWidgetIds[i], group.getKey());
+            }
+            appWidgetManager.updateAppWidget(appWidgetIds,
+                    builder.build(mGroupLayouts.get(group.getKey())));
+        }
+        // Called from a background thread, and the hashes must not be lost with the process
+        editor.commit();
+        int updates = mGroups.size();
+        mGroups.clear();
+        mGroupLayouts.clear();
+        return updates;
+    }
+
+    /**
+     * Forgets the hashes of deleted widgets.
+     */
+    public static void forget(Context context, String name, int[] appWidgetIds) {
+        SharedPreferences.Editor editor =
+                context.getSharedPreferences(name, Context.MODE_PRIVATE).edit();
+        for (int appWidgetId : appWidgetIds) {
+            editor.remove(KEY_PREFIX + appWidgetId);
+        }
+        editor.apply();
+    }
+
+    // 64 bit FNV-1a of the layout and the values, so a change is practically never missed
+    static long hash(int layoutId, Object... values) {
+        long hash = 0xcbf29ce484222325L;
+        hash = mix(hash, Integer.toString(layoutId));
+        for (Object value : values) {
+            // Separated, so that moving text between values changes the hash
+            hash = mix(hash, "\u0000");
+            hash = mix(hash, String.valueOf(value));
+        }
+        // 0 is the hash of widgets never updated
+        return hash == 0 ? 1 : hash;
+    }
+
+    private static long mix(long hash, String text) {
+        for (int i = 0; i < text.length(); i++) {
+            hash ^= text.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+}